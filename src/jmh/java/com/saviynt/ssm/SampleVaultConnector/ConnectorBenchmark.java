@@ -0,0 +1,99 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of getSecret() and setSecret() against the in-process stub vault, for 1..N encrypted attributes,
+ * from one thread and from CONTENDED threads sharing the sessions, pools and caches of the connector.
+ * Run with -prof gc (the default of the benchmark profile) to see the allocation rate per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectorBenchmark
+{
+    static final int CONTENDED = 16;
+
+    @Param({"1", "4", "16"})
+    int attributes;
+
+    StubVaultServer vault;
+    SampleVaultConnector connector;
+    Map<String, Object> vaultConfigData;
+    Map<String, Object> getData;
+    Map<String, Object> setData;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        vault = new StubVaultServer();
+        connector = new SampleVaultConnector();
+        Map<String, String> keyNames = new LinkedHashMap<>();
+        Map<String, String> requested = new HashMap<>();
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < attributes; i++) {
+            String attribute = "ATTRIBUTE" + i;
+            String keyName = "BenchmarkConnection~#~key" + i;
+            keyNames.put(attribute, keyName);
+            requested.put(attribute, null);
+            values.put(attribute, "secret-value-" + i);
+            vault.putKey(keyName, "secret-value-" + i);
+        }
+        vaultConfigData = StubVaultServer.vaultConfigData(keyNames);
+        getData = vault.data(requested);
+        setData = vault.data(values);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        vault.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Map getSecret()
+    {
+        return connector.getSecret(vaultConfigData, getData);
+    }
+
+    @Benchmark
+    @Threads(CONTENDED)
+    public Map getSecretContended()
+    {
+        return connector.getSecret(vaultConfigData, getData);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Map setSecret()
+    {
+        return connector.setSecret(vaultConfigData, setData);
+    }
+
+    @Benchmark
+    @Threads(CONTENDED)
+    public Map setSecretContended()
+    {
+        return connector.setSecret(vaultConfigData, setData);
+    }
+}
@@ -0,0 +1,133 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Cost of the work done around the vault calls: dataFormatting() and the parameter logging with DEBUG on and off,
+ * prettyPrint(), and the resolution of keyNames from keyMapping. The DEBUG level is set per fork through
+ * slf4j-simple, DEBUG output goes to /dev/null so that the formatting is measured rather than the console.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = FormattingBenchmark.DEBUG_OFF)
+public class FormattingBenchmark
+{
+    static final String DEBUG_OFF = "-Dorg.slf4j.simpleLogger.defaultLogLevel=info";
+    static final String DEBUG_ON = "-Dorg.slf4j.simpleLogger.defaultLogLevel=debug";
+    static final String DEBUG_LOG_FILE = "-Dorg.slf4j.simpleLogger.logFile=/dev/null";
+
+    @Param({"1", "4", "16"})
+    int attributes;
+
+    SampleVaultConnector connector;
+    Map<String, Object> vaultConfigData;
+    Map<String, Object> data;
+    List<String> attributeNames;
+
+    @Setup
+    public void setUp()
+    {
+        connector = new SampleVaultConnector();
+        Map<String, String> keyNames = new LinkedHashMap<>();
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < attributes; i++) {
+            keyNames.put("ATTRIBUTE" + i, "BenchmarkConnection~#~key" + i);
+            values.put("ATTRIBUTE" + i, "secret-value-" + i);
+        }
+        vaultConfigData = StubVaultServer.vaultConfigData(keyNames);
+        attributeNames = new ArrayList<>(keyNames.keySet());
+        //The vault is never called, only the attributes are formatted
+        Map<String, Object> connectionAttributes = new HashMap<>();
+        connectionAttributes.put("AUTH_URL", "https://sampleVault/session/auth");
+        connectionAttributes.put("username", StubVaultServer.USERNAME);
+        connectionAttributes.put("password", StubVaultServer.PASSWORD);
+        connectionAttributes.put("ACCOUNT_URL", "https://sampleVault/select_account");
+        connectionAttributes.put("KEY_URL", "https://sampleVault/keys");
+        data = new HashMap<>();
+        data.put("vaultConnectionAtributes", connectionAttributes);
+        data.put("encryptedConnAttr", values);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Map dataFormatting()
+    {
+        return connector.dataFormatting(vaultConfigData);
+    }
+
+    @Benchmark
+    @Threads(ConnectorBenchmark.CONTENDED)
+    public Map dataFormattingContended()
+    {
+        return connector.dataFormatting(vaultConfigData);
+    }
+
+    @Benchmark
+    @Threads(1)
+    @Fork(value = 1, jvmArgsAppend = {DEBUG_ON, DEBUG_LOG_FILE})
+    public Map dataFormattingDebug()
+    {
+        return connector.dataFormatting(vaultConfigData);
+    }
+
+    @Benchmark
+    @Threads(ConnectorBenchmark.CONTENDED)
+    @Fork(value = 1, jvmArgsAppend = {DEBUG_ON, DEBUG_LOG_FILE})
+    public Map dataFormattingDebugContended()
+    {
+        return connector.dataFormatting(vaultConfigData);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String prettyPrint() throws JsonProcessingException
+    {
+        return connector.prettyPrint(data);
+    }
+
+    @Benchmark
+    @Threads(ConnectorBenchmark.CONTENDED)
+    public String prettyPrintContended() throws JsonProcessingException
+    {
+        return connector.prettyPrint(data);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void keyMapping(Blackhole blackhole)
+    {
+        KeyMappingPlan plan = KeyMappingPlan.of(vaultConfigData);
+        for (String attribute : attributeNames) {
+            blackhole.consume(plan.entry(attribute).keyPath);
+        }
+    }
+
+    @Benchmark
+    @Threads(ConnectorBenchmark.CONTENDED)
+    public void keyMappingContended(Blackhole blackhole)
+    {
+        keyMapping(blackhole);
+    }
+}
@@ -0,0 +1,89 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * Fair counting semaphore whose acquire returns a future instead of blocking the caller. Waiters are served in
+ * arrival order; a waiter whose timeout expires leaves the queue and its future fails with TimeoutException.
+ * tryAcquire() bounds the queue: a caller finding it full is turned away at once instead of waiting.
+ **/
+final class AsyncSemaphore {
+
+	private final int permits;
+
+	private int available;
+
+	private final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+	AsyncSemaphore(int permits) {
+		this.permits = permits;
+		this.available = permits;
+	}
+
+	/**
+	 * @return a future completed once a permit is held by the caller, who must then release() it
+	 */
+	CompletableFuture<Void> acquire(long timeoutNanos) {
+		return tryAcquire(timeoutNanos, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return a future completed once a permit is held by the caller, who must then release() it;
+	 *         or null when maxQueued callers already wait for a permit
+	 */
+	CompletableFuture<Void> tryAcquire(long timeoutNanos, int maxQueued) {
+		CompletableFuture<Void> waiter;
+		synchronized (this) {
+			if (available > 0 && waiters.isEmpty()) {
+				available--;
+				return CompletableFuture.completedFuture(null);
+			}
+			if (waiters.size() >= maxQueued) {
+				return null;
+			}
+			waiter = new CompletableFuture<>();
+			waiters.addLast(waiter);
+		}
+		waiter.orTimeout(Math.max(1, timeoutNanos), TimeUnit.NANOSECONDS).whenComplete((ignored, failure) -> {
+			if (failure != null) {
+				synchronized (this) {
+					waiters.remove(waiter);
+				}
+			}
+		});
+		return waiter;
+	}
+
+	void release() {
+		CompletableFuture<Void> next;
+		do {
+			synchronized (this) {
+				next = waiters.pollFirst();
+				if (next == null) {
+					available++;
+					return;
+				}
+			}
+			// A waiter that already timed out is skipped and the permit goes to the next one
+		} while (!next.complete(null));
+	}
+
+	/**
+	 * @return the permits currently held
+	 */
+	synchronized int inUse() {
+		return permits - available;
+	}
+
+	/**
+	 * @return the callers waiting for a permit
+	 */
+	synchronized int queued() {
+		return waiters.size();
+	}
+}
@@ -0,0 +1,185 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+
+/**
+ * Fixed-size ring buffer of the last getSecret(), setSecret() and dataFormatting() calls, with the time each call
+ * spent in every phase (login on AUTH_URL, account selection on ACCOUNT_URL, key fetches, JSON decoding), so that
+ * a slow call can be told apart from the others after the fact. Recording a phase is two atomic adds, publishing a
+ * finished call one atomic increment and one slot write: the buffer is lock-free and always on, and the oldest
+ * calls are overwritten.
+ *
+ * A trace holds the operation, connection name, attribute count, phase timings and outcome (the exception type)
+ * of a call, never a secret value, keyName or exception message.
+ **/
+final class CallTraces {
+
+	/** Default number of calls kept. */
+	static final int CAPACITY = 1024;
+
+	/** Phases of a call. JSON decoding is part of the vault call whose response it decodes. */
+	enum Phase {
+		AUTH("auth"), ACCOUNT("account"), KEY_FETCH("keyFetch"), JSON_DECODING("jsonDecoding"), DATA_FORMATTING("dataFormatting");
+
+		final String label;
+
+		Phase(String label) {
+			this.label = label;
+		}
+
+		/**
+		 * @return the phase of a vault call to the endpoint attribute
+		 */
+		static Phase of(String endpoint) {
+			if (VaultConnectionSettings.AUTH_URL.equals(endpoint)) {
+				return AUTH;
+			}
+			return VaultConnectionSettings.ACCOUNT_URL.equals(endpoint) ? ACCOUNT : KEY_FETCH;
+		}
+	}
+
+	/** One call. The phases may be recorded from any thread until the call finishes. */
+	static final class Trace {
+		final String operation;
+		final long startMillis = System.currentTimeMillis();
+		final long startNanos = System.nanoTime();
+		/** Per phase: the time spent, the number of times it was entered and when it was first entered, in nanoseconds since the start plus one */
+		private final AtomicLongArray phases = new AtomicLongArray(Phase.values().length * 3);
+		private volatile String connectionName;
+		private volatile int attributes;
+		private volatile long durationNanos = -1;
+		private volatile String outcome;
+
+		private Trace(String operation) {
+			this.operation = operation;
+		}
+
+		void connection(String connectionName, int attributes) {
+			this.connectionName = connectionName;
+			this.attributes = attributes;
+		}
+
+		/**
+		 * Adds the time spent in phase from phaseStartNanos until now. Ignored once the call finished, e.g. for a
+		 * background call made with the settings of a call that has since returned.
+		 */
+		void record(Phase phase, long phaseStartNanos) {
+			if (durationNanos >= 0) {
+				return;
+			}
+			int slot = phase.ordinal() * 3;
+			phases.addAndGet(slot, System.nanoTime() - phaseStartNanos);
+			phases.incrementAndGet(slot + 1);
+			phases.compareAndSet(slot + 2, 0, phaseStartNanos - startNanos + 1);
+		}
+
+		long durationNanos() {
+			return durationNanos;
+		}
+
+		/**
+		 * @return the call as shown by SampleVaultConnector.slowestCalls()
+		 */
+		Map<String, Object> toMap() {
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("operation", operation);
+			map.put("startedAt", Instant.ofEpochMilli(startMillis).toString());
+			map.put("durationMillis", TimeUnit.NANOSECONDS.toMillis(durationNanos));
+			map.put("connection", connectionName);
+			map.put("attributes", attributes);
+			map.put("outcome", outcome);
+			Map<String, Object> timings = new LinkedHashMap<>();
+			for (Phase phase : Phase.values()) {
+				int slot = phase.ordinal() * 3;
+				long count = phases.get(slot + 1);
+				if (count > 0) {
+					Map<String, Object> timing = new LinkedHashMap<>();
+					timing.put("count", count);
+					timing.put("millis", TimeUnit.NANOSECONDS.toMillis(phases.get(slot)));
+					timing.put("firstStartedAtMillis", TimeUnit.NANOSECONDS.toMillis(phases.get(slot + 2) - 1));
+					timings.put(phase.label, timing);
+				}
+			}
+			map.put("phases", timings);
+			return map;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder line = new StringBuilder(operation).append(' ').append(TimeUnit.NANOSECONDS.toMillis(durationNanos)).append(" ms");
+			line.append(" at ").append(Instant.ofEpochMilli(startMillis));
+			line.append(" connection=").append(connectionName).append(" attributes=").append(attributes).append(" outcome=").append(outcome);
+			for (Phase phase : Phase.values()) {
+				int slot = phase.ordinal() * 3;
+				long count = phases.get(slot + 1);
+				if (count > 0) {
+					line.append(' ').append(phase.label).append('=').append(TimeUnit.NANOSECONDS.toMillis(phases.get(slot))).append("ms/").append(count);
+				}
+			}
+			return line.toString();
+		}
+	}
+
+	private final AtomicReferenceArray<Trace> slots;
+
+	private final int mask;
+
+	private final AtomicLong next = new AtomicLong();
+
+	CallTraces() {
+		this(CAPACITY);
+	}
+
+	/**
+	 * @param capacity number of calls kept, rounded up to a power of two
+	 */
+	CallTraces(int capacity) {
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		slots = new AtomicReferenceArray<>(size);
+		mask = size - 1;
+	}
+
+	/**
+	 * @return the trace of a call starting now, to be finished with finish()
+	 */
+	Trace start(String operation) {
+		return new Trace(operation);
+	}
+
+	/**
+	 * Ends a call and publishes its trace, overwriting the oldest one.
+	 *
+	 * @param failure the failure of the call, or null
+	 */
+	void finish(Trace trace, Throwable failure) {
+		trace.outcome = failure == null ? "success" : failure.getClass().getSimpleName();
+		trace.durationNanos = System.nanoTime() - trace.startNanos;
+		slots.set((int) (next.getAndIncrement() & mask), trace);
+	}
+
+	/**
+	 * @return the count slowest calls in the buffer, slowest first
+	 */
+	List<Trace> slowest(int count) {
+		List<Trace> traces = new ArrayList<>();
+		for (int i = 0; i < slots.length(); i++) {
+			Trace trace = slots.get(i);
+			if (trace != null) {
+				traces.add(trace);
+			}
+		}
+		traces.sort(Comparator.comparingLong(Trace::durationNanos).reversed());
+		return traces.subList(0, Math.min(Math.max(0, count), traces.size()));
+	}
+}
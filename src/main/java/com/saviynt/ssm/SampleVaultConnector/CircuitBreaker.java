@@ -0,0 +1,78 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+
+
+/**
+ * Circuit breaker of one vault endpoint.
+ * <ul>
+ * <li>CLOSED: calls go through. After failureThreshold consecutive failures the breaker opens.</li>
+ * <li>OPEN: calls are rejected without reaching the vault until openNanos have passed.</li>
+ * <li>HALF_OPEN: a single trial call goes through; its success closes the breaker, its failure opens it again.</li>
+ * </ul>
+ * Only transient failures (VaultServerException, timeouts) are reported as failures. Any answer of the vault,
+ * including 4xx errors, shows that the endpoint is up and is reported as a success.
+ **/
+final class CircuitBreaker {
+
+	enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedAtNanos;
+	private boolean trialInFlight;
+
+	/**
+	 * @return true when the call may go to the vault
+	 */
+	synchronized boolean tryAcquire(long nowNanos, long openNanos) {
+		switch (state) {
+		case OPEN:
+			if (nowNanos - openedAtNanos < openNanos) {
+				return false;
+			}
+			state = State.HALF_OPEN;
+			trialInFlight = true;
+			return true;
+		case HALF_OPEN:
+			if (trialInFlight) {
+				return false;
+			}
+			trialInFlight = true;
+			return true;
+		default:
+			return true;
+		}
+	}
+
+	synchronized void onSuccess() {
+		state = State.CLOSED;
+		consecutiveFailures = 0;
+		trialInFlight = false;
+	}
+
+	synchronized void onFailure(long nowNanos, int failureThreshold) {
+		trialInFlight = false;
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+			state = State.OPEN;
+			openedAtNanos = nowNanos;
+		}
+	}
+
+	/**
+	 * Ends a call that did not reach the vault, without a verdict on the endpoint.
+	 */
+	synchronized void onAbandoned() {
+		trialInFlight = false;
+	}
+
+	synchronized State state() {
+		return state;
+	}
+
+	synchronized int consecutiveFailures() {
+		return consecutiveFailures;
+	}
+}
@@ -0,0 +1,94 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import com.saviynt.ssm.abstractConnector.exceptions.ConnectorException;
+import com.saviynt.ssm.abstractConnector.exceptions.OperationTimeoutException;
+
+
+
+/**
+ * Helpers for the CompletableFuture based vault calls: failures travel through the futures as the original
+ * ConnectorException, and blocking callers get that exception back rather than a CompletionException.
+ **/
+final class Futures {
+
+	private Futures() {
+	}
+
+	/**
+	 * @return the exception a future failed with, without the CompletionException / ExecutionException wrappers
+	 */
+	static Throwable unwrap(Throwable failure) {
+		Throwable cause = failure;
+		while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		return cause;
+	}
+
+	static <T> CompletableFuture<T> failed(Throwable failure) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(unwrap(failure));
+		return future;
+	}
+
+	/**
+	 * Runs call, turning an exception it throws before returning its future into a failed future.
+	 */
+	static <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call) {
+		try {
+			return call.get();
+		} catch (RuntimeException e) {
+			return failed(e);
+		}
+	}
+
+	/**
+	 * Waits for the future and returns its value, or rethrows the exception it failed with.
+	 */
+	static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException | CancellationException e) {
+			throw propagate(e);
+		}
+	}
+
+	/**
+	 * Waits at most timeoutNanos for the future. On timeout the future is cancelled and OperationTimeoutException is thrown.
+	 */
+	static <T> T await(CompletableFuture<T> future, long timeoutNanos, String operation) {
+		try {
+			return future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			throw new OperationTimeoutException(operation + " did not complete within " + TimeUnit.NANOSECONDS.toSeconds(timeoutNanos) + " seconds");
+		} catch (ExecutionException | CancellationException e) {
+			throw propagate(e);
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new ConnectorException("Interrupted while waiting for " + operation, e);
+		}
+	}
+
+	/**
+	 * @return the unwrapped failure as a RuntimeException to throw, wrapped in ConnectorException when it is checked
+	 */
+	static RuntimeException propagate(Throwable failure) {
+		Throwable cause = unwrap(failure);
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new ConnectorException(cause.getMessage(), cause);
+	}
+}
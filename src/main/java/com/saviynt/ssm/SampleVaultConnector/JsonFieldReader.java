@@ -0,0 +1,90 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+
+
+/**
+ * Pulls the fields the connector needs out of vault responses with a streaming JsonParser. Nothing else in the
+ * response is materialized: unknown fields, nested objects and arrays are skipped token by token, so a large
+ * response (a folder listing, a certificate bundle, a batch of secrets) costs its bytes and the extracted
+ * values only, instead of a JsonNode tree and the maps copied out of it.
+ **/
+final class JsonFieldReader {
+
+	private static final JsonFactory factory = new ObjectMapper().getFactory();
+
+	private static final byte[] EMPTY_OBJECT = { '{', '}' };
+
+	/** Reads a response body, positioned on its first token. */
+	interface BodyReader<T> {
+		T read(JsonParser parser) throws IOException;
+	}
+
+	/** Called for every field of an object, positioned on the value of the field. */
+	interface FieldVisitor {
+		/**
+		 * @return false when the value was not consumed and must be skipped
+		 */
+		boolean visit(String name, JsonParser parser) throws IOException;
+	}
+
+	private JsonFieldReader() {
+	}
+
+	/**
+	 * Reads body, an empty body being read as an empty object.
+	 */
+	static <T> T read(byte[] body, BodyReader<T> reader) throws IOException {
+		try (JsonParser parser = factory.createParser(body == null || body.length == 0 ? EMPTY_OBJECT : body)) {
+			parser.nextToken();
+			return reader.read(parser);
+		}
+	}
+
+	/**
+	 * Reads a body streamed from in, e.g. a decompressing stream.
+	 */
+	static <T> T read(InputStream in, BodyReader<T> reader) throws IOException {
+		try (JsonParser parser = factory.createParser(in)) {
+			parser.nextToken();
+			return reader.read(parser);
+		}
+	}
+
+	/**
+	 * Visits the fields of the object the parser is positioned on and leaves the parser on its END_OBJECT.
+	 * Values the visitor does not consume are skipped without being read.
+	 */
+	static void forEachField(JsonParser parser, FieldVisitor visitor) throws IOException {
+		if (parser.currentToken() != JsonToken.START_OBJECT) {
+			throw new IOException("Expected a JSON object but found " + parser.currentToken());
+		}
+		for (String name = parser.nextFieldName(); name != null; name = parser.nextFieldName()) {
+			parser.nextToken();
+			if (!visitor.visit(name, parser)) {
+				parser.skipChildren();
+			}
+		}
+	}
+
+	/**
+	 * @return the scalar value the parser is positioned on as text, or null for a JSON null
+	 * @throws IOException when the value is an object or array, which must not be taken for an empty secret
+	 */
+	static String text(JsonParser parser) throws IOException {
+		JsonToken token = parser.currentToken();
+		if (token == JsonToken.VALUE_NULL) {
+			return null;
+		}
+		if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+			throw new IOException("Expected a JSON scalar but found " + token);
+		}
+		return parser.getValueAsString();
+	}
+}
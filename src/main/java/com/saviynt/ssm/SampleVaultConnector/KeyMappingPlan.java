@@ -0,0 +1,238 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.saviynt.ssm.abstractConnector.exceptions.MissingKeyException;
+
+
+
+/**
+ * The keyMapping of a connection's vaultConfigData, resolved once into typed, immutable entries: the keyName of
+ * every encrypted attribute split into connection name and key, its encryption mechanism and ignoreMapping, and
+ * the URL-encoded path of the key under KEY_URL. Plans are cached by the content of keyMapping, so that
+ * getSecret() and setSecret() calls of a known connection only hash and compare the map instead of casting,
+ * splitting and encoding it again.
+ **/
+final class KeyMappingPlan {
+
+	private static final Logger log = LoggerFactory.getLogger(KeyMappingPlan.class);
+
+	/** Separator put by the vault connector framework between the connection name and the keyName. */
+	static final String CONNECTION_SEPARATOR = "~#~";
+
+	/** Plans kept in the cache. The cache is emptied when it grows beyond, plans are cheap to compile again. */
+	private static final int MAX_CACHED_PLANS = 1024;
+
+	private static final KeyMappingPlan EMPTY = new KeyMappingPlan(Collections.emptyMap());
+
+	private static final ConcurrentMap<ContentKey, KeyMappingPlan> plans = new ConcurrentHashMap<>();
+
+	/** Encryption mechanisms of the vault connector framework, which handles the encryption itself. */
+	enum EncryptionMechanism {
+		NONE, ENCRYPTED, BASE64;
+
+		/**
+		 * @return the mechanism named by value, NONE when it is empty or not known: the connector does not act on it
+		 */
+		static EncryptionMechanism from(String attributeName, Object value) {
+			if (value == null || value.toString().isEmpty()) {
+				return NONE;
+			}
+			try {
+				return valueOf(value.toString().trim().toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				log.debug("encryptionmechanism {} of {} is not known, read as None", value, attributeName);
+				return NONE;
+			}
+		}
+	}
+
+	/** Resolved keyMapping of one encrypted attribute. */
+	static final class Entry {
+		final String attributeName;
+		/** keyName as sent by the framework, e.g. MyADConnector~#~abcd215 */
+		final String keyName;
+		/** Connection name prefixed to keyName, or null when keyName is not prefixed */
+		final String connectionName;
+		/** keyName without the connection name, e.g. abcd215 */
+		final String baseKeyName;
+		final EncryptionMechanism encryptionMechanism;
+		final Set<String> ignoreMapping;
+		/** keyName encoded as a path segment of KEY_URL */
+		final String keyPath;
+
+		private Entry(String attributeName, String keyName, EncryptionMechanism encryptionMechanism, Set<String> ignoreMapping) {
+			this.attributeName = attributeName;
+			this.keyName = keyName;
+			this.encryptionMechanism = encryptionMechanism;
+			this.ignoreMapping = ignoreMapping;
+			this.connectionName = ignoreMapping.contains("keyName") ? null : VaultMetrics.connectionName(keyName);
+			this.baseKeyName = connectionName == null ? keyName : keyName.substring(connectionName.length() + CONNECTION_SEPARATOR.length());
+			this.keyPath = keyPath(keyName);
+		}
+	}
+
+	/** Entries by attribute name. */
+	private final Map<String, Entry> entries;
+
+	private KeyMappingPlan(Map<String, Entry> entries) {
+		this.entries = entries;
+	}
+
+	/**
+	 * Returns the plan of the keyMapping in vaultConfigData, compiling it on first use.
+	 */
+	static KeyMappingPlan of(Map<String, Object> vaultConfigData) {
+		Object keyMapping = vaultConfigData == null ? null : vaultConfigData.get("keyMapping");
+		if (!(keyMapping instanceof Map) || ((Map<?, ?>) keyMapping).isEmpty()) {
+			return EMPTY;
+		}
+		KeyMappingPlan plan = plans.get(new ContentKey(keyMapping));
+		if (plan == null) {
+			plan = compile((Map<?, ?>) keyMapping);
+			if (plans.size() >= MAX_CACHED_PLANS) {
+				plans.clear();
+			}
+			plans.put(new ContentKey(snapshot(keyMapping)), plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Returns the entry of the encrypted attribute.
+	 *
+	 * @throws MissingKeyException when keyMapping has no keyName for the attribute
+	 */
+	Entry entry(String attributeName) {
+		Entry entry = entries.get(attributeName);
+		if (entry == null) {
+			throw new MissingKeyException("keyName is not mapped for " + attributeName + " in keyMapping");
+		}
+		return entry;
+	}
+
+	/**
+	 * @return the entries of the given encrypted attributes, in the same order
+	 * @throws MissingKeyException when keyMapping has no keyName for one of them
+	 */
+	Map<String, Entry> entries(Collection<String> attributeNames) {
+		Map<String, Entry> selected = new LinkedHashMap<>();
+		for (String attributeName : attributeNames) {
+			selected.put(attributeName, entry(attributeName));
+		}
+		return selected;
+	}
+
+	/**
+	 * @return the number of encrypted attributes mapped
+	 */
+	int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the connection prefixed to the keyNames, or null when none of them has a prefix
+	 */
+	String connectionName() {
+		for (Entry entry : entries.values()) {
+			if (entry.connectionName != null) {
+				return entry.connectionName;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return keyName encoded as a path segment of KEY_URL
+	 */
+	static String keyPath(String keyName) {
+		return URLEncoder.encode(keyName, StandardCharsets.UTF_8).replace("+", "%20");
+	}
+
+	static int cachedPlans() {
+		return plans.size();
+	}
+
+	private static KeyMappingPlan compile(Map<?, ?> keyMapping) {
+		Map<String, Entry> entries = new LinkedHashMap<>();
+		for (Map.Entry<?, ?> mapping : keyMapping.entrySet()) {
+			if (!(mapping.getValue() instanceof Map)) {
+				continue;
+			}
+			String attributeName = String.valueOf(mapping.getKey());
+			Map<?, ?> attributeMapping = (Map<?, ?>) mapping.getValue();
+			Object keyName = attributeMapping.get("keyName");
+			if (keyName == null) {
+				continue;
+			}
+			Object mechanism = attributeMapping.containsKey("encryptionmechanism")
+					? attributeMapping.get("encryptionmechanism") : attributeMapping.get("encryptionMechanism");
+			Object ignoreMapping = attributeMapping.get("ignoreMapping");
+			Set<String> ignored = new LinkedHashSet<>();
+			if (ignoreMapping instanceof Collection) {
+				((Collection<?>) ignoreMapping).forEach(name -> ignored.add(String.valueOf(name)));
+			}
+			entries.put(attributeName, new Entry(attributeName, keyName.toString(),
+					EncryptionMechanism.from(attributeName, mechanism), Collections.unmodifiableSet(ignored)));
+		}
+		return new KeyMappingPlan(Collections.unmodifiableMap(entries));
+	}
+
+	/**
+	 * Deep copy of the keyMapping, so that a cached plan is not affected by later changes of the caller's maps.
+	 */
+	private static Object snapshot(Object value) {
+		if (value instanceof Map) {
+			Map<Object, Object> copy = new LinkedHashMap<>();
+			((Map<?, ?>) value).forEach((k, v) -> copy.put(k, snapshot(v)));
+			return Collections.unmodifiableMap(copy);
+		}
+		if (value instanceof Set) {
+			Set<Object> copy = new LinkedHashSet<>();
+			((Set<?>) value).forEach(v -> copy.add(snapshot(v)));
+			return Collections.unmodifiableSet(copy);
+		}
+		if (value instanceof Collection) {
+			List<Object> copy = new ArrayList<>();
+			((Collection<?>) value).forEach(v -> copy.add(snapshot(v)));
+			return Collections.unmodifiableList(copy);
+		}
+		return value;
+	}
+
+	/**
+	 * Cache key comparing keyMapping by content. Lookups wrap the caller's map, stored keys a snapshot of it.
+	 */
+	private static final class ContentKey {
+		private final Object keyMapping;
+		private final int hash;
+
+		ContentKey(Object keyMapping) {
+			this.keyMapping = keyMapping;
+			this.hash = keyMapping.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof ContentKey && hash == ((ContentKey) o).hash && keyMapping.equals(((ContentKey) o).keyMapping);
+		}
+	}
+}
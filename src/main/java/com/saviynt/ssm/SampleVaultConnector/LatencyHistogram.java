@@ -0,0 +1,108 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+
+/**
+ * Lock-free latency histogram with log-linear buckets, in the spirit of HdrHistogram: every power of two
+ * is split into SUB_BUCKETS linear buckets, which bounds the relative error of a recorded value to
+ * 1/SUB_BUCKETS (12.5%) over the whole range of nanosecond latencies. Recording is one array slot
+ * increment plus two adders, without allocation or locking.
+ **/
+final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	long count() {
+		return count.sum();
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the upper bound, in nanoseconds, of the bucket holding the percentile
+	 */
+	long percentile(double percentile) {
+		long total = count.sum();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * @return count, mean, p50, p90, p99, p999 and max, the latencies in milliseconds
+	 */
+	Map<String, Number> snapshot() {
+		Map<String, Number> snapshot = new LinkedHashMap<>();
+		long total = count.sum();
+		snapshot.put("count", total);
+		snapshot.put("meanMillis", total == 0 ? 0.0 : millis(sum.sum() / total));
+		snapshot.put("p50Millis", millis(percentile(50)));
+		snapshot.put("p90Millis", millis(percentile(90)));
+		snapshot.put("p99Millis", millis(percentile(99)));
+		snapshot.put("p999Millis", millis(percentile(99.9)));
+		snapshot.put("maxMillis", millis(max.get()));
+		return snapshot;
+	}
+
+	void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int shift = msb - SUB_BUCKET_BITS;
+		int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+		return (shift + 1) * SUB_BUCKETS + sub;
+	}
+
+	static long upperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long sub = index % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+
+	private static double millis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
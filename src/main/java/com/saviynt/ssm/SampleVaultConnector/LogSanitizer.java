@@ -0,0 +1,110 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+
+
+/**
+ * Serializes the maps received by the connector for debug logging. The output is compact, single line JSON
+ * in which the values of sensitive attributes are replaced by a mask:
+ * <ul>
+ * <li>every attribute whose name, ignoring case, is one of the sensitive names (the vault password and the
+ * encrypted connection attributes declared in setVaultConfig()),</li>
+ * <li>every value under encryptedConnAttr, which holds the secrets themselves.</li>
+ * </ul>
+ * The JSON is written straight from the map with a shared, thread-safe JsonFactory, without building an
+ * intermediate copy. Callers are expected to guard calls with log.isDebugEnabled() so that nothing is
+ * serialized or allocated when DEBUG is off.
+ **/
+final class LogSanitizer {
+
+	static final String MASK = "******";
+
+	private static final String ENCRYPTED_CONN_ATTR = "encryptedConnAttr";
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	private static final JsonFactory factory = mapper.getFactory();
+
+	private LogSanitizer() {
+	}
+
+	/**
+	 * Returns the lower case sensitive names: password and the given encrypted connection attributes.
+	 */
+	static Set<String> sensitiveNames(Collection<String> encryptedConnectionAttributes) {
+		Set<String> names = new HashSet<>();
+		names.add(VaultConnectionSettings.PASSWORD.toLowerCase(Locale.ROOT));
+		if (encryptedConnectionAttributes != null) {
+			for (String attribute : encryptedConnectionAttributes) {
+				names.add(attribute.toLowerCase(Locale.ROOT));
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * @return the map as one line of JSON with the sensitive values masked
+	 */
+	static String toJson(Map<?, ?> map, Set<String> sensitiveNames) {
+		StringWriter out = new StringWriter(256);
+		try (JsonGenerator generator = factory.createGenerator(out)) {
+			write(generator, map, sensitiveNames, false);
+		} catch (IOException e) {
+			return "<unserializable: " + e.getMessage() + ">";
+		}
+		return out.toString();
+	}
+
+	private static void write(JsonGenerator generator, Object value, Set<String> sensitiveNames, boolean masked) throws IOException {
+		if (value == null) {
+			generator.writeNull();
+		} else if (masked) {
+			generator.writeString(MASK);
+		} else if (value instanceof Map) {
+			generator.writeStartObject();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				String name = String.valueOf(entry.getKey());
+				generator.writeFieldName(name);
+				if (ENCRYPTED_CONN_ATTR.equals(name) && entry.getValue() instanceof Map) {
+					writeMaskedValues(generator, (Map<?, ?>) entry.getValue());
+				} else {
+					write(generator, entry.getValue(), sensitiveNames, sensitiveNames.contains(name.toLowerCase(Locale.ROOT)));
+				}
+			}
+			generator.writeEndObject();
+		} else if (value instanceof Collection) {
+			generator.writeStartArray();
+			for (Object element : (Collection<?>) value) {
+				write(generator, element, sensitiveNames, false);
+			}
+			generator.writeEndArray();
+		} else if (value instanceof String) {
+			generator.writeString((String) value);
+		} else {
+			generator.writeObject(value);
+		}
+	}
+
+	private static void writeMaskedValues(JsonGenerator generator, Map<?, ?> secrets) throws IOException {
+		generator.writeStartObject();
+		for (Map.Entry<?, ?> entry : secrets.entrySet()) {
+			generator.writeFieldName(String.valueOf(entry.getKey()));
+			if (entry.getValue() == null) {
+				generator.writeNull();
+			} else {
+				generator.writeString(MASK);
+			}
+		}
+		generator.writeEndObject();
+	}
+}
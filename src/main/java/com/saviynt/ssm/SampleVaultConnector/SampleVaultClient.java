@@ -0,0 +1,509 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.saviynt.ssm.abstractConnector.exceptions.ConnectorException;
+import com.saviynt.ssm.abstractConnector.exceptions.InvalidCredentialException;
+import com.saviynt.ssm.abstractConnector.exceptions.MissingKeyException;
+import com.saviynt.ssm.abstractConnector.exceptions.OperationTimeoutException;
+
+
+
+/**
+ * HTTP client for the sample vault used in the getSecret() and setSecret() examples.
+ * The sample vault exposes the following endpoints:
+ * <pre>
+ *   POST AUTH_URL              {"username": "...", "password": "..."}  -> {"token": "...", "expiresIn": 300}
+ *   POST ACCOUNT_URL           Authorization: Bearer token             -> 2xx
+ *   GET  KEY_URL/{keyName}     Authorization: Bearer token             -> {"value": "...", "version": "..."}
+ *   PUT  KEY_URL/{keyName}     Authorization: Bearer token, {"value": "..."} -> 2xx, optionally {"version": "..."}
+ * </pre>
+ * where version, optional, changes every time the value of the key changes. A vault answering KEY_URL reads with an
+ * ETag is sent If-None-Match when a cached secret is revalidated, and may answer 304 Not Modified without a body.
+ * Responses may be compressed with gzip or deflate, which every request accepts unless HTTP_COMPRESSION is false.
+ * A vault reporting versions can also
+ * list the current versions of keys without their values, for SecretVersionTracker:
+ * <pre>
+ *   POST KEY_VERSIONS_URL      {"keys": ["k1", "k2"]}              -> {"versions": {"k1": "..."}}  (missing keys are left out)
+ * </pre>
+ * and, optionally, a batch endpoint for bulk operations:
+ * <pre>
+ *   POST BATCH_KEY_URL         {"keys": ["k1", "k2"]}              -> {"values": {"k1": "..."}}   (missing keys are left out)
+ *   PUT  BATCH_KEY_URL         {"values": {"k1": "...", "k2": "..."}} -> 2xx
+ * </pre>
+ * Every endpoint attribute may list several replicas of the vault, separated by commas: reads are routed among them
+ * by VaultReplicaRouter and fail over to the next replica on transient errors, writes go to the first (primary) one.
+ * A 401 or 403 from the vault is reported as InvalidCredentialException, a 404 from KEY_URL as MissingKeyException,
+ * a 429, a 5xx or an I/O error as VaultServerException. Reads are retried on the latter through VaultResilience.
+ * Replace this class with the API of your own vault.
+ **/
+final class SampleVaultClient {
+
+	private static final Logger log = LoggerFactory.getLogger(SampleVaultClient.class);
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	/** When false, requests do not accept compressed responses. */
+	static final String HTTP_COMPRESSION = "HTTP_COMPRESSION";
+
+	/** Reader of the responses whose body is not used. */
+	private static final JsonFieldReader.BodyReader<Void> IGNORE_BODY = parser -> null;
+
+	/** Reads a successful response: a 2xx, or a 304 to a conditional request. */
+	private interface ResponseReader<T> {
+		T read(HttpResponse<byte[]> response) throws IOException;
+	}
+
+	/**
+	 * Value of a key with its version and ETag, null when the vault does not report them. A Secret read with
+	 * If-None-Match is notModified when the vault answered 304: its value is the one the caller already holds.
+	 */
+	static final class Secret {
+		final String value;
+		final String version;
+		final String etag;
+		final boolean notModified;
+
+		Secret(String value, String version, String etag, boolean notModified) {
+			this.value = value;
+			this.version = version;
+			this.etag = etag;
+			this.notModified = notModified;
+		}
+	}
+
+	private final VaultTransport transport;
+
+	private final VaultResilience resilience;
+
+	private final VaultConcurrencyLimiter limiter;
+
+	private final VaultReplicaRouter router;
+
+	private final VaultMetrics metrics;
+
+	SampleVaultClient(VaultTransport transport, VaultResilience resilience, VaultConcurrencyLimiter limiter, VaultReplicaRouter router,
+			VaultMetrics metrics) {
+		this.transport = transport;
+		this.resilience = resilience;
+		this.limiter = limiter;
+		this.router = router;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Logs in with username and password on AUTH_URL and selects the account on ACCOUNT_URL.
+	 */
+	CompletableFuture<VaultSession> authenticate(VaultConnectionSettings settings) {
+		Map<String, String> credentials = new HashMap<>();
+		credentials.put("username", settings.username);
+		credentials.put("password", settings.password);
+		long start = System.nanoTime();
+		HttpRequest.BodyPublisher body = jsonBody(credentials);
+		return send(settings, VaultConnectionSettings.AUTH_URL, url -> HttpRequest.newBuilder(URI.create(url))
+				.header("Content-Type", "application/json")
+				.POST(body), true, parser -> {
+					String[] fields = new String[2];
+					JsonFieldReader.forEachField(parser, (name, value) -> {
+						if ("token".equals(name)) {
+							fields[0] = JsonFieldReader.text(value);
+						} else if ("expiresIn".equals(name)) {
+							fields[1] = JsonFieldReader.text(value);
+						} else {
+							return false;
+						}
+						return true;
+					});
+					return fields;
+				}).thenCompose(auth -> {
+					String token = auth[0];
+					if (token == null || token.isEmpty()) {
+						throw new InvalidCredentialException("Vault did not return a token from AUTH_URL");
+					}
+					long ttlSeconds = auth[1] != null ? parseSeconds(auth[1])
+							: settings.longAttribute(VaultConnectionSettings.SESSION_TTL_SECONDS, 300);
+					return send(settings, VaultConnectionSettings.ACCOUNT_URL, url -> authorized(URI.create(url), token)
+							.POST(HttpRequest.BodyPublishers.noBody()), true, IGNORE_BODY)
+							.thenApply(selected -> new VaultSession(token, start, TimeUnit.SECONDS.toNanos(ttlSeconds)));
+				});
+	}
+
+	/**
+	 * Reads the value stored under a key, unless it still has the ETag ifNoneMatch.
+	 *
+	 * @param keyPath     the keyName encoded as a path segment, see KeyMappingPlan.keyPath()
+	 * @param ifNoneMatch the ETag of the value the caller holds, or null
+	 * @return a future completed with the secret, notModified when the vault confirmed the value of the caller
+	 */
+	CompletableFuture<Secret> getKey(VaultConnectionSettings settings, VaultSession session, String keyPath, String ifNoneMatch) {
+		return exchange(settings, VaultConnectionSettings.KEY_URL, url -> {
+			HttpRequest.Builder request = authorized(keyUri(url, keyPath), session.token).GET();
+			return ifNoneMatch == null ? request : request.header("If-None-Match", ifNoneMatch);
+		}, true, response -> {
+			String etag = response.headers().firstValue("ETag").orElse(null);
+			if (response.statusCode() == 304) {
+				return new Secret(null, null, etag != null ? etag : ifNoneMatch, true);
+			}
+			String[] fields = new String[2];
+			body(response, parser -> {
+				JsonFieldReader.forEachField(parser, (name, field) -> {
+					if ("value".equals(name)) {
+						fields[0] = JsonFieldReader.text(field);
+					} else if ("version".equals(name)) {
+						fields[1] = JsonFieldReader.text(field);
+					} else {
+						return false;
+					}
+					return true;
+				});
+				return null;
+			});
+			return new Secret(fields[0], fields[1], etag, false);
+		});
+	}
+
+	/**
+	 * Creates or updates the value stored under a key.
+	 *
+	 * @param keyPath the keyName encoded as a path segment, see KeyMappingPlan.keyPath()
+	 * @return a future completed with the new version of the key, or null when the vault did not report it
+	 */
+	CompletableFuture<String> putKey(VaultConnectionSettings settings, VaultSession session, String keyPath, String value) {
+		Map<String, String> body = new HashMap<>();
+		body.put("value", value);
+		HttpRequest.BodyPublisher json = jsonBody(body);
+		return send(settings, VaultConnectionSettings.KEY_URL, url -> authorized(keyUri(url, keyPath), session.token)
+				.header("Content-Type", "application/json")
+				.PUT(json), false, parser -> {
+					String[] version = new String[1];
+					JsonFieldReader.forEachField(parser, (name, field) -> {
+						if (!"version".equals(name)) {
+							return false;
+						}
+						version[0] = JsonFieldReader.text(field);
+						return true;
+					});
+					return version[0];
+				});
+	}
+
+	/**
+	 * Reads several keys with one call to BATCH_KEY_URL. The values are handed to found as they are parsed;
+	 * keys missing in the vault, and keys the vault returns without being asked for, are not.
+	 */
+	CompletableFuture<Void> getKeys(VaultConnectionSettings settings, VaultSession session, List<String> keyNames, BiConsumer<String, String> found) {
+		Map<String, Object> body = new HashMap<>();
+		body.put("keys", keyNames);
+		Set<String> requested = new HashSet<>(keyNames);
+		HttpRequest.BodyPublisher json = jsonBody(body);
+		return send(settings, VaultGateway.BATCH_KEY_URL, url -> authorized(URI.create(url), session.token)
+				.header("Content-Type", "application/json")
+				.POST(json), true, parser -> {
+					JsonFieldReader.forEachField(parser, (name, values) -> {
+						if (!"values".equals(name) || values.currentToken() != JsonToken.START_OBJECT) {
+							return false;
+						}
+						JsonFieldReader.forEachField(values, (keyName, value) -> {
+							if (!requested.contains(keyName)) {
+								return false;
+							}
+							found.accept(keyName, JsonFieldReader.text(value));
+							return true;
+						});
+						return true;
+					});
+					return null;
+				});
+	}
+
+	/**
+	 * Creates or updates several keys with one call to BATCH_KEY_URL.
+	 */
+	CompletableFuture<Void> putKeys(VaultConnectionSettings settings, VaultSession session, Map<String, String> values) {
+		Map<String, Object> body = new HashMap<>();
+		body.put("values", values);
+		HttpRequest.BodyPublisher json = jsonBody(body);
+		return send(settings, VaultGateway.BATCH_KEY_URL, url -> authorized(URI.create(url), session.token)
+				.header("Content-Type", "application/json")
+				.PUT(json), false, IGNORE_BODY);
+	}
+
+	/**
+	 * Lists the current versions of several keys with one call to KEY_VERSIONS_URL. Keys missing in the vault are left out.
+	 */
+	CompletableFuture<Map<String, String>> getVersions(VaultConnectionSettings settings, VaultSession session, List<String> keyNames) {
+		Map<String, Object> body = new HashMap<>();
+		body.put("keys", keyNames);
+		Set<String> requested = new HashSet<>(keyNames);
+		HttpRequest.BodyPublisher json = jsonBody(body);
+		return send(settings, SecretVersionTracker.KEY_VERSIONS_URL, url -> authorized(URI.create(url), session.token)
+				.header("Content-Type", "application/json")
+				.POST(json), true, parser -> {
+					Map<String, String> versions = new HashMap<>();
+					JsonFieldReader.forEachField(parser, (name, values) -> {
+						if (!"versions".equals(name) || values.currentToken() != JsonToken.START_OBJECT) {
+							return false;
+						}
+						JsonFieldReader.forEachField(values, (keyName, version) -> {
+							if (!requested.contains(keyName)) {
+								return false;
+							}
+							versions.put(keyName, JsonFieldReader.text(version));
+							return true;
+						});
+						return true;
+					});
+					return versions;
+				});
+	}
+
+	/**
+	 * Opens a pooled connection to one replica of an endpoint attribute with a HEAD request, without retries: any HTTP
+	 * status means the DNS lookup, TCP connection and TLS handshake are done.
+	 *
+	 * @return the HTTP status of the replica
+	 */
+	CompletableFuture<Integer> connect(VaultConnectionSettings settings, String endpoint, String url) {
+		HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+				.method("HEAD", HttpRequest.BodyPublishers.noBody())
+				.timeout(Duration.ofSeconds(settings.longAttribute(VaultConnectionSettings.REQUEST_TIMEOUT_SECONDS, 30)))
+				.build();
+		return transport.sendAsync(settings, request, HttpResponse.BodyHandlers.discarding(), endpoint)
+				.handle((response, failure) -> {
+					if (failure != null) {
+						throw mapFailure(Futures.unwrap(failure), endpoint);
+					}
+					return response.statusCode();
+				});
+	}
+
+	private static URI keyUri(String keyUrl, String keyPath) {
+		String base = keyUrl.endsWith("/") ? keyUrl : keyUrl + "/";
+		return URI.create(base + keyPath);
+	}
+
+	private static HttpRequest.Builder authorized(URI uri, String token) {
+		return HttpRequest.newBuilder(uri).header("Authorization", "Bearer " + token);
+	}
+
+	private static HttpRequest.BodyPublisher jsonBody(Object body) {
+		try {
+			return HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body));
+		} catch (IOException e) {
+			throw new ConnectorException("Unable to serialize vault request", e);
+		}
+	}
+
+	/**
+	 * Sends the request to the replicas of the endpoint attribute: a read (idempotent call) to the replica chosen by the
+	 * router, failing over to the next one on transient failures, a write to the primary.
+	 *
+	 * @param endpoint the endpoint attribute, e.g. KEY_URL
+	 * @param request  builds the request for one URL of the endpoint attribute
+	 */
+	private <T> CompletableFuture<T> send(VaultConnectionSettings settings, String endpoint, Function<String, HttpRequest.Builder> request,
+			boolean idempotent, JsonFieldReader.BodyReader<T> reader) {
+		return exchange(settings, endpoint, request, idempotent, response -> body(response, reader));
+	}
+
+	/**
+	 * Sends the request like send(), handing the whole response to reader.
+	 */
+	private <T> CompletableFuture<T> exchange(VaultConnectionSettings settings, String endpoint, Function<String, HttpRequest.Builder> request,
+			boolean idempotent, ResponseReader<T> reader) {
+		List<String> urls = router.order(settings, settings.urls(endpoint), idempotent);
+		if (urls.isEmpty()) {
+			return Futures.failed(new ConnectorException(endpoint + " is missing in vaultConnectionAtributes"));
+		}
+		return send(settings, urls, 0, endpoint, request, idempotent, reader);
+	}
+
+	private <T> CompletableFuture<T> send(VaultConnectionSettings settings, List<String> urls, int replica, String endpoint,
+			Function<String, HttpRequest.Builder> request, boolean idempotent, ResponseReader<T> reader) {
+		boolean last = replica == urls.size() - 1;
+		//Only the last replica is retried, the others fail over right away
+		CompletableFuture<T> sent = send(settings, request.apply(urls.get(replica)), endpoint, idempotent && last, reader);
+		if (last) {
+			return sent;
+		}
+		return sent.handle((value, failure) -> {
+			if (failure == null) {
+				return CompletableFuture.completedFuture(value);
+			}
+			Throwable cause = Futures.unwrap(failure);
+			if (!VaultReplicaRouter.transientFailure(cause)) {
+				return Futures.<T>failed(cause);
+			}
+			log.debug("Vault {} failed on {}, failing over to {}: {}", endpoint, urls.get(replica), urls.get(replica + 1), cause.getMessage());
+			return send(settings, urls, replica + 1, endpoint, request, idempotent, reader);
+		}).thenCompose(Function.identity());
+	}
+
+	/**
+	 * Sends the request through the resilience layer: reads (idempotent calls) are retried on transient failures.
+	 * Every attempt waits for a slot of the concurrency limit of the vault account. The body of a successful response
+	 * is handed to reader.
+	 */
+	private <T> CompletableFuture<T> send(VaultConnectionSettings settings, HttpRequest.Builder builder, String endpoint, boolean idempotent,
+			ResponseReader<T> reader) {
+		URI uri = builder.copy().build().uri();
+		String endpointKey = uri.getScheme() + "://" + uri.getAuthority() + " " + endpoint;
+		VaultMetrics.Stats stats = metrics.stats(VaultMetrics.ENDPOINT + endpointKey);
+		VaultReplicaRouter.Replica replica = router.replica(uri);
+		CallTraces.Trace trace = settings.trace();
+		return resilience.callAsync(settings, endpointKey, idempotent, remainingNanos -> {
+			long deadline = System.nanoTime() + remainingNanos;
+			return limiter.run(settings, remainingNanos, () -> {
+				long start = System.nanoTime();
+				replica.started();
+				return send(settings, builder, endpoint, deadline - start, reader).whenComplete((response, failure) -> {
+					Throwable cause = failure == null ? null : Futures.unwrap(failure);
+					stats.record(start, cause);
+					replica.completed(System.nanoTime() - start, cause);
+					if (trace != null) {
+						trace.record(CallTraces.Phase.of(endpoint), start);
+					}
+				});
+			});
+		});
+	}
+
+	private <T> CompletableFuture<T> send(VaultConnectionSettings settings, HttpRequest.Builder builder, String endpoint, long remainingNanos,
+			ResponseReader<T> reader) {
+		long timeoutNanos = Math.min(remainingNanos,
+				TimeUnit.SECONDS.toNanos(settings.longAttribute(VaultConnectionSettings.REQUEST_TIMEOUT_SECONDS, 30)));
+		HttpRequest.Builder attempt = builder.copy()
+				.timeout(Duration.ofNanos(Math.max(1, timeoutNanos)));
+		if (settings.booleanAttribute(HTTP_COMPRESSION, true)) {
+			attempt.header("Accept-Encoding", "gzip, deflate");
+		}
+		HttpRequest request = attempt.build();
+		return transport.sendAsync(settings, request, HttpResponse.BodyHandlers.ofByteArray(), endpoint)
+				.handle((response, failure) -> {
+					if (failure != null) {
+						throw mapFailure(Futures.unwrap(failure), endpoint);
+					}
+					return read(request, response, endpoint, reader, settings.trace());
+				});
+	}
+
+	private static <T> T read(HttpRequest request, HttpResponse<byte[]> response, String endpoint, ResponseReader<T> reader,
+			CallTraces.Trace trace) {
+		int status = response.statusCode();
+		log.debug("Vault {} {} returned {}", request.method(), endpoint, status);
+		if (status == 401 || status == 403) {
+			throw new InvalidCredentialException("Vault rejected the credentials on " + endpoint + " (HTTP " + status + ")");
+		}
+		if (status == 404 && "KEY_URL".equals(endpoint)) {
+			throw new MissingKeyException("Key not found in vault: " + request.uri().getPath());
+		}
+		if (status == 429 || status >= 500) {
+			throw new VaultServerException("Vault returned HTTP " + status + " on " + endpoint, status, retryAfterMillis(response), null);
+		}
+		boolean notModified = status == 304 && request.headers().firstValue("If-None-Match").isPresent();
+		if ((status < 200 || status >= 300) && !notModified) {
+			throw new ConnectorException("Vault returned HTTP " + status + " on " + endpoint);
+		}
+		long start = System.nanoTime();
+		try {
+			return reader.read(response);
+		} catch (IOException e) {
+			throw new ConnectorException("Unable to parse vault response from " + endpoint, e);
+		} finally {
+			if (trace != null) {
+				trace.record(CallTraces.Phase.JSON_DECODING, start);
+			}
+		}
+	}
+
+	/**
+	 * Reads the body of response, decompressing it as its Content-Encoding says.
+	 */
+	private static <T> T body(HttpResponse<byte[]> response, JsonFieldReader.BodyReader<T> reader) throws IOException {
+		byte[] body = response.body();
+		String encoding = response.headers().firstValue("Content-Encoding").orElse("identity").trim().toLowerCase(Locale.ROOT);
+		if (body == null || body.length == 0 || "identity".equals(encoding)) {
+			return JsonFieldReader.read(body, reader);
+		}
+		if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+			return JsonFieldReader.read(new GZIPInputStream(new ByteArrayInputStream(body)), reader);
+		}
+		if ("deflate".equals(encoding)) {
+			return JsonFieldReader.read(new InflaterInputStream(new ByteArrayInputStream(body)), reader);
+		}
+		throw new IOException("Unsupported Content-Encoding " + encoding);
+	}
+
+	/**
+	 * Maps a failure of the HTTP exchange to the exception the connector reports for it.
+	 */
+	private static RuntimeException mapFailure(Throwable failure, String endpoint) {
+		if (failure instanceof HttpTimeoutException) {
+			return new OperationTimeoutException("Timed out calling vault " + endpoint, failure);
+		}
+		if (failure instanceof IOException) {
+			return new VaultServerException("Unable to call vault " + endpoint + ": " + failure.getMessage(), 0, 0, failure);
+		}
+		if (failure instanceof RuntimeException) {
+			return (RuntimeException) failure;
+		}
+		return new ConnectorException("Unable to call vault " + endpoint, failure);
+	}
+
+	private static long parseSeconds(String value) {
+		try {
+			return (long) Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new ConnectorException("Vault returned an invalid expiresIn from AUTH_URL: " + value);
+		}
+	}
+
+	/**
+	 * @return the delay requested by the Retry-After header of response, or 0
+	 */
+	private static long retryAfterMillis(HttpResponse<?> response) {
+		return response.headers().firstValue("Retry-After").map(value -> retryAfterMillis(value, System.currentTimeMillis())).orElse(0L);
+	}
+
+	/**
+	 * @param value a Retry-After header, in delay-seconds or as an HTTP-date (RFC 9110)
+	 * @return the delay requested by value from nowMillis, or 0 when it is past or cannot be parsed
+	 */
+	static long retryAfterMillis(String value, long nowMillis) {
+		String trimmed = value.trim();
+		try {
+			return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(trimmed)));
+		} catch (NumberFormatException e) {
+			// not delay-seconds, try an HTTP-date
+		}
+		try {
+			return Math.max(0, ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() - nowMillis);
+		} catch (DateTimeParseException e) {
+			return 0L;
+		}
+	}
+}
@@ -1,13 +1,26 @@
 package com.saviynt.ssm.SampleVaultConnector;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.saviynt.ssm.abstractConnector.VaultConnectorSpecification;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.saviynt.ssm.abstractConnector.VaultConfigVo;
 import com.saviynt.ssm.abstractConnector.exceptions.ConnectorException;
 import com.saviynt.ssm.abstractConnector.exceptions.InvalidAttributeValueException;
@@ -35,6 +48,55 @@ public class SampleVaultConnector extends VaultConnectorSpecification {
 	/** The Constant serialVersionUID. */
 	public static final long serialVersionUID = 1L;
 	
+	private static final ObjectMapper mapper = new ObjectMapper();
+	
+	private static final ObjectWriter prettyWriter = mapper.writerWithDefaultPrettyPrinter();
+	
+	/** Attribute names masked in logs, see sensitiveNames(). */
+	private static volatile Set<String> sensitiveNames;
+	
+	/** Circuit breakers and retry budgets of the vault endpoints. */
+	private static final VaultResilience resilience = new VaultResilience();
+	
+	/** When true, test() always logs in to the vault instead of answering from the last health probe. */
+	static final String TEST_LIVE_PROBE = "TEST_LIVE_PROBE";
+	
+	/** Latency and throughput of the connector operations, the vault endpoints and the connections, exposed through JMX. */
+	private static final VaultMetrics metrics = new VaultMetrics();
+	
+	private static final VaultTransport transport = new VaultTransport();
+	
+	/** Adaptive limits of the requests in flight to each vault account. */
+	private static final VaultConcurrencyLimiter limiter = new VaultConcurrencyLimiter();
+	
+	/** Latency and health of the vault replicas, routing reads among them. */
+	private static final VaultReplicaRouter router = new VaultReplicaRouter();
+	
+	/** Bulkheads bounding the getSecret() and setSecret() calls in flight of each connection and vault account. */
+	private static final VaultBulkheads bulkheads = new VaultBulkheads();
+	
+	private static final SampleVaultClient client = new SampleVaultClient(transport, resilience, limiter, router, metrics);
+	
+	/** Sessions and secret caches are shared by all connector instances, keyed by vault account. */
+	private static final VaultGateway gateway = new VaultGateway(client);
+	
+	/** Background health probes of the vault accounts in use, answering test() and failing calls fast while a vault is down. */
+	private static final VaultHealthProber health = new VaultHealthProber(client);
+	
+	/** Background warm-up of the serializers and of the connections, session and hot keys of a vault account. */
+	private static final VaultWarmup warmup = new VaultWarmup(client, gateway);
+	
+	static {
+		metrics.addGauges(gateway::gauges);
+		metrics.addGauges(transport::gauges);
+		metrics.addGauges(limiter::gauges);
+		metrics.addGauges(bulkheads::gauges);
+		metrics.addGauges(health::gauges);
+		metrics.addGauges(warmup::gauges);
+		metrics.addGauges(() -> Collections.singletonMap("keyMapping.plans", (long) KeyMappingPlan.cachedPlans()));
+		metrics.registerMBean();
+	}
+	
 	
 	
 	/**
@@ -93,61 +155,136 @@ public class SampleVaultConnector extends VaultConnectorSpecification {
 				
 		
 		/*
-		In example code we can define AUTH_URL,username,
+		For the sample vault we define AUTH_URL, username,
 		password, ACCOUNT_URL, KEY_URL as the connection parameters as below: 
 		*/		
 		List<String> connectionAttributes = configData.getConnectionAttributes();
-		//Example code
-		/*
-		connectionAttributes.add("AUTH_URL");
-		connectionAttributes.add("username");
-		connectionAttributes.add("password");
-		connectionAttributes.add("ACCOUNT_URL");
-		connectionAttributes.add("KEY_URL");
-		*/
+		connectionAttributes.add(VaultConnectionSettings.AUTH_URL);
+		connectionAttributes.add(VaultConnectionSettings.USERNAME);
+		connectionAttributes.add(VaultConnectionSettings.PASSWORD);
+		connectionAttributes.add(VaultConnectionSettings.ACCOUNT_URL);
+		connectionAttributes.add(VaultConnectionSettings.KEY_URL);
+		//Optional tuning of the session cache and of the HTTP calls made to the vault
+		connectionAttributes.add(VaultConnectionSettings.SESSION_TTL_SECONDS);
+		connectionAttributes.add(VaultConnectionSettings.SESSION_REFRESH_AHEAD_SECONDS);
+		connectionAttributes.add(VaultConnectionSettings.REQUEST_TIMEOUT_SECONDS);
+		connectionAttributes.add(SampleVaultClient.HTTP_COMPRESSION);
+		connectionAttributes.add(VaultConnectionSettings.OPERATION_TIMEOUT_SECONDS);
+		connectionAttributes.add(SecretCache.SECRET_CACHE_MAX_ENTRIES);
+		connectionAttributes.add(SecretCache.SECRET_CACHE_MAX_BYTES);
+		connectionAttributes.add(SecretCache.SECRET_CACHE_TTL_SECONDS);
+		connectionAttributes.add(SecretCache.SECRET_CACHE_NEGATIVE_TTL_SECONDS);
+		connectionAttributes.add(WarmSecretStore.WARM_CACHE_DIR);
+		connectionAttributes.add(WarmSecretStore.WARM_CACHE_MAX_BYTES);
+		connectionAttributes.add(WarmSecretStore.WARM_CACHE_LEASE_SECONDS);
+		connectionAttributes.add(WarmSecretStore.WARM_CACHE_MAX_STALE_SECONDS);
+		connectionAttributes.add(SecretVersionTracker.KEY_VERSIONS_URL);
+		connectionAttributes.add(SecretVersionTracker.CHANGE_POLL_INTERVAL_SECONDS);
+		connectionAttributes.add(SecretFetchExecutor.SECRET_FETCH_PARALLELISM);
+		connectionAttributes.add(SecretFetchExecutor.SECRET_FETCH_TIMEOUT_SECONDS);
+		connectionAttributes.add(VaultGateway.BATCH_KEY_URL);
+		connectionAttributes.add(VaultGateway.BATCH_SIZE);
+		connectionAttributes.add(VaultTransport.HTTP_VERSION);
+		connectionAttributes.add(VaultTransport.HTTP_POOL_SIZE);
+		connectionAttributes.add(VaultTransport.CONNECT_TIMEOUT_SECONDS);
+		connectionAttributes.add(VaultResilience.CIRCUIT_FAILURE_THRESHOLD);
+		connectionAttributes.add(VaultResilience.CIRCUIT_OPEN_SECONDS);
+		connectionAttributes.add(VaultResilience.RETRY_MAX_ATTEMPTS);
+		connectionAttributes.add(VaultResilience.RETRY_BASE_DELAY_MILLIS);
+		connectionAttributes.add(VaultResilience.RETRY_MAX_DELAY_MILLIS);
+		connectionAttributes.add(VaultResilience.RETRY_BUDGET_PERCENT);
+		connectionAttributes.add(VaultResilience.VAULT_CALL_DEADLINE_SECONDS);
+		connectionAttributes.add(VaultReplicaRouter.REPLICA_FAILOVER_SECONDS);
+		connectionAttributes.add(VaultConcurrencyLimiter.CONCURRENCY_LIMIT_INITIAL);
+		connectionAttributes.add(VaultConcurrencyLimiter.CONCURRENCY_LIMIT_MAX);
+		connectionAttributes.add(VaultConcurrencyLimiter.CONCURRENCY_QUEUE_TIMEOUT_SECONDS);
+		connectionAttributes.add(VaultBulkheads.CONNECTION_MAX_CONCURRENT);
+		connectionAttributes.add(VaultBulkheads.CONNECTION_MAX_QUEUED);
+		connectionAttributes.add(VaultBulkheads.ACCOUNT_MAX_CONCURRENT);
+		connectionAttributes.add(VaultBulkheads.ACCOUNT_MAX_QUEUED);
+		connectionAttributes.add(VaultHealthProber.HEALTH_PROBE_INTERVAL_SECONDS);
+		connectionAttributes.add(VaultHealthProber.HEALTH_PROBE_FAILURE_THRESHOLD);
+		connectionAttributes.add(TEST_LIVE_PROBE);
+		connectionAttributes.add(VaultWarmup.WARMUP_ENABLED);
+		connectionAttributes.add(VaultWarmup.WARMUP_KEY_NAMES);
+		connectionAttributes.add(VaultWarmup.WARMUP_TIMEOUT_SECONDS);
 		
 		
 		/*
-		 Set the attributes that need to be encrypted. In example code, making Password as encrypted attribute.
+		 Set the attributes that need to be encrypted. For the sample vault, making password as encrypted attribute.
 		*/
 		List<String> encryptedConnectionAttributes = configData.getEncryptedConnectionAttributes();
-		//example code
-		//encryptedConnectionAttributes.add("Password");
+		encryptedConnectionAttributes.add(VaultConnectionSettings.PASSWORD);
 		
 		
 		/*
 		Add description of the connection attributes as below.These will be shown on the UI
 		for to these attributes as the required input value format 
 		*/
-		String connectionAttributesDescription = configData.getConnectionAttributesDescription();
-		//Example code
-		/*
-		JSONObject jsonObject = null;
-		if(StringUtils.isNotEmpty(connectionAttributesDescription)) {
-			jsonObject = new JSONObject(connectionAttributesDescription);
-		}else {
-			jsonObject = new JSONObject();
-		}
-		jsonObject.put("AUTH_URL", "AUTHENTICATION URL");
-		jsonObject.put("username", "USERNAME");
-		jsonObject.put("password", "PASSWORD");
-		jsonObject.put("ACCOUNT_URL", "URL TO SELECT ACCOUNT");
-		jsonObject.put("KEY_URL", "URL OF KEY TO PERFORM SET AND GET SECRET OPERATIONS"); 
-		configData.setConnectionAttributesDescription(jsonObject.toString());
-		*/
+		Map<String, String> descriptions = new LinkedHashMap<>();
+		descriptions.put(VaultConnectionSettings.AUTH_URL, "AUTHENTICATION URL. SEVERAL REPLICAS MAY BE LISTED, SEPARATED BY COMMAS, THE PRIMARY FIRST");
+		descriptions.put(VaultConnectionSettings.USERNAME, "USERNAME");
+		descriptions.put(VaultConnectionSettings.PASSWORD, "PASSWORD");
+		descriptions.put(VaultConnectionSettings.ACCOUNT_URL, "URL TO SELECT ACCOUNT");
+		descriptions.put(VaultConnectionSettings.KEY_URL, "URL OF KEY TO PERFORM SET AND GET SECRET OPERATIONS. SEVERAL REPLICAS MAY BE LISTED, SEPARATED BY COMMAS, THE PRIMARY FIRST");
+		descriptions.put(VaultConnectionSettings.SESSION_TTL_SECONDS, "OPTIONAL. SESSION LIFETIME IN SECONDS WHEN THE VAULT DOES NOT RETURN ONE. DEFAULT 300");
+		descriptions.put(VaultConnectionSettings.SESSION_REFRESH_AHEAD_SECONDS, "OPTIONAL. RENEW THE SESSION THIS MANY SECONDS BEFORE IT EXPIRES. DEFAULT 30");
+		descriptions.put(VaultConnectionSettings.REQUEST_TIMEOUT_SECONDS, "OPTIONAL. TIMEOUT OF EACH VAULT REQUEST IN SECONDS. DEFAULT 30");
+		descriptions.put(SampleVaultClient.HTTP_COMPRESSION, "OPTIONAL. WHETHER VAULT RESPONSES MAY BE COMPRESSED WITH GZIP OR DEFLATE. DEFAULT TRUE");
+		descriptions.put(VaultConnectionSettings.OPERATION_TIMEOUT_SECONDS, "OPTIONAL. TIME GETSECRET AND SETSECRET WAIT FOR THE VAULT IN SECONDS. DEFAULT 120");
+		descriptions.put(SecretCache.SECRET_CACHE_MAX_ENTRIES, "OPTIONAL. NUMBER OF SECRETS CACHED IN MEMORY BY GETSECRET. DEFAULT 0 (NO CACHING)");
+		descriptions.put(SecretCache.SECRET_CACHE_MAX_BYTES, "OPTIONAL. MAXIMUM MEMORY USED BY CACHED SECRETS IN BYTES. DEFAULT 1048576");
+		descriptions.put(SecretCache.SECRET_CACHE_TTL_SECONDS, "OPTIONAL. TIME A CACHED SECRET IS SERVED BEFORE IT IS FETCHED AGAIN. DEFAULT 300");
+		descriptions.put(SecretCache.SECRET_CACHE_NEGATIVE_TTL_SECONDS, "OPTIONAL. TIME A KEY MISSING IN THE VAULT IS REMEMBERED AS MISSING. DEFAULT 30");
+		descriptions.put(WarmSecretStore.WARM_CACHE_DIR, "OPTIONAL. DIRECTORY OF THE ENCRYPTED FILE CACHE OF SECRETS SERVED AFTER A RESTART AND WHILE THE VAULT FAILS. DEFAULT NONE (DISABLED)");
+		descriptions.put(WarmSecretStore.WARM_CACHE_MAX_BYTES, "OPTIONAL. SIZE OF THE FILE CACHE OF A VAULT ACCOUNT IN BYTES. DEFAULT 8388608");
+		descriptions.put(WarmSecretStore.WARM_CACHE_LEASE_SECONDS, "OPTIONAL. TIME A SECRET IN THE FILE CACHE IS SERVED WITHOUT CALLING THE VAULT. DEFAULT 300");
+		descriptions.put(WarmSecretStore.WARM_CACHE_MAX_STALE_SECONDS, "OPTIONAL. MAXIMUM AGE OF A SECRET SERVED FROM THE FILE CACHE WHILE THE VAULT FAILS. DEFAULT 86400");
+		descriptions.put(SecretVersionTracker.KEY_VERSIONS_URL, "OPTIONAL. URL LISTING THE VERSIONS OF KEYS, POLLED TO INVALIDATE CACHED SECRETS CHANGED IN THE VAULT. DEFAULT NONE (NO POLLING)");
+		descriptions.put(SecretVersionTracker.CHANGE_POLL_INTERVAL_SECONDS, "OPTIONAL. TIME BETWEEN TWO POLLS OF THE VERSIONS OF CACHED SECRETS. DEFAULT 60");
+		descriptions.put(SecretFetchExecutor.SECRET_FETCH_PARALLELISM, "OPTIONAL. NUMBER OF ENCRYPTED ATTRIBUTES FETCHED IN PARALLEL BY GETSECRET. DEFAULT 4");
+		descriptions.put(SecretFetchExecutor.SECRET_FETCH_TIMEOUT_SECONDS, "OPTIONAL. DEADLINE IN SECONDS FOR FETCHING ALL THE SECRETS OF A GETSECRET CALL. DEFAULT 60");
+		descriptions.put(VaultGateway.BATCH_KEY_URL, "OPTIONAL. URL OF THE BATCH ENDPOINT USED BY GETSECRETS AND SETSECRETS");
+		descriptions.put(VaultGateway.BATCH_SIZE, "OPTIONAL. MAXIMUM NUMBER OF KEYS SENT IN ONE BATCH REQUEST. DEFAULT 50");
+		descriptions.put(VaultTransport.HTTP_VERSION, "OPTIONAL. HTTP_2 OR HTTP_1_1. DEFAULT HTTP_2");
+		descriptions.put(VaultTransport.HTTP_POOL_SIZE, "OPTIONAL. MAXIMUM NUMBER OF CONCURRENT REQUESTS (CONNECTIONS FOR HTTP_1_1) PER VAULT HOST. DEFAULT 20");
+		descriptions.put(VaultTransport.CONNECT_TIMEOUT_SECONDS, "OPTIONAL. TIMEOUT OF OPENING A CONNECTION TO THE VAULT IN SECONDS. DEFAULT 30");
+		descriptions.put(VaultResilience.CIRCUIT_FAILURE_THRESHOLD, "OPTIONAL. CONSECUTIVE FAILURES THAT STOP CALLS TO A VAULT ENDPOINT. DEFAULT 5");
+		descriptions.put(VaultResilience.CIRCUIT_OPEN_SECONDS, "OPTIONAL. TIME CALLS TO A FAILING VAULT ENDPOINT ARE STOPPED. DEFAULT 30");
+		descriptions.put(VaultResilience.RETRY_MAX_ATTEMPTS, "OPTIONAL. MAXIMUM ATTEMPTS OF A VAULT READ. DEFAULT 3");
+		descriptions.put(VaultResilience.RETRY_BASE_DELAY_MILLIS, "OPTIONAL. BACKOFF BEFORE THE FIRST RETRY IN MILLISECONDS. DEFAULT 100");
+		descriptions.put(VaultResilience.RETRY_MAX_DELAY_MILLIS, "OPTIONAL. MAXIMUM BACKOFF BETWEEN RETRIES IN MILLISECONDS. DEFAULT 2000");
+		descriptions.put(VaultResilience.RETRY_BUDGET_PERCENT, "OPTIONAL. RETRIES ALLOWED AS A PERCENTAGE OF VAULT CALLS. DEFAULT 20");
+		descriptions.put(VaultResilience.VAULT_CALL_DEADLINE_SECONDS, "OPTIONAL. DEADLINE OF A VAULT CALL INCLUDING RETRIES IN SECONDS. DEFAULT 60");
+		descriptions.put(VaultReplicaRouter.REPLICA_FAILOVER_SECONDS, "OPTIONAL. TIME A VAULT REPLICA THAT FAILED IS ONLY TRIED AFTER THE HEALTHY ONES. DEFAULT 30");
+		descriptions.put(VaultConcurrencyLimiter.CONCURRENCY_LIMIT_INITIAL, "OPTIONAL. REQUESTS IN FLIGHT TO A VAULT ACCOUNT THE ADAPTIVE LIMIT STARTS FROM. DEFAULT 20");
+		descriptions.put(VaultConcurrencyLimiter.CONCURRENCY_LIMIT_MAX, "OPTIONAL. UPPER BOUND OF THE ADAPTIVE LIMIT OF REQUESTS IN FLIGHT TO A VAULT ACCOUNT. 0 DISABLES IT. DEFAULT 200");
+		descriptions.put(VaultConcurrencyLimiter.CONCURRENCY_QUEUE_TIMEOUT_SECONDS, "OPTIONAL. TIME A REQUEST ABOVE THE LIMIT WAITS FOR A SLOT. DEFAULT 30");
+		descriptions.put(VaultBulkheads.CONNECTION_MAX_CONCURRENT, "OPTIONAL. GETSECRET AND SETSECRET CALLS OF ONE CONNECTION IN FLIGHT AT A TIME. 0 REMOVES THE LIMIT. DEFAULT 32");
+		descriptions.put(VaultBulkheads.CONNECTION_MAX_QUEUED, "OPTIONAL. CALLS OF ONE CONNECTION WAITING FOR A PERMIT, BEYOND WHICH CALLS ARE REJECTED AT ONCE. DEFAULT 64");
+		descriptions.put(VaultBulkheads.ACCOUNT_MAX_CONCURRENT, "OPTIONAL. GETSECRET AND SETSECRET CALLS TO ONE VAULT ACCOUNT IN FLIGHT AT A TIME. 0 REMOVES THE LIMIT. DEFAULT 128");
+		descriptions.put(VaultBulkheads.ACCOUNT_MAX_QUEUED, "OPTIONAL. CALLS TO ONE VAULT ACCOUNT WAITING FOR A PERMIT, BEYOND WHICH CALLS ARE REJECTED AT ONCE. DEFAULT 256");
+		descriptions.put(VaultHealthProber.HEALTH_PROBE_INTERVAL_SECONDS, "OPTIONAL. TIME BETWEEN TWO BACKGROUND HEALTH PROBES OF THE VAULT IN SECONDS, 0 TO DISABLE. DEFAULT 0");
+		descriptions.put(VaultHealthProber.HEALTH_PROBE_FAILURE_THRESHOLD, "OPTIONAL. FAILED HEALTH PROBES IN A ROW AFTER WHICH VAULT CALLS FAIL FAST. DEFAULT 2");
+		descriptions.put(TEST_LIVE_PROBE, "OPTIONAL. TRUE TO LOG IN TO THE VAULT ON EVERY TEST CONNECTION INSTEAD OF USING THE LAST HEALTH PROBE. DEFAULT FALSE");
+		descriptions.put(VaultWarmup.WARMUP_ENABLED, "OPTIONAL. TRUE TO CONNECT, LOG IN AND READ WARMUP_KEY_NAMES IN THE BACKGROUND ON THE FIRST TEST CONNECTION. DEFAULT FALSE");
+		descriptions.put(VaultWarmup.WARMUP_KEY_NAMES, "OPTIONAL. KEYNAMES READ BY THE WARM-UP, SEPARATED BY COMMAS, CACHED WHEN SECRET_CACHE_MAX_ENTRIES OR WARM_CACHE_DIR IS SET. DEFAULT NONE");
+		descriptions.put(VaultWarmup.WARMUP_TIMEOUT_SECONDS, "OPTIONAL. TIME THE WARM-UP OF A VAULT ACCOUNT MAY TAKE IN SECONDS. DEFAULT 30");
+		configData.setConnectionAttributesDescription(addDescriptions(configData.getConnectionAttributesDescription(), descriptions));
 		
 		/*
-		set the attributes that are required as below. In example code, making all of our connection attributes as "required"
+		set the attributes that are required as below. For the sample vault, making all of the connection URLs and credentials as "required"
 		*/
 		List<String> requiredConnectionAttributes = configData.getRequiredConnectionAttributes();
-		//example code
-		/*
-		requiredConnectionAttributes.add("AUTH_URL");
-		requiredConnectionAttributes.add("username");
-		requiredConnectionAttributes.add("password");
-		requiredConnectionAttributes.add("ACCOUNT_URL");
-		requiredConnectionAttributes.add("KEY_URL");
-		*/
+		requiredConnectionAttributes.add(VaultConnectionSettings.AUTH_URL);
+		requiredConnectionAttributes.add(VaultConnectionSettings.USERNAME);
+		requiredConnectionAttributes.add(VaultConnectionSettings.PASSWORD);
+		requiredConnectionAttributes.add(VaultConnectionSettings.ACCOUNT_URL);
+		requiredConnectionAttributes.add(VaultConnectionSettings.KEY_URL);
+		
+		//No connection data is known yet: only the serializers used by the first calls are warmed up
+		Set<String> warmupSensitiveNames = LogSanitizer.sensitiveNames(encryptedConnectionAttributes);
+		warmup.warmSerializers(() -> warmSerializers(warmupSensitiveNames));
 		
 		log.debug("Exit setVaultConfig method");
 		
@@ -231,60 +368,76 @@ public class SampleVaultConnector extends VaultConnectorSpecification {
 	 * @throws ConnectorException when the connection fails.
 	 */
 	public Map setSecret(Map<String, Object> vaultConfigData, Map<String, Object> data) throws ConnectorException {
-		log.debug("In setSecret method");
-		Map map = new HashMap();
+		return Futures.await(setSecretAsync(vaultConfigData, data), operationTimeoutNanos(data), "setSecret");
+	}
+	
+	/**
+	 * Saves the secrets in the vault without blocking the calling thread. Takes the same parameters as setSecret() and completes
+	 * with the map setSecret() returns, or fails with the ConnectorException setSecret() would throw.
+	 * The attributes are written one after the other, each write being started when the previous one has completed.
+	 */
+	public CompletableFuture<Map> setSecretAsync(Map<String, Object> vaultConfigData, Map<String, Object> data) {
+		log.debug("In setSecretAsync method");
+		long start = System.nanoTime();
+		CallTraces.Trace trace = metrics.traces().start("setSecret");
+		String[] connectionName = new String[1];
+		CompletableFuture<Void> writes;
 		try {
-			log.debug("Received following parameters in setSecret method");
-			log.debug("vaultConfigData : "+ prettyPrint(vaultConfigData));
-			log.debug("data : "+ prettyPrint(data));
+			if (log.isDebugEnabled()) {
+				log.debug("Received following parameters in setSecret method");
+				logParameters(vaultConfigData, data);
+			}
 			
-		    //Example code given below to explain how a secret can be stored in the vault using vaultConfigData and data parameters
+			//We get all the attributes required to connect to the vault from "data" (vaultConnectionAtributes).
+			//For our Sample vault these are AUTH_URL, username, password, ACCOUNT_URL and KEY_URL.
+			VaultConnectionSettings settings = VaultConnectionSettings.from(data);
+			settings.trace(trace);
+			//Calls to a vault the health probes found down fail here, without waiting for the vault
+			health.checkAvailable(settings);
 			
-			 /*
-				//We get all the attributes required to connect to the vault from "data" as follows:
-				Map<String, Object> vaultConnectionAttr = (Map<String, Object>) data.get("vaultConnectionAtributes"); 
-	
-			    //For our Sample vault we get AUTH_URL, username, password and account_url to connect to the vault from "vaultConnectionAttr" (obtained from "data") for fetching the password from the vault.
-				//Using these values connection can be established with the vault where the secret is to be stored. 
-				String url = (String) vaultConnectionAttr.get("AUTH_URL");     
-				String username = (String) vaultConnectionAttr.get("username");
-				String password = (String) vaultConnectionAttr.get("password");
-				String account_url = (String) vaultConnectionAttr.get("ACCOUNT_URL");
-				String key_url = (String) vaultConnectionAttr.get("KEY_URL");
-					
-					
-			        
-				//We get "encryptedConnAttr" from "data". We will use this to set all the encrypted connection attribute (secret) in the vault.
-				Map<String, String> encryptedConnAttr = (Map<String, String>)data.get("encryptedConnAttr");
-					
-					
-				
-				//We get keyMapping for all encrypted attribute from "vaultConfigData". This will be used to get the "keyName" with which the secret is stored in the vault.
-				Map<String, Object> vaultConfigJSON = (Map<String, Object>) vaultConfigData.get("keyMapping");
-					
-					
-				//For every encrypted connection attribute (here only "PASSWORD"), we get the keyName with which the secret is to be stored from "vaultConfigData".
-				//Every secret would be stored with corresponding value in the vault
-				for(Map.Entry<String, String> dataMap : encryptedConnAttr.entrySet()) {
-					String attributeName = (String) dataMap.getKey();
-					String attributeValue = (String) dataMap.getValue();
-					String keyName = (String) ((Map) vaultConfigJSON.get(attributeName)).get("keyName");
-					//using  attributes from vaultConnectionAttr connect to the vault and save the value of the secret ("attributvalue") with the given "keyName" in the vault
-				}
-				
+			//We get "encryptedConnAttr" from "data". We will use this to set all the encrypted connection attribute (secret) in the vault.
+			Map<String, String> encryptedConnAttr = (Map<String, String>) data.get("encryptedConnAttr");
 			
-		*/
+			//We get keyMapping for all encrypted attribute from "vaultConfigData". This will be used to get the "keyName" with which the secret is stored in the vault.
+			//The keyMapping is resolved once per distinct content and reused by later calls of the connection.
+			KeyMappingPlan plan = KeyMappingPlan.of(vaultConfigData);
 			
-			//Build the return map. This map contains one key - "status". The Key "status" would
-			//contain "success" if the secret is successfully fetched from the vault. In case any exception or error
-			//occurs, ConnectorException needs to be thrown 
-				map.put("status", "success");
-				
-		} catch(Exception e){
-			throw new ConnectorException(e.getMessage());
+			//For every encrypted connection attribute (here only "PASSWORD"), we get the keyName with which the secret is to be stored from "vaultConfigData".
+			//Every secret would be stored with corresponding value in the vault. The session (AUTH_URL and ACCOUNT_URL handshake)
+			//is shared between calls, so only the KEY_URL call is made here. Cached copies of the secrets are updated as they are written.
+			SecretCache secretCache = gateway.secretCache(settings);
+			Map<KeyMappingPlan.Entry, String> attributes = new LinkedHashMap<>();
+			if (encryptedConnAttr != null) {
+				for (Map.Entry<String, String> dataMap : encryptedConnAttr.entrySet()) {
+					KeyMappingPlan.Entry key = plan.entry(dataMap.getKey());
+					if (connectionName[0] == null) {
+						connectionName[0] = key.connectionName;
+					}
+					attributes.put(key, dataMap.getValue());
+				}
+			}
+			trace.connection(connectionName[0], attributes.size());
+			//The writes hold a permit of the connection and vault account bulkheads, so that a slow vault path only ties up its own calls
+			writes = bulkheads.run(settings, connectionName[0], operationTimeoutNanos(data), () -> {
+				CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+				for (Map.Entry<KeyMappingPlan.Entry, String> attribute : attributes.entrySet()) {
+					KeyMappingPlan.Entry key = attribute.getKey();
+					chain = chain.thenCompose(previous -> gateway.writeSecretAsync(settings, secretCache, key.keyName, key.keyPath, attribute.getValue()));
+				}
+				return chain;
+			});
+		} catch (Exception e) {
+			writes = Futures.failed(e);
 		}
-		log.debug("Exit setSecret method");
-		return map;
+		
+		//Build the return map. This map contains one key - "status". The Key "status" would
+		//contain "success" if the secret is successfully fetched from the vault. In case any exception or error
+		//occurs, ConnectorException needs to be thrown 
+		return writes.handle((done, failure) -> {
+			Map map = new HashMap();
+			map.put("status", "success");
+			return complete("setSecret", connectionName[0], start, trace, map, failure);
+		});
 	}
 	
 	
@@ -377,67 +530,199 @@ public class SampleVaultConnector extends VaultConnectorSpecification {
 	 * @throws ConnectorException when the connection fails.
 	 */
 	public Map getSecret(Map<String, Object> vaultConfigData, Map<String, Object> data) throws ConnectorException {
-		log.debug("In getSecret method");
-		Map map = new HashMap();
+		return Futures.await(getSecretAsync(vaultConfigData, data), operationTimeoutNanos(data), "getSecret");
+	}
+	
+	/**
+	 * Obtains the secrets from the vault without blocking the calling thread. Takes the same parameters as getSecret() and completes
+	 * with the map getSecret() returns, or fails with the ConnectorException getSecret() would throw.
+	 * No thread waits on the vault: the HTTP calls complete the future when the vault answers.
+	 */
+	public CompletableFuture<Map> getSecretAsync(Map<String, Object> vaultConfigData, Map<String, Object> data) {
+		log.debug("In getSecretAsync method");
+		long start = System.nanoTime();
+		CallTraces.Trace trace = metrics.traces().start("getSecret");
+		String[] connectionName = new String[1];
+		CompletableFuture<Map<String, String>> values;
 		try {
-			log.debug("Received following parameters in getSecret method");
-			log.debug("vaultConfigData : "+ prettyPrint(vaultConfigData));
-			log.debug("data : "+ prettyPrint(data));
+			if (log.isDebugEnabled()) {
+				log.debug("Received following parameters in getSecret method");
+				logParameters(vaultConfigData, data);
+			}
 			
-			//This map will be used in building the return map.
-			Map valueMap = new HashMap();
-			/*
-			//Example code given below to explain how a secret can be retrieved from the vault using vaultConfigData and data parameters
+			//We get all the attributes required to connect to the vault from "data" (vaultConnectionAtributes).
+			//For our Sample vault these are AUTH_URL, username, password, ACCOUNT_URL and KEY_URL.
+			VaultConnectionSettings settings = VaultConnectionSettings.from(data);
+			settings.trace(trace);
+			//Calls to a vault the health probes found down fail here, without waiting for the vault, unless the warm cache can serve them
+			ConnectorException unavailable = health.unavailable(settings);
+			if (unavailable != null && WarmSecretStore.Settings.from(settings) == null) {
+				throw unavailable;
+			}
 			
-				//We get all the attributes required to connect to the vault from "data" as follows: 
-				Map<String, Object> vaultConnectionAttr = (Map<String, Object>) data.get("vaultConnectionAtributes"); 
-				
-				
-				//For our Sample vault we get AUTH_URL, username, password, account_url, key_url to connect to the vault from "vaultConnectionAttr" (obtained from "data") for fetching the password from the vault.
-				//Using these values connection can be established with account in the vault where the secret is stored. 
-				String url = (String) vaultConnectionAttr.get("AUTH_URL");     
-				String username = (String) vaultConnectionAttr.get("username");
-				String password = (String) vaultConnectionAttr.get("password");
-				String account_url = (String) vaultConnectionAttr.get("ACCOUNT_URL");
-				String key_url = (String) vaultConnectionAttr.get("KEY_URL");
-					
-		        
-				//We get "encryptedConnAttr" from "data". We will use this to get all the encrypted connection attribute.
-				Map<String, String> encryptedConnAttr = (Map<String, String>)data.get("encryptedConnAttr");
-				
-					
-				
-				//We get keyMapping for all encrypted attribute from "vaultConfigData". This will be used to get the "keyName" with which the secret is stored in the vault.
-				Map<String, Object> vaultConfigJSON = (Map<String, Object>) vaultConfigData.get("keyMapping");
-				
-					
-					
-				//For every encrypted connection attribute (here only "PASSWORD"), we get the keyName from "vaultConfigData". For fetching the data from vault we get "KEY_URL" from "data".
-			    //After fetching the secret obtained from the vault is stored in a map, with key as attribute name (here "PASSWORD") and value as the secret fetched from the vault.  
-				
-				for(Map.Entry<String, String> dataMap : encryptedConnAttr.entrySet()) {
-					String keyUrl= (String) vaultConnectionAttr.get("KEY_URL");  //
-					String attributeName = (String) dataMap.getKey();
-					String keyName = (String) ((Map) vaultConfigJSON.get(attributeName)).get("keyName");
-					//using  attributes from vaultConnectionAttr and keyName secret is fetched from the sample vault and the required map is built.
-				
-					//String valueOfSecret=responseFromVault.get("value"); 
-					//valueMap.put(attributeName, valueOfSecret);
-					 
+			//We get "encryptedConnAttr" from "data". We will use this to get all the encrypted connection attribute.
+			Map<String, String> encryptedConnAttr = (Map<String, String>) data.get("encryptedConnAttr");
+			
+			//We get keyMapping for all encrypted attribute from "vaultConfigData". This will be used to get the "keyName" with which the secret is stored in the vault.
+			//The keyMapping is resolved once per distinct content and reused by later calls of the connection.
+			KeyMappingPlan plan = KeyMappingPlan.of(vaultConfigData);
+			
+			//For every encrypted connection attribute (here only "PASSWORD"), we get the keyName from "vaultConfigData" and fetch it from "KEY_URL".
+			//After fetching, the secret obtained from the vault is stored in a map, with key as attribute name (here "PASSWORD") and value as the secret fetched from the vault.
+			//The session (AUTH_URL and ACCOUNT_URL handshake) is shared between calls, so only the KEY_URL call is made here.
+			//When SECRET_CACHE_MAX_ENTRIES is set, secrets are served from the in-memory cache while they are fresh.
+			//When WARM_CACHE_DIR is set, they are also kept in an encrypted file, served after a restart and while the vault fails.
+			//When KEY_VERSIONS_URL is set, cached secrets changed in the vault are invalidated as soon as a poll sees it.
+			SecretCache secretCache = gateway.secretCache(settings);
+			//The attributes are fetched in parallel (up to SECRET_FETCH_PARALLELISM at a time) within SECRET_FETCH_TIMEOUT_SECONDS.
+			if (encryptedConnAttr != null) {
+				Map<String, KeyMappingPlan.Entry> keys = plan.entries(encryptedConnAttr.keySet());
+				for (KeyMappingPlan.Entry key : keys.values()) {
+					if (connectionName[0] == null) {
+						connectionName[0] = key.connectionName;
+					}
 				}
-			*/
-				
-			//Build the return map. This map contains two keys "encryptedConnAttr" and "status". The key "encryptedConnAttr" would contain a map
-		    //with key as all the encrypted connection attribute and corresponding value as the secret fetched for the attributes. The Key "status" would
-			//contain "success" if the secret is successfully fetched from the vault. In case of failure, ConnectorException should be thrown from the method
+				trace.connection(connectionName[0], keys.size());
+				//The fetched values are collected straight into the map returned as encryptedConnAttr.
+				//The call holds a permit of the connection and vault account bulkheads, so that a slow vault path only ties up its own calls
+				values = bulkheads.run(settings, connectionName[0], operationTimeoutNanos(data), () ->
+						SecretFetchExecutor.fetchAllAsync(settings, keys, key -> gateway.readSecretAsync(settings, secretCache, key.keyName, key.keyPath, unavailable)));
+			} else {
+				values = CompletableFuture.completedFuture(new HashMap<>());
+			}
+		} catch (Exception e) {
+			values = Futures.failed(e);
+		}
+		
+		//Build the return map. This map contains two keys "encryptedConnAttr" and "status". The key "encryptedConnAttr" would contain a map
+		//with key as all the encrypted connection attribute and corresponding value as the secret fetched for the attributes. The Key "status" would
+		//contain "success" if the secret is successfully fetched from the vault. In case of failure, ConnectorException should be thrown from the method
+		return values.handle((valueMap, failure) -> {
+			Map map = new HashMap();
 			map.put("encryptedConnAttr", valueMap);
 			map.put("status", "success");
-			
-		} catch(Exception e){
-			throw new ConnectorException(e.getMessage());
+			return complete("getSecret", connectionName[0], start, trace, map, failure);
+		});
+	}
+	
+	
+	
+	/**
+	 * Obtains the secrets of many connections in one call, for reconciliation and other jobs that would otherwise call getSecret() once per connection.
+	 * Requests that use the same vault account (AUTH_URL, username, password, ACCOUNT_URL) and KEY_URL are grouped: the group is served with one
+	 * session and its keys are read in chunks of BATCH_SIZE through BATCH_KEY_URL when the vault has a batch endpoint, or in parallel
+	 * through KEY_URL otherwise.
+	 *
+	 * @param requests Each request is a map with a "vaultConfigData" and a "data" entry, holding what would be passed to getSecret().
+	 * @returns a list with one map per request, in the order of the requests. The map of a successful request is the one getSecret() returns.
+	 *          The map of a failed request contains "status" as "failure" and "message" with the reason; a failed request does not fail the others.
+	 */
+	public List<Map> getSecrets(List<Map<String, Object>> requests) {
+		log.debug("In getSecrets method, {} requests", requests.size());
+		long start = System.nanoTime();
+		List<Map> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
+		//The first failure of a request, recorded as the failure of the call
+		RuntimeException[] failed = new RuntimeException[1];
+		for (List<BulkItem> group : groupByVaultAccount(requests, results, failed).values()) {
+			VaultConnectionSettings settings = group.get(0).settings;
+			SecretCache secretCache = gateway.secretCache(settings);
+			List<String> keyNames = new ArrayList<>();
+			for (BulkItem item : group) {
+				keyNames.addAll(item.keyNames.values());
+			}
+			Map<String, VaultGateway.Outcome> outcomes;
+			try {
+				//Like getSecret(), a group of a vault the health probes found down fails without waiting for the vault, unless the warm cache can serve it
+				ConnectorException unavailable = health.unavailable(settings);
+				if (unavailable != null && WarmSecretStore.Settings.from(settings) == null) {
+					throw unavailable;
+				}
+				//Like getSecret(), the group holds a permit of the vault account bulkhead, and of its connection when it has only one
+				outcomes = bulkheads.runBlocking(settings, connectionName(group), group.get(0).operationTimeoutNanos,
+						() -> gateway.readSecrets(settings, secretCache, new LinkedHashSet<>(keyNames), unavailable));
+			} catch (RuntimeException e) {
+				group.forEach(item -> results.set(item.index, failure(e, failed)));
+				continue;
+			}
+			for (BulkItem item : group) {
+				Map valueMap = new HashMap();
+				ConnectorException error = null;
+				for (Map.Entry<String, String> keyName : item.keyNames.entrySet()) {
+					VaultGateway.Outcome outcome = outcomes.get(keyName.getValue());
+					if (outcome.error != null) {
+						error = outcome.error;
+						break;
+					}
+					valueMap.put(keyName.getKey(), outcome.value);
+				}
+				Map map = new HashMap();
+				if (error != null) {
+					map = failure(error, failed);
+				} else {
+					map.put("encryptedConnAttr", valueMap);
+					map.put("status", "success");
+				}
+				results.set(item.index, map);
+			}
 		}
-		log.debug("Exit getSecret method");
-		return map;
+		metrics.record(VaultMetrics.OPERATION + "getSecrets", start, failed[0]);
+		log.debug("Exit getSecrets method");
+		return results;
+	}
+	
+	
+	
+	/**
+	 * Saves the secrets of many connections in one call, for password rotation and other jobs that would otherwise call setSecret() once per connection.
+	 * Requests are grouped by vault account and KEY_URL as in getSecrets(), and the keys of a group are written in chunks of BATCH_SIZE through
+	 * BATCH_KEY_URL when the vault has a batch endpoint. A chunk the batch endpoint rejects is retried key by key so that one bad key does not fail the others.
+	 *
+	 * @param requests Each request is a map with a "vaultConfigData" and a "data" entry, holding what would be passed to setSecret().
+	 * @returns a list with one map per request, in the order of the requests. The map of a successful request is the one setSecret() returns.
+	 *          The map of a failed request contains "status" as "failure" and "message" with the reason.
+	 */
+	public List<Map> setSecrets(List<Map<String, Object>> requests) {
+		log.debug("In setSecrets method, {} requests", requests.size());
+		long start = System.nanoTime();
+		List<Map> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
+		//The first failure of a request, recorded as the failure of the call
+		RuntimeException[] failed = new RuntimeException[1];
+		for (List<BulkItem> group : groupByVaultAccount(requests, results, failed).values()) {
+			VaultConnectionSettings settings = group.get(0).settings;
+			SecretCache secretCache = gateway.secretCache(settings);
+			//When two requests write the same key, the later one wins as it would with sequential setSecret() calls
+			Map<String, String> values = new LinkedHashMap<>();
+			for (BulkItem item : group) {
+				for (Map.Entry<String, String> keyName : item.keyNames.entrySet()) {
+					values.remove(keyName.getValue());
+					values.put(keyName.getValue(), item.encryptedConnAttr.get(keyName.getKey()));
+				}
+			}
+			Map<String, VaultGateway.Outcome> outcomes;
+			try {
+				health.checkAvailable(settings);
+				outcomes = bulkheads.runBlocking(settings, connectionName(group), group.get(0).operationTimeoutNanos,
+						() -> gateway.writeSecrets(settings, secretCache, values));
+			} catch (RuntimeException e) {
+				group.forEach(item -> results.set(item.index, failure(e, failed)));
+				continue;
+			}
+			for (BulkItem item : group) {
+				Map map = new HashMap();
+				map.put("status", "success");
+				for (String keyName : item.keyNames.values()) {
+					VaultGateway.Outcome outcome = outcomes.get(keyName);
+					if (outcome.error != null) {
+						map = failure(outcome.error, failed);
+						break;
+					}
+				}
+				results.set(item.index, map);
+			}
+		}
+		metrics.record(VaultMetrics.OPERATION + "setSecrets", start, failed[0]);
+		log.debug("Exit setSecrets method");
+		return results;
 	}
 	
 	
@@ -487,8 +772,12 @@ public class SampleVaultConnector extends VaultConnectorSpecification {
 	 */
 	public Map dataFormatting(Map vaultConfigData) {
 		log.debug("In dataFormatting method");
-		log.debug("Received following parameters in dataFormatting method");
-		log.debug("vaultConfigData : " + vaultConfigData);
+		long start = System.nanoTime();
+		CallTraces.Trace trace = metrics.traces().start("dataFormatting");
+		if (log.isDebugEnabled()) {
+			log.debug("Received following parameters in dataFormatting method");
+			logParameters(vaultConfigData, null);
+		}
 		
 		// The value for the incoming map ("vaultConfigData") can be modified in this method and the modified map can be returned.
 		//Example code: 
@@ -496,7 +785,17 @@ public class SampleVaultConnector extends VaultConnectorSpecification {
 			Map<String, Object> keyMapping=(Map<String, Object>) vaultConfigData.get("keyMapping");
 			keyMapping.put("keyName", "newKeyName@123");
 		*/		
-		//For sampleVault we are not doing any changes in vaultConfigData, so returning null
+		//For sampleVault we are not doing any changes in vaultConfigData, so returning null.
+		//The keyMapping is resolved here so that the following getSecret() or setSecret() call finds it ready.
+		try {
+			KeyMappingPlan plan = KeyMappingPlan.of(vaultConfigData);
+			trace.connection(plan.connectionName(), plan.size());
+		} catch (ConnectorException e) {
+			log.debug("keyMapping could not be resolved: {}", e.getMessage());
+		}
+		trace.record(CallTraces.Phase.DATA_FORMATTING, start);
+		metrics.record(VaultMetrics.OPERATION + "dataFormatting", start, null);
+		metrics.traces().finish(trace, null);
 		log.debug("Exit dataFormatting method");
 		return null;
 	}
@@ -506,20 +805,149 @@ public class SampleVaultConnector extends VaultConnectorSpecification {
 	
 	/**
 	 * This method is used to test the connection with the vault.
+	 * When HEALTH_PROBE_INTERVAL_SECONDS is set, the answer comes from the last background health probe of the vault account, see test(Map, Map, boolean).
+	 * Set TEST_LIVE_PROBE to true to log in to the vault on every call instead.
 	 */
 	public Map test(Map<String, Object> vaultConfigData, Map<String, Object> data) throws ConnectorException,
 			InvalidCredentialException, InvalidAttributeValueException, OperationTimeoutException, MissingKeyException {
+		return test(vaultConfigData, data, VaultConnectionSettings.from(data).booleanAttribute(TEST_LIVE_PROBE, false));
+	}
+	
+	
+	
+	/**
+	 * Tests the connection with the vault, from the cached health of the vault account or with a live probe.
+	 * The first test of a vault account, and every test when HEALTH_PROBE_INTERVAL_SECONDS is 0, makes a live probe.
+	 * A live probe logs in to the vault (AUTH_URL, then ACCOUNT_URL) and waits at most OPERATION_TIMEOUT_SECONDS for it.
+	 *
+	 * @param liveProbe true to probe the vault now instead of answering from the last probe
+	 * @returns a map with "status" true, and under "health" the status, latency, age and consecutive failures of the probe answered from
+	 * @throws ConnectorException the exception the probe failed with, e.g. InvalidCredentialException when the vault rejected the credentials
+	 */
+	public Map test(Map<String, Object> vaultConfigData, Map<String, Object> data, boolean liveProbe) throws ConnectorException {
 		log.debug("In test method()");
-		Map responseMap = new HashMap();
-		/* Implement Test connectivity then return as per target response.
-		For demo, we are returning "status" as "true" here */
-		responseMap.put("status", true);
-		log.debug("Exit method()");
-		return responseMap;
+		long start = System.nanoTime();
+		RuntimeException failure = null;
+		try {
+			VaultConnectionSettings settings = VaultConnectionSettings.from(data);
+			warmup.warmUp(settings);
+			VaultHealthProber.Health cached = health.watch(settings);
+			boolean live = liveProbe || cached.status == VaultHealthProber.Status.UNKNOWN
+					|| VaultHealthProber.intervalSeconds(settings) <= 0;
+			VaultHealthProber.Health result = live
+					? Futures.await(health.probe(settings), operationTimeoutNanos(data), "test") : cached;
+			if (result.failure != null) {
+				throw result.failure;
+			}
+			Map responseMap = new HashMap();
+			responseMap.put("status", true);
+			Map<String, Object> healthMap = result.toMap();
+			healthMap.put("live", live);
+			responseMap.put("health", healthMap);
+			log.debug("Exit method()");
+			return responseMap;
+		} catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		} finally {
+			metrics.record(VaultMetrics.OPERATION + "test", start, failure);
+		}
+	}
+	
+	
+	
+	/**
+	 * Returns the health of every vault account in use, as found by the last background probe, for diagnostics.
+	 *
+	 * @return a map with the vault account (username@ACCOUNT_URL) as key and its status (UNKNOWN, UP or DOWN), probe latency,
+	 *         probe age, consecutive failed probes and last error as value
+	 */
+	public Map<String, Map<String, Object>> vaultHealth() {
+		return health.states();
 	}
 
 	
 	
+	/**
+	 * Returns the circuit breaker state of every vault endpoint called so far, for diagnostics.
+	 *
+	 * @return a map with the endpoint (vault host and endpoint attribute, e.g. "https://sampleVault:443 KEY_URL") as key
+	 *         and CLOSED, OPEN or HALF_OPEN as value
+	 */
+	public Map<String, String> circuitBreakerStates() {
+		return resilience.circuitStates();
+	}
+	
+	
+	
+	/**
+	 * Returns the adaptive concurrency limit of every vault account in use, for diagnostics.
+	 *
+	 * @return a map with the vault account (username@ACCOUNT_URL) as key and its current limit, requests in flight,
+	 *         requests queued for a slot and recent latency as value
+	 */
+	public Map<String, Map<String, Object>> concurrencyLimits() {
+		return limiter.states();
+	}
+	
+	
+	
+	/**
+	 * Returns the bulkhead of every connection and vault account in use, for diagnostics.
+	 *
+	 * @return a map with the connection ("connection:MyADConnector") or vault account ("vault:abcd@xyz.com@https://sampleVault/select_account")
+	 *         as key and its maximum calls in flight, calls in flight, calls queued and calls rejected as value
+	 */
+	public Map<String, Map<String, Object>> bulkheadStates() {
+		return bulkheads.states();
+	}
+	
+	
+	
+	/**
+	 * Returns the vault hosts called so far, for diagnostics. Reads are routed among the replicas listed in an endpoint attribute.
+	 *
+	 * @return a map with the vault host (e.g. "https://sampleVault:443") as key and its recent latency, requests in flight,
+	 *         request count and whether it is healthy as value
+	 */
+	public Map<String, Map<String, Object>> vaultReplicas() {
+		return router.states();
+	}
+	
+	
+	
+	/**
+	 * Returns the slowest of the last getSecret(), setSecret() and dataFormatting() calls, for diagnostics. The last calls are
+	 * always traced in a fixed-size buffer; no secret value is recorded. Also available through JMX as the slowestCalls operation.
+	 *
+	 * @param count number of calls returned
+	 * @return the calls, slowest first, each with its operation, start time, duration, connection name, number of attributes,
+	 *         outcome ("success" or the exception type) and, per phase (auth, account, keyFetch, jsonDecoding, dataFormatting),
+	 *         the number of times it was entered, the time spent in it and when it was first entered, in milliseconds
+	 */
+	public List<Map<String, Object>> slowestCalls(int count) {
+		List<Map<String, Object>> calls = new ArrayList<>();
+		for (CallTraces.Trace trace : metrics.traces().slowest(count)) {
+			calls.add(trace.toMap());
+		}
+		return calls;
+	}
+	
+	
+	
+	/**
+	 * Returns the connector metrics, also available through JMX as com.saviynt.ssm.SampleVaultConnector:type=VaultMetrics.
+	 *
+	 * @return a map with one entry per operation ("operation:getSecret", ...), vault endpoint ("endpoint:https://sampleVault:443 KEY_URL", ...)
+	 *         and connection ("connection:MyADConnector", ...). Each entry holds the success, error and timeout counts and the
+	 *         count, mean, p50, p90, p99, p999 and max latency in milliseconds. The "gauges" entry holds the secret cache and connection pool counters.
+	 */
+	public Map<String, Object> metricsSnapshot() {
+		return metrics.snapshot();
+	}
+	
+	
+	
 	/**
 	 * Note - This is for future implementation and must be ignored for now.
 	 */
@@ -537,11 +965,189 @@ public class SampleVaultConnector extends VaultConnectorSpecification {
 	}
 	
 	/**
-	 * This is a utility method for logging the map in a proper format.
+	 * Ends a getSecret() or setSecret() call: records it in the metrics and the call traces and returns map, or throws
+	 * the ConnectorException the call failed with.
+	 */
+	private static Map complete(String operation, String connectionName, long start, CallTraces.Trace trace, Map map, Throwable failure) {
+		Throwable cause = failure == null ? null : Futures.unwrap(failure);
+		recordCall(operation, connectionName, start, cause);
+		metrics.traces().finish(trace, cause);
+		if (cause instanceof ConnectorException) {
+			throw (ConnectorException) cause;
+		}
+		if (cause != null) {
+			throw new ConnectorException(cause.getMessage());
+		}
+		log.debug("Exit {} method", operation);
+		return map;
+	}
+	
+	/**
+	 * @return the time getSecret() and setSecret() wait for the vault, OPERATION_TIMEOUT_SECONDS
+	 */
+	private static long operationTimeoutNanos(Map<String, Object> data) {
+		return TimeUnit.SECONDS.toNanos(Math.max(1, VaultConnectionSettings.operationTimeoutSeconds(data, 120)));
+	}
+	
+	/**
+	 * Records a getSecret() or setSecret() call in the metrics of the operation and of the connection.
+	 */
+	private static void recordCall(String operation, String connectionName, long start, Throwable failure) {
+		metrics.record(VaultMetrics.OPERATION + operation, start, failure);
+		if (connectionName != null) {
+			metrics.record(VaultMetrics.CONNECTION + connectionName, start, failure);
+		}
+	}
+	
+	/**
+	 * One request of getSecrets() or setSecrets(), with its keyMapping resolved.
+	 */
+	private static final class BulkItem {
+		final int index;
+		final VaultConnectionSettings settings;
+		final Map<String, String> encryptedConnAttr;
+		/** keyName of every encrypted attribute of the request */
+		final Map<String, String> keyNames = new LinkedHashMap<>();
+		/** Connection prefixed to the keyNames, or null */
+		final String connectionName;
+		final long operationTimeoutNanos;
+		
+		BulkItem(int index, VaultConnectionSettings settings, Map<String, String> encryptedConnAttr, String connectionName, long operationTimeoutNanos) {
+			this.index = index;
+			this.settings = settings;
+			this.encryptedConnAttr = encryptedConnAttr == null ? Collections.emptyMap() : encryptedConnAttr;
+			this.connectionName = connectionName;
+			this.operationTimeoutNanos = operationTimeoutNanos;
+		}
+	}
+	
+	/**
+	 * @return the connection all the requests of a group belong to, or null when they belong to several or to none
+	 */
+	private static String connectionName(List<BulkItem> group) {
+		String connectionName = group.get(0).connectionName;
+		for (BulkItem item : group) {
+			if (!StringUtils.equals(connectionName, item.connectionName)) {
+				return null;
+			}
+		}
+		return connectionName;
+	}
+	
+	/**
+	 * Resolves the requests of getSecrets() / setSecrets() and groups them by vault account, KEY_URL and BATCH_KEY_URL.
+	 * Requests that cannot be resolved get their failure map in results right away.
+	 */
+	private static Map<List<Object>, List<BulkItem>> groupByVaultAccount(List<Map<String, Object>> requests, List<Map> results,
+			RuntimeException[] failed) {
+		Map<List<Object>, List<BulkItem>> groups = new LinkedHashMap<>();
+		for (int i = 0; i < requests.size(); i++) {
+			try {
+				Map<String, Object> request = requests.get(i);
+				Map<String, Object> vaultConfigData = (Map<String, Object>) request.get("vaultConfigData");
+				Map<String, Object> data = (Map<String, Object>) request.get("data");
+				VaultConnectionSettings settings = VaultConnectionSettings.from(data);
+				KeyMappingPlan plan = KeyMappingPlan.of(vaultConfigData);
+				BulkItem item = new BulkItem(i, settings, (Map<String, String>) data.get("encryptedConnAttr"), plan.connectionName(),
+						operationTimeoutNanos(data));
+				for (String attributeName : item.encryptedConnAttr.keySet()) {
+					item.keyNames.put(attributeName, plan.entry(attributeName).keyName);
+				}
+				List<Object> groupKey = Arrays.asList(settings.accountKey(), settings.keyUrl, settings.attribute(VaultGateway.BATCH_KEY_URL));
+				groups.computeIfAbsent(groupKey, k -> new ArrayList<>()).add(item);
+			} catch (RuntimeException e) {
+				results.set(i, failure(e, failed));
+			}
+		}
+		return groups;
+	}
+	
+	/**
+	 * Builds the map returned for a failed request of getSecrets() or setSecrets().
+	 *
+	 * @param failed holds the first failure of the call, set to e when it is the first
+	 */
+	private static Map failure(RuntimeException e, RuntimeException[] failed) {
+		if (failed[0] == null) {
+			failed[0] = e;
+		}
+		Map map = new HashMap();
+		map.put("status", "failure");
+		map.put("message", e.getMessage());
+		return map;
+	}
+	
+	/**
+	 * Merges the given attribute descriptions into the JSON description already present on the vault configuration.
+	 */
+	private static String addDescriptions(String connectionAttributesDescription, Map<String, String> descriptions) {
+		try {
+			ObjectNode jsonObject = StringUtils.isNotEmpty(connectionAttributesDescription)
+					? (ObjectNode) mapper.readTree(connectionAttributesDescription) : mapper.createObjectNode();
+			descriptions.forEach(jsonObject::put);
+			return mapper.writeValueAsString(jsonObject);
+		} catch (JsonProcessingException e) {
+			throw new ConnectorException("Invalid connection attributes description: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Logs the parameters of a call at DEBUG level as one line of JSON each, with the vault password, the encrypted
+	 * connection attributes and the secrets in encryptedConnAttr masked. Callers check log.isDebugEnabled() first.
+	 */
+	private void logParameters(Map vaultConfigData, Map data) {
+		Set<String> sensitiveNames = sensitiveNames();
+		if (vaultConfigData != null) {
+			log.debug("vaultConfigData : {}", LogSanitizer.toJson(vaultConfigData, sensitiveNames));
+		}
+		if (data != null) {
+			log.debug("data : {}", LogSanitizer.toJson(data, sensitiveNames));
+		}
+	}
+	
+	/**
+	 * Returns the names of the attributes masked in logs. getVaultConfig() builds a new VaultConfigVo on each call,
+	 * so the names are computed once.
+	 */
+	private Set<String> sensitiveNames() {
+		Set<String> names = sensitiveNames;
+		if (names == null) {
+			names = LogSanitizer.sensitiveNames(getVaultConfig().getEncryptedConnectionAttributes());
+			sensitiveNames = names;
+		}
+		return names;
+	}
+	
+	/**
+	 * Loads and exercises the classes of the JSON serializers, log masking and response parsing once, so that the first
+	 * calls do not pay for it.
+	 */
+	private static void warmSerializers(Set<String> sensitiveNames) {
+		Map<String, Object> attributes = new LinkedHashMap<>();
+		attributes.put(VaultConnectionSettings.AUTH_URL, "https://vault/session/auth");
+		attributes.put(VaultConnectionSettings.PASSWORD, "warm-up");
+		Map<String, Object> data = new LinkedHashMap<>();
+		data.put("vaultConnectionAtributes", attributes);
+		data.put("encryptedConnAttr", Collections.singletonMap("PASSWORD", "warm-up"));
+		try {
+			String json = LogSanitizer.toJson(data, sensitiveNames);
+			prettyWriter.writeValueAsString(mapper.readTree(json));
+			JsonFieldReader.read(mapper.writeValueAsBytes(Collections.singletonMap("value", "warm-up")), parser -> {
+				JsonFieldReader.forEachField(parser, (name, value) -> JsonFieldReader.text(value) != null);
+				return null;
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * This is a utility method for logging the map in a proper format. The vault password, the encrypted connection
+	 * attributes and the secrets in encryptedConnAttr are masked. The connector itself logs compact JSON instead.
 	 */
 	public String prettyPrint(Map<String, Object> map) throws JsonProcessingException {
-		ObjectMapper mapper = new ObjectMapper();
-		return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(map);
+		Set<String> sensitiveNames = sensitiveNames();
+		return prettyWriter.writeValueAsString(mapper.readTree(LogSanitizer.toJson(map, sensitiveNames)));
 	}
 	
 }
\ No newline at end of file
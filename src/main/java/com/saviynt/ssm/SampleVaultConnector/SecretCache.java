@@ -0,0 +1,240 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+
+/**
+ * Bounded, opt-in read cache of secrets fetched from the vault, used by getSecret() in front of the KEY_URL call.
+ *
+ * Entries are evicted in least recently used order once either the entry count or the estimated size exceeds
+ * the configured limits, and expire after the configured TTL. Keys that the vault reported as missing are
+ * remembered for the (usually shorter) negative TTL. An expired entry the vault gave an ETag for is kept for one
+ * more TTL, so that it can be revalidated with a conditional GET and renewed without downloading it again.
+ * Secret values are held in char[] buffers which are zeroed as soon as an entry is evicted, expires, is invalidated
+ * or replaced, so that cached secrets do not linger in memory as interned or unreachable Strings.
+ **/
+final class SecretCache {
+
+	/** Maximum number of cached secrets per vault account. 0 (the default) disables the cache. */
+	static final String SECRET_CACHE_MAX_ENTRIES = "SECRET_CACHE_MAX_ENTRIES";
+	/** Maximum estimated heap used by the cached secrets of a vault account. */
+	static final String SECRET_CACHE_MAX_BYTES = "SECRET_CACHE_MAX_BYTES";
+	/** Time a fetched secret is served from the cache. */
+	static final String SECRET_CACHE_TTL_SECONDS = "SECRET_CACHE_TTL_SECONDS";
+	/** Time a key reported missing by the vault is remembered as missing. */
+	static final String SECRET_CACHE_NEGATIVE_TTL_SECONDS = "SECRET_CACHE_NEGATIVE_TTL_SECONDS";
+
+	/** Rough per entry overhead of the map node, the entry and the key string. */
+	private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+	/** Result of a cache lookup. */
+	static final class Hit {
+		/** The cached value, null when the key is cached as missing or the vault stored null. */
+		final String value;
+		/** True when the vault reported the key as missing. */
+		final boolean missing;
+		/** The version and ETag the vault reported with the value, or null. */
+		final String version;
+		final String etag;
+
+		private Hit(String value, boolean missing, String version, String etag) {
+			this.value = value;
+			this.missing = missing;
+			this.version = version;
+			this.etag = etag;
+		}
+	}
+
+	/** Cache limits read from the connection attributes. */
+	static final class Settings {
+		final int maxEntries;
+		final long maxBytes;
+		final long ttlNanos;
+		final long negativeTtlNanos;
+
+		Settings(int maxEntries, long maxBytes, long ttlNanos, long negativeTtlNanos) {
+			this.maxEntries = maxEntries;
+			this.maxBytes = maxBytes;
+			this.ttlNanos = ttlNanos;
+			this.negativeTtlNanos = negativeTtlNanos;
+		}
+
+		static Settings from(VaultConnectionSettings settings) {
+			return new Settings(settings.intAttribute(SECRET_CACHE_MAX_ENTRIES, 0),
+					settings.longAttribute(SECRET_CACHE_MAX_BYTES, 1024 * 1024),
+					TimeUnit.SECONDS.toNanos(settings.longAttribute(SECRET_CACHE_TTL_SECONDS, 300)),
+					TimeUnit.SECONDS.toNanos(settings.longAttribute(SECRET_CACHE_NEGATIVE_TTL_SECONDS, 30)));
+		}
+
+		boolean enabled() {
+			return maxEntries > 0 && maxBytes > 0 && ttlNanos > 0;
+		}
+	}
+
+	private static final class Entry {
+		final char[] value;
+		final boolean missing;
+		final String version;
+		final String etag;
+		final long expiresAtNanos;
+		final long bytes;
+
+		Entry(String key, char[] value, boolean missing, String version, String etag, long expiresAtNanos) {
+			this.value = value;
+			this.missing = missing;
+			this.version = version;
+			this.etag = etag;
+			this.expiresAtNanos = expiresAtNanos;
+			this.bytes = ENTRY_OVERHEAD_BYTES + 2L * key.length() + (value == null ? 0 : 2L * value.length)
+					+ (version == null ? 0 : 2L * version.length()) + (etag == null ? 0 : 2L * etag.length());
+		}
+
+		Hit hit() {
+			return new Hit(value == null ? null : new String(value), missing, version, etag);
+		}
+
+		void scrub() {
+			if (value != null) {
+				Arrays.fill(value, '\0');
+			}
+		}
+	}
+
+	/**
+	 * @return the cache key of keyName read from keyUrl
+	 */
+	static String key(String keyUrl, String keyName) {
+		return keyUrl + '\n' + keyName;
+	}
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final Settings settings;
+	private long bytes;
+
+	SecretCache(Settings settings) {
+		this.settings = settings;
+	}
+
+	/**
+	 * @return the cached entry or null when the key is not cached or its entry has expired
+	 */
+	synchronized Hit get(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			misses.increment();
+			return null;
+		}
+		long expiredNanos = System.nanoTime() - entry.expiresAtNanos;
+		if (expiredNanos >= 0) {
+			if (entry.etag == null || expiredNanos >= settings.ttlNanos) {
+				remove(key);
+			}
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return entry.hit();
+	}
+
+	/**
+	 * @return the expired entry of key kept to be revalidated with its ETag, or null
+	 */
+	synchronized Hit revalidatable(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null || entry.etag == null || System.nanoTime() - entry.expiresAtNanos >= settings.ttlNanos) {
+			return null;
+		}
+		return entry.hit();
+	}
+
+	synchronized void put(String key, String value) {
+		put(key, value, null, null);
+	}
+
+	/**
+	 * Caches value with the version and ETag the vault reported for it, either of them possibly null.
+	 */
+	synchronized void put(String key, String value, String version, String etag) {
+		store(key, new Entry(key, value == null ? null : value.toCharArray(), false, version, etag, System.nanoTime() + settings.ttlNanos));
+	}
+
+	/**
+	 * Caches value for at most maxTtlNanos, e.g. the lease left on a secret read from the warm cache.
+	 */
+	synchronized void put(String key, String value, long maxTtlNanos) {
+		store(key, new Entry(key, value == null ? null : value.toCharArray(), false, null, null,
+				System.nanoTime() + Math.min(settings.ttlNanos, maxTtlNanos)));
+	}
+
+	synchronized void putMissing(String key) {
+		if (settings.negativeTtlNanos > 0) {
+			store(key, new Entry(key, null, true, null, null, System.nanoTime() + settings.negativeTtlNanos));
+		} else {
+			remove(key);
+		}
+	}
+
+	synchronized void invalidate(String key) {
+		remove(key);
+	}
+
+	synchronized void clear() {
+		for (Entry entry : entries.values()) {
+			entry.scrub();
+		}
+		entries.clear();
+		bytes = 0;
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	synchronized long bytes() {
+		return bytes;
+	}
+
+	long hits() {
+		return hits.sum();
+	}
+
+	long misses() {
+		return misses.sum();
+	}
+
+	private void store(String key, Entry entry) {
+		Entry previous = entries.put(key, entry);
+		if (previous != null) {
+			bytes -= previous.bytes;
+			previous.scrub();
+		}
+		bytes += entry.bytes;
+		evictOverflow();
+	}
+
+	private void remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry != null) {
+			bytes -= entry.bytes;
+			entry.scrub();
+		}
+	}
+
+	private void evictOverflow() {
+		Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+		while ((entries.size() > settings.maxEntries || bytes > settings.maxBytes) && eldest.hasNext()) {
+			Entry entry = eldest.next().getValue();
+			eldest.remove();
+			bytes -= entry.bytes;
+			entry.scrub();
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.saviynt.ssm.abstractConnector.exceptions.ConnectorException;
+import com.saviynt.ssm.abstractConnector.exceptions.OperationTimeoutException;
+
+
+
+/**
+ * Runs the per-attribute vault fetches of one getSecret() call in parallel.
+ *
+ * At most SECRET_FETCH_PARALLELISM fetches of a call run at the same time; each worker claims the next
+ * attribute until all are done. The workers run on virtual threads when the JVM supports them (Java 21+)
+ * and on a shared, fixed size pool of daemon threads otherwise. The whole call is bounded by
+ * SECRET_FETCH_TIMEOUT_SECONDS, after which the outstanding fetches are cancelled and
+ * OperationTimeoutException is thrown. The returned map is the same as the one a sequential loop would build.
+ *
+ * fetchAllAsync() applies the same parallelism and deadline to fetches that return futures: no thread waits
+ * on a fetch, the next attribute is started when one of the running fetches completes.
+ **/
+final class SecretFetchExecutor {
+
+	private static final Logger log = LoggerFactory.getLogger(SecretFetchExecutor.class);
+
+	/** Maximum number of attributes of one getSecret() call fetched concurrently. 1 fetches sequentially. */
+	static final String SECRET_FETCH_PARALLELISM = "SECRET_FETCH_PARALLELISM";
+	/** Deadline of all the vault fetches of one getSecret() call. */
+	static final String SECRET_FETCH_TIMEOUT_SECONDS = "SECRET_FETCH_TIMEOUT_SECONDS";
+
+	private static final int POOL_SIZE = Math.max(16, 4 * Runtime.getRuntime().availableProcessors());
+
+	private static final ExecutorService executor = createExecutor();
+
+	private SecretFetchExecutor() {
+	}
+
+	/**
+	 * Fetches the key of every attribute.
+	 *
+	 * @param settings the connection attributes, used for the parallelism and the deadline
+	 * @param keyNames the key to fetch for each encrypted attribute, a keyName or a KeyMappingPlan.Entry
+	 * @param fetch    fetches the value of a key
+	 * @return the fetched value of each encrypted attribute
+	 */
+	static <K> Map<String, String> fetchAll(VaultConnectionSettings settings, Map<String, K> keyNames, Function<K, String> fetch) {
+		int parallelism = Math.min(settings.intAttribute(SECRET_FETCH_PARALLELISM, 4), keyNames.size());
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(settings.longAttribute(SECRET_FETCH_TIMEOUT_SECONDS, 60));
+		List<String> attributes = new ArrayList<>(keyNames.keySet());
+		String[] values = new String[attributes.size()];
+
+		if (parallelism <= 1) {
+			for (int i = 0; i < values.length; i++) {
+				if (System.nanoTime() - deadline >= 0) {
+					throw new OperationTimeoutException("Timed out fetching secrets from vault");
+				}
+				values[i] = fetch.apply(keyNames.get(attributes.get(i)));
+			}
+			return toMap(attributes, values);
+		}
+
+		AtomicInteger next = new AtomicInteger();
+		Runnable worker = () -> {
+			for (int i = next.getAndIncrement(); i < values.length; i = next.getAndIncrement()) {
+				values[i] = fetch.apply(keyNames.get(attributes.get(i)));
+			}
+		};
+		List<Future<?>> workers = new ArrayList<>(parallelism);
+		for (int w = 0; w < parallelism; w++) {
+			workers.add(executor.submit(worker));
+		}
+		try {
+			for (Future<?> future : workers) {
+				future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			}
+		} catch (TimeoutException e) {
+			throw new OperationTimeoutException("Timed out fetching secrets from vault");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ConnectorException) {
+				throw (ConnectorException) cause;
+			}
+			throw new ConnectorException(cause.getMessage(), cause);
+		} catch (CancellationException e) {
+			throw new ConnectorException("Secret fetch was cancelled", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ConnectorException("Interrupted while fetching secrets from vault", e);
+		} finally {
+			for (Future<?> future : workers) {
+				future.cancel(true);
+			}
+		}
+		return toMap(attributes, values);
+	}
+
+	/**
+	 * Fetches the key of every attribute without blocking, at most SECRET_FETCH_PARALLELISM at a time.
+	 *
+	 * @param settings the connection attributes, used for the parallelism and the deadline
+	 * @param keyNames the key to fetch for each encrypted attribute, a keyName or a KeyMappingPlan.Entry
+	 * @param fetch    starts the fetch of the value of a key
+	 * @return a future of the fetched value of each encrypted attribute, failed with the first failing fetch or
+	 *         with OperationTimeoutException after SECRET_FETCH_TIMEOUT_SECONDS
+	 */
+	static <K> CompletableFuture<Map<String, String>> fetchAllAsync(VaultConnectionSettings settings, Map<String, K> keyNames,
+			Function<K, CompletableFuture<String>> fetch) {
+		if (keyNames.isEmpty()) {
+			return CompletableFuture.completedFuture(new HashMap<>());
+		}
+		int parallelism = Math.max(1, Math.min(settings.intAttribute(SECRET_FETCH_PARALLELISM, 4), keyNames.size()));
+		long timeoutSeconds = settings.longAttribute(SECRET_FETCH_TIMEOUT_SECONDS, 60);
+		List<String> attributes = new ArrayList<>(keyNames.keySet());
+		String[] values = new String[attributes.size()];
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger done = new AtomicInteger();
+		CompletableFuture<Map<String, String>> result = new CompletableFuture<>();
+
+		Runnable[] startNext = new Runnable[1];
+		startNext[0] = () -> {
+			int i = next.getAndIncrement();
+			if (i >= values.length || result.isDone()) {
+				return;
+			}
+			Futures.call(() -> fetch.apply(keyNames.get(attributes.get(i)))).whenComplete((value, failure) -> {
+				if (failure != null) {
+					result.completeExceptionally(Futures.unwrap(failure));
+					return;
+				}
+				values[i] = value;
+				if (done.incrementAndGet() == values.length) {
+					result.complete(toMap(attributes, values));
+				} else {
+					startNext[0].run();
+				}
+			});
+		};
+		for (int w = 0; w < parallelism; w++) {
+			startNext[0].run();
+		}
+		return result.orTimeout(timeoutSeconds, TimeUnit.SECONDS).exceptionally(failure -> {
+			Throwable cause = Futures.unwrap(failure);
+			if (cause instanceof TimeoutException) {
+				throw new OperationTimeoutException("Timed out fetching secrets from vault");
+			}
+			throw Futures.propagate(cause);
+		});
+	}
+
+	private static Map<String, String> toMap(List<String> attributes, String[] values) {
+		Map<String, String> result = new HashMap<>();
+		for (int i = 0; i < values.length; i++) {
+			result.put(attributes.get(i), values[i]);
+		}
+		return result;
+	}
+
+	private static ExecutorService createExecutor() {
+		try {
+			ExecutorService virtual = (ExecutorService) Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			log.debug("Fetching secrets on virtual threads");
+			return virtual;
+		} catch (ReflectiveOperationException e) {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<>(), VaultThreads.daemonFactory("vault-secret-fetch"));
+			pool.allowCoreThreadTimeOut(true);
+			log.debug("Fetching secrets on a pool of {} threads", POOL_SIZE);
+			return pool;
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+
+/**
+ * Tracks the version the vault reported for every cached secret, so that cached copies are dropped when the secret
+ * changes in the vault rather than when a TTL runs out.
+ *
+ * When the vault has a KEY_VERSIONS_URL, the versions of the secrets read by a vault account and KEY_URL are
+ * polled every CHANGE_POLL_INTERVAL_SECONDS, BATCH_SIZE keys per request, and the secrets whose version changed or
+ * which disappeared are invalidated. When the connections sharing a vault account and KEY_URL disagree, the secrets are
+ * polled through the last connection with a KEY_VERSIONS_URL, at the shortest interval. Polling stops once the secrets have not been read for POLL_IDLE_INTERVALS
+ * intervals, dropping their cached copies since their changes are no longer seen.
+ *
+ * Every keyName also has a generation, bumped by each local invalidation (the start and the end of a setSecret() of the
+ * key, or a change found by the poller). A read caches its value only when the generation has not moved while it was in
+ * flight, so a read racing a rotation cannot put the old secret back into the caches.
+ **/
+final class SecretVersionTracker {
+
+	private static final Logger log = LoggerFactory.getLogger(SecretVersionTracker.class);
+
+	/** Optional endpoint of the vault listing the current version of keys, without their values. */
+	static final String KEY_VERSIONS_URL = "KEY_VERSIONS_URL";
+	/** Time between two polls of the versions of the cached secrets. */
+	static final String CHANGE_POLL_INTERVAL_SECONDS = "CHANGE_POLL_INTERVAL_SECONDS";
+
+	/** Polling of a vault account stops after this many intervals without a read. */
+	private static final int POLL_IDLE_INTERVALS = 10;
+
+	/** Lists the current versions of keys: keys missing in the result no longer exist in the vault. */
+	interface VersionLister {
+		CompletableFuture<Map<String, String>> versions(VaultConnectionSettings settings, List<String> keyNames);
+	}
+
+	/** Secrets of one vault account and KEY_URL. */
+	private final class Tracked {
+		final List<Object> key;
+		volatile VaultConnectionSettings settings;
+		/** Settings of the last connection with a KEY_VERSIONS_URL, which polls go through */
+		volatile VaultConnectionSettings pollSettings;
+		volatile long lastReadNanos = System.nanoTime();
+		/** Last version reported by the vault, by keyName. Only keys with a known version are polled. */
+		final ConcurrentMap<String, String> versions = new ConcurrentHashMap<>();
+		/** Local invalidations, by keyName */
+		final ConcurrentMap<String, Long> generations = new ConcurrentHashMap<>();
+		/** Shortest CHANGE_POLL_INTERVAL_SECONDS of the connections with a KEY_VERSIONS_URL, 0 while none has one */
+		volatile long intervalSeconds;
+		/** Set by the first connection with a KEY_VERSIONS_URL; the Tracked is dropped when its polling stops */
+		volatile boolean scheduled;
+		/** Guarded by the Tracked itself */
+		boolean polling;
+
+		Tracked(List<Object> key) {
+			this.key = key;
+		}
+
+		long generation(String keyName) {
+			return generations.getOrDefault(keyName, 0L);
+		}
+	}
+
+	private final VersionLister lister;
+
+	/** Drops the cached copies of a keyName of a vault account. */
+	private final BiConsumer<VaultConnectionSettings, String> invalidator;
+
+	private final ConcurrentMap<List<Object>, Tracked> tracked = new ConcurrentHashMap<>();
+
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	private final LongAdder changes = new LongAdder();
+
+	SecretVersionTracker(VersionLister lister, BiConsumer<VaultConnectionSettings, String> invalidator) {
+		this.lister = lister;
+		this.invalidator = invalidator;
+		this.scheduler = new ScheduledThreadPoolExecutor(1, VaultThreads.daemonFactory("vault-change-poller"));
+	}
+
+	/**
+	 * @return the generation of keyName, to be passed back to readCompleted() once the read has completed
+	 */
+	long readStarted(VaultConnectionSettings settings, String keyName) {
+		Tracked state = tracked(settings);
+		state.lastReadNanos = System.nanoTime();
+		return state.generation(keyName);
+	}
+
+	/**
+	 * Records the version of a secret read from the vault.
+	 *
+	 * @param generation the generation returned by readStarted()
+	 * @return false when keyName was invalidated while the read was in flight, in which case the value must not be cached
+	 */
+	boolean readCompleted(VaultConnectionSettings settings, String keyName, String version, long generation) {
+		Tracked state = tracked(settings);
+		if (state.generation(keyName) != generation) {
+			return false;
+		}
+		if (version != null) {
+			state.versions.put(keyName, version);
+		}
+		return true;
+	}
+
+	/**
+	 * Invalidates keyName locally, e.g. when setSecret() starts writing it: reads in flight will not cache their value.
+	 */
+	void invalidate(VaultConnectionSettings settings, String keyName) {
+		Tracked state = tracked(settings);
+		state.generations.merge(keyName, 1L, Long::sum);
+		state.versions.remove(keyName);
+	}
+
+	/**
+	 * Records the end of a write of keyName, with the version the vault reported, or null when it did not report one or
+	 * the write failed. Reads that started while the write was in flight may have fetched the old value: like
+	 * invalidate(), this keeps them from caching it.
+	 */
+	void writeCompleted(VaultConnectionSettings settings, String keyName, String version) {
+		Tracked state = tracked(settings);
+		state.generations.merge(keyName, 1L, Long::sum);
+		if (version != null) {
+			state.versions.put(keyName, version);
+		} else {
+			state.versions.remove(keyName);
+		}
+	}
+
+	/**
+	 * Records the version of a secret known to be current, e.g. restored from the warm cache, null when it is unknown.
+	 */
+	void written(VaultConnectionSettings settings, String keyName, String version) {
+		if (version != null) {
+			tracked(settings).versions.put(keyName, version);
+		}
+	}
+
+	/**
+	 * @return the number of secrets whose versions are polled, and the changes found so far
+	 */
+	Map<String, Long> gauges() {
+		long keys = 0;
+		for (Tracked state : tracked.values()) {
+			keys += state.versions.size();
+		}
+		Map<String, Long> gauges = new LinkedHashMap<>();
+		gauges.put("versions.tracked", keys);
+		gauges.put("versions.changes", changes.sum());
+		return gauges;
+	}
+
+	/**
+	 * Polls the versions of the secrets of the vault account and KEY_URL of settings now.
+	 *
+	 * @return a future completed with the number of secrets found changed
+	 */
+	CompletableFuture<Integer> poll(VaultConnectionSettings settings) {
+		return poll(tracked(settings));
+	}
+
+	private Tracked tracked(VaultConnectionSettings settings) {
+		List<Object> key = Arrays.asList(settings.accountKey(), settings.keyUrl);
+		Tracked state = tracked.computeIfAbsent(key, Tracked::new);
+		state.settings = settings;
+		if (StringUtils.isEmpty(settings.attribute(KEY_VERSIONS_URL))) {
+			return state;
+		}
+		state.pollSettings = settings;
+		long intervalSeconds = Math.max(0, settings.longAttribute(CHANGE_POLL_INTERVAL_SECONDS, 60));
+		if (intervalSeconds > 0 && (!state.scheduled || intervalSeconds < state.intervalSeconds)) {
+			schedule(state, intervalSeconds);
+		}
+		return state;
+	}
+
+	/**
+	 * Starts polling the secrets of state, or shortens its poll interval. Connections without a KEY_VERSIONS_URL or with
+	 * another interval never cancel a running schedule: the next poll is scheduled at the end of each poll with the
+	 * interval current at that time.
+	 */
+	private void schedule(Tracked state, long intervalSeconds) {
+		synchronized (state) {
+			if (state.intervalSeconds <= 0 || intervalSeconds < state.intervalSeconds) {
+				state.intervalSeconds = intervalSeconds;
+			}
+			if (state.scheduled) {
+				return;
+			}
+			state.scheduled = true;
+		}
+		scheduleNext(state);
+	}
+
+	private void scheduleNext(Tracked state) {
+		long intervalSeconds = state.intervalSeconds;
+		scheduler.schedule(() -> {
+			if (System.nanoTime() - state.lastReadNanos > TimeUnit.SECONDS.toNanos(intervalSeconds * POLL_IDLE_INTERVALS)) {
+				// Not read any more: stop polling and drop the cached copies whose changes would go unseen
+				tracked.remove(state.key, state);
+				state.versions.keySet().forEach(keyName -> invalidator.accept(state.settings, keyName));
+				return;
+			}
+			poll(state).whenComplete((count, failure) -> scheduleNext(state));
+		}, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	private CompletableFuture<Integer> poll(Tracked state) {
+		synchronized (state) {
+			if (state.polling) {
+				return CompletableFuture.completedFuture(0);
+			}
+			state.polling = true;
+		}
+		VaultConnectionSettings settings = state.pollSettings != null ? state.pollSettings : state.settings;
+		List<String> keyNames = new ArrayList<>(state.versions.keySet());
+		int batchSize = Math.max(1, settings.intAttribute(VaultGateway.BATCH_SIZE, 50));
+		CompletableFuture<Integer> found = CompletableFuture.completedFuture(0);
+		for (int from = 0; from < keyNames.size(); from += batchSize) {
+			List<String> batch = keyNames.subList(from, Math.min(keyNames.size(), from + batchSize));
+			//Batches are polled one after the other, a failed batch does not stop the others
+			found = found.thenCompose(count -> Futures.call(() -> lister.versions(settings, batch))
+					.thenApply(versions -> count + invalidateChanged(state, batch, versions))
+					.exceptionally(failure -> {
+						log.debug("Polling secret versions failed: {}", Futures.unwrap(failure).getMessage());
+						return count;
+					}));
+		}
+		return found.whenComplete((count, failure) -> {
+			synchronized (state) {
+				state.polling = false;
+			}
+		});
+	}
+
+	private int invalidateChanged(Tracked state, List<String> batch, Map<String, String> current) {
+		int count = 0;
+		for (String keyName : batch) {
+			String known = state.versions.get(keyName);
+			String version = current.get(keyName);
+			if (known != null && !known.equals(version) && state.versions.remove(keyName, known)) {
+				//Changed or deleted in the vault
+				state.generations.merge(keyName, 1L, Long::sum);
+				invalidator.accept(state.settings, keyName);
+				count++;
+			}
+		}
+		if (count > 0) {
+			changes.add(count);
+			log.debug("{} secrets changed in vault {}", count, state.key.get(0));
+		}
+		return count;
+	}
+}
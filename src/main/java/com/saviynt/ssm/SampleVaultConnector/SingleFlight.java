@@ -0,0 +1,64 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+
+
+/**
+ * Coalesces concurrent identical requests: while a load for a key is in flight, other callers asking for the
+ * same key wait for its result instead of issuing their own. The first caller starts the load on its own thread,
+ * waiters share its future. A failure reaches every waiter as the very same ConnectorException instance. Nothing is kept once
+ * the load completes, so this works with or without a result cache in front of it.
+ **/
+final class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+	private final LongAdder coalesced = new LongAdder();
+
+	/**
+	 * Runs loader for key, or waits for the load of key already in flight.
+	 */
+	V execute(K key, Supplier<V> loader) {
+		return Futures.join(executeAsync(key, () -> CompletableFuture.completedFuture(loader.get())));
+	}
+
+	/**
+	 * Starts loader for key, or returns the future of the load of key already in flight.
+	 */
+	CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> loader) {
+		CompletableFuture<V> mine = new CompletableFuture<>();
+		CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+		if (existing != null) {
+			coalesced.increment();
+			return existing;
+		}
+		Futures.call(loader).whenComplete((value, failure) -> {
+			inFlight.remove(key, mine);
+			if (failure != null) {
+				mine.completeExceptionally(Futures.unwrap(failure));
+			} else {
+				mine.complete(value);
+			}
+		});
+		return mine;
+	}
+
+	/**
+	 * @return the number of loads in flight
+	 */
+	int inFlight() {
+		return inFlight.size();
+	}
+
+	/**
+	 * @return the number of callers that waited for a load started by another caller
+	 */
+	long coalesced() {
+		return coalesced.sum();
+	}
+}
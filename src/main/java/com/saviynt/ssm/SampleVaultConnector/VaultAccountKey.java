@@ -0,0 +1,70 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Objects;
+
+
+
+/**
+ * Identifies one vault account, that is one AUTH_URL / username / password / ACCOUNT_URL combination.
+ * Connections sharing the same account share one authenticated session. The password is only kept
+ * as a SHA-256 digest so that the key can be held in long lived caches and logged safely.
+ **/
+final class VaultAccountKey {
+
+	final String authUrl;
+	final String username;
+	final String accountUrl;
+	private final String passwordHash;
+	private final int hash;
+
+	VaultAccountKey(String authUrl, String username, String password, String accountUrl) {
+		this.authUrl = authUrl;
+		this.username = username;
+		this.accountUrl = accountUrl;
+		this.passwordHash = sha256(password);
+		this.hash = Objects.hash(authUrl, username, accountUrl, passwordHash);
+	}
+
+	static VaultAccountKey of(VaultConnectionSettings settings) {
+		return new VaultAccountKey(settings.authUrl, settings.username, settings.password, settings.accountUrl);
+	}
+
+	private static String sha256(String value) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return Base64.getEncoder().encodeToString(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof VaultAccountKey)) {
+			return false;
+		}
+		VaultAccountKey other = (VaultAccountKey) o;
+		return hash == other.hash
+				&& authUrl.equals(other.authUrl)
+				&& username.equals(other.username)
+				&& accountUrl.equals(other.accountUrl)
+				&& passwordHash.equals(other.passwordHash);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return username + "@" + accountUrl;
+	}
+}
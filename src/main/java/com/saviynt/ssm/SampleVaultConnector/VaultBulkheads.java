@@ -0,0 +1,181 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+
+
+/**
+ * Bulkheads isolating the getSecret() and setSecret() calls of every connection, and of every vault account, from
+ * the others. Each bulkhead lets a bounded number of calls in flight and queues a bounded number more; a call finding
+ * the queue full is rejected at once with VaultSaturatedException, so that a connection whose vault path is slow or
+ * misconfigured holds at most its own share of the EIC worker threads while the other connections keep their throughput.
+ *
+ * The connection is the prefix of the keyNames (MyADConnector in MyADConnector~#~abcd215). A call holds a permit of
+ * its connection, then of its vault account, for its whole duration. A bulkhead keeps the limits of the first call
+ * creating it; calls with other limits share it.
+ **/
+final class VaultBulkheads {
+
+	/** Calls of one connection in flight at a time. 0 removes the limit. */
+	static final String CONNECTION_MAX_CONCURRENT = "CONNECTION_MAX_CONCURRENT";
+	/** Calls of one connection waiting for a permit, beyond which calls are rejected. */
+	static final String CONNECTION_MAX_QUEUED = "CONNECTION_MAX_QUEUED";
+	/** Calls to one vault account in flight at a time. 0 removes the limit. */
+	static final String ACCOUNT_MAX_CONCURRENT = "ACCOUNT_MAX_CONCURRENT";
+	/** Calls to one vault account waiting for a permit, beyond which calls are rejected. */
+	static final String ACCOUNT_MAX_QUEUED = "ACCOUNT_MAX_QUEUED";
+
+	/** Permits and queue of one connection or vault account. */
+	private static final class Bulkhead {
+		final String name;
+		final int maxConcurrent;
+		final int maxQueued;
+		final AsyncSemaphore permits;
+		final LongAdder rejected = new LongAdder();
+
+		Bulkhead(String name, int maxConcurrent, int maxQueued) {
+			this.name = name;
+			this.maxConcurrent = maxConcurrent;
+			this.maxQueued = maxQueued;
+			this.permits = new AsyncSemaphore(maxConcurrent);
+		}
+
+		CompletableFuture<Void> acquire(long timeoutNanos) {
+			CompletableFuture<Void> permit = permits.tryAcquire(timeoutNanos, maxQueued);
+			if (permit == null) {
+				rejected.increment();
+				return Futures.failed(new VaultSaturatedException(name + " is saturated: " + maxConcurrent + " calls in flight and "
+						+ maxQueued + " queued, call rejected"));
+			}
+			return permit.handle((held, failure) -> {
+				if (failure != null) {
+					rejected.increment();
+					throw new VaultSaturatedException(name + " is saturated: no permit within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos)
+							+ " ms, " + maxConcurrent + " calls in flight");
+				}
+				return held;
+			});
+		}
+
+		Map<String, Object> toMap() {
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("maxConcurrent", maxConcurrent);
+			map.put("inFlight", permits.inUse());
+			map.put("queued", permits.queued());
+			map.put("rejected", rejected.sum());
+			return map;
+		}
+	}
+
+	private final ConcurrentMap<String, Bulkhead> connections = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<VaultAccountKey, Bulkhead> accounts = new ConcurrentHashMap<>();
+
+	/**
+	 * Runs call once it holds a permit of connectionName and of the vault account of settings.
+	 *
+	 * @param connectionName the connection making the call, or null when its keyNames carry none
+	 * @param timeoutNanos   time the call may wait for its permits
+	 * @return the future of call, or a future failed with VaultSaturatedException when a bulkhead turned the call away
+	 */
+	<T> CompletableFuture<T> run(VaultConnectionSettings settings, String connectionName, long timeoutNanos, Supplier<CompletableFuture<T>> call) {
+		long deadline = System.nanoTime() + timeoutNanos;
+		Bulkhead connection = connection(settings, connectionName);
+		Bulkhead account = account(settings);
+		return within(connection, timeoutNanos, () -> within(account, deadline - System.nanoTime(), call));
+	}
+
+	/**
+	 * Runs a blocking call, such as a group of getSecrets() or setSecrets(), on the calling thread once it holds a permit of
+	 * connectionName and of the vault account of settings.
+	 *
+	 * @throws VaultSaturatedException when a bulkhead turned the call away
+	 */
+	<T> T runBlocking(VaultConnectionSettings settings, String connectionName, long timeoutNanos, Supplier<T> call) {
+		long deadline = System.nanoTime() + timeoutNanos;
+		Bulkhead connection = connection(settings, connectionName);
+		Bulkhead account = account(settings);
+		if (connection != null) {
+			Futures.join(connection.acquire(timeoutNanos));
+		}
+		try {
+			if (account != null) {
+				Futures.join(account.acquire(deadline - System.nanoTime()));
+			}
+			try {
+				return call.get();
+			} finally {
+				if (account != null) {
+					account.permits.release();
+				}
+			}
+		} finally {
+			if (connection != null) {
+				connection.permits.release();
+			}
+		}
+	}
+
+	/**
+	 * @return the calls in flight, queued and rejected of every connection and vault account, e.g. "connection:MyADConnector" -> {...}
+	 */
+	Map<String, Map<String, Object>> states() {
+		Map<String, Map<String, Object>> states = new LinkedHashMap<>();
+		connections.forEach((name, bulkhead) -> states.put("connection:" + name, bulkhead.toMap()));
+		accounts.forEach((key, bulkhead) -> states.put("vault:" + key, bulkhead.toMap()));
+		return states;
+	}
+
+	/**
+	 * @return the calls rejected by the bulkheads so far
+	 */
+	Map<String, Long> gauges() {
+		long rejected = 0;
+		for (Bulkhead bulkhead : connections.values()) {
+			rejected += bulkhead.rejected.sum();
+		}
+		for (Bulkhead bulkhead : accounts.values()) {
+			rejected += bulkhead.rejected.sum();
+		}
+		Map<String, Long> gauges = new LinkedHashMap<>();
+		gauges.put("bulkhead.rejected", rejected);
+		return gauges;
+	}
+
+	private static <T> CompletableFuture<T> within(Bulkhead bulkhead, long timeoutNanos, Supplier<CompletableFuture<T>> call) {
+		if (bulkhead == null) {
+			return Futures.call(call::get);
+		}
+		return bulkhead.acquire(timeoutNanos).thenCompose(held -> Futures.call(call::get).whenComplete((value, failure) -> bulkhead.permits.release()));
+	}
+
+	private Bulkhead connection(VaultConnectionSettings settings, String connectionName) {
+		return connectionName == null ? null : bulkhead(connections, connectionName, "Connection " + connectionName,
+				settings.intAttribute(CONNECTION_MAX_CONCURRENT, 32), settings.intAttribute(CONNECTION_MAX_QUEUED, 64));
+	}
+
+	private Bulkhead account(VaultConnectionSettings settings) {
+		return bulkhead(accounts, settings.accountKey(), "Vault " + settings.accountKey(),
+				settings.intAttribute(ACCOUNT_MAX_CONCURRENT, 128), settings.intAttribute(ACCOUNT_MAX_QUEUED, 256));
+	}
+
+	/**
+	 * @return the bulkhead of key, created with the limits of the first caller: a caller with other limits, or with no
+	 *         limit, shares it as it is, so that the calls of every caller count against the same permits. Null when
+	 *         key has no bulkhead yet and maxConcurrent is 0.
+	 */
+	private static <K> Bulkhead bulkhead(ConcurrentMap<K, Bulkhead> bulkheads, K key, String name, int maxConcurrent, int maxQueued) {
+		Bulkhead bulkhead = bulkheads.get(key);
+		if (bulkhead != null || maxConcurrent <= 0) {
+			return bulkhead;
+		}
+		return bulkheads.computeIfAbsent(key, k -> new Bulkhead(name, maxConcurrent, Math.max(0, maxQueued)));
+	}
+}
@@ -0,0 +1,270 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.saviynt.ssm.abstractConnector.exceptions.OperationTimeoutException;
+
+
+
+/**
+ * Adaptive limit of the requests in flight to each vault account, so that overlapping jobs slow down before the
+ * vault starts throttling them instead of all retrying at once once it does.
+ *
+ * The limit follows AIMD: it grows by one per limit's worth of successful requests while it is in use, is halved
+ * when the vault throttles (HTTP 429 / 503) or a request times out, and shrinks by a tenth when the recent latency
+ * exceeds LATENCY_TOLERANCE times the long term latency, a sign that requests queue up in the vault. It is
+ * decreased at most once per recent latency, so that a burst of throttled requests counts once.
+ *
+ * Requests above the limit wait in arrival order, for at most CONCURRENCY_QUEUE_TIMEOUT_SECONDS and never past the
+ * deadline of their call; a request that cannot get a slot in time fails with VaultSaturatedException. A Retry-After
+ * received from the vault holds every request of the account until it has passed.
+ **/
+final class VaultConcurrencyLimiter {
+
+	private static final Logger log = LoggerFactory.getLogger(VaultConcurrencyLimiter.class);
+
+	/** Limit a vault account starts from. */
+	static final String CONCURRENCY_LIMIT_INITIAL = "CONCURRENCY_LIMIT_INITIAL";
+	/** Upper bound of the limit. 0 disables the limiter. */
+	static final String CONCURRENCY_LIMIT_MAX = "CONCURRENCY_LIMIT_MAX";
+	/** Time a request waits for a slot. */
+	static final String CONCURRENCY_QUEUE_TIMEOUT_SECONDS = "CONCURRENCY_QUEUE_TIMEOUT_SECONDS";
+
+	/** Recent latency above this multiple of the long term latency shrinks the limit. */
+	private static final double LATENCY_TOLERANCE = 2.0;
+	/** Latency swings below this are noise rather than queueing. */
+	private static final long LATENCY_NOISE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	/** Weight of a new sample in the recent latency. */
+	private static final double RECENT_WEIGHT = 0.2;
+	/** Weight of a new sample in the long term latency, which thereby follows a vault whose latency changed for good. */
+	private static final double LONG_TERM_WEIGHT = 0.01;
+
+	/** Limit and queue of one vault account. */
+	private static final class Limit {
+		final VaultAccountKey key;
+		/** Guarded by the Limit itself */
+		double limit;
+		int max;
+		int inFlight;
+		final Deque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+		long pausedUntilNanos;
+		boolean resumeScheduled;
+		long lastDecreaseNanos;
+		double recentNanos;
+		double longTermNanos;
+
+		Limit(VaultAccountKey key, int initial, int max) {
+			this.key = key;
+			this.max = max;
+			this.limit = Math.min(initial, max);
+		}
+
+		synchronized void configure(int max) {
+			if (this.max != max) {
+				this.max = max;
+				limit = Math.min(limit, max);
+			}
+		}
+
+		/**
+		 * @return a future completed once the caller holds a slot, which it must then release()
+		 */
+		CompletableFuture<Void> acquire(long timeoutNanos) {
+			CompletableFuture<Void> waiter;
+			synchronized (this) {
+				if (waiters.isEmpty() && inFlight < (int) limit && System.nanoTime() - pausedUntilNanos >= 0) {
+					inFlight++;
+					return CompletableFuture.completedFuture(null);
+				}
+				waiter = new CompletableFuture<>();
+				waiters.addLast(waiter);
+			}
+			waiter.orTimeout(Math.max(1, timeoutNanos), TimeUnit.NANOSECONDS).whenComplete((ignored, failure) -> {
+				if (failure != null) {
+					synchronized (this) {
+						waiters.remove(waiter);
+					}
+				}
+			});
+			//The queue may be waiting for a pause to end
+			dispatch();
+			return waiter;
+		}
+
+		/**
+		 * Frees the slot of a request, adjusting the limit to how the request went.
+		 *
+		 * @param failure the failure of the request, or null
+		 */
+		void release(long latencyNanos, Throwable failure) {
+			synchronized (this) {
+				long now = System.nanoTime();
+				int used = inFlight--;
+				if (failure == null) {
+					sample(latencyNanos);
+					if (recentNanos > LATENCY_TOLERANCE * longTermNanos + LATENCY_NOISE_NANOS) {
+						decrease(now, 0.9);
+					} else if (used >= limit / 2) {
+						limit = Math.min(max, limit + 1 / limit);
+					}
+				} else if (failure instanceof VaultServerException && ((VaultServerException) failure).isThrottled()) {
+					decrease(now, 0.5);
+					long retryAfterNanos = TimeUnit.MILLISECONDS.toNanos(((VaultServerException) failure).retryAfterMillis);
+					if (retryAfterNanos > 0 && now + retryAfterNanos - pausedUntilNanos > 0) {
+						pausedUntilNanos = now + retryAfterNanos;
+					}
+				} else if (failure instanceof OperationTimeoutException) {
+					decrease(now, 0.5);
+				}
+			}
+			dispatch();
+		}
+
+		private void sample(long latencyNanos) {
+			if (longTermNanos == 0) {
+				recentNanos = latencyNanos;
+				longTermNanos = latencyNanos;
+				return;
+			}
+			recentNanos += RECENT_WEIGHT * (latencyNanos - recentNanos);
+			longTermNanos += LONG_TERM_WEIGHT * (latencyNanos - longTermNanos);
+		}
+
+		private void decrease(long now, double ratio) {
+			if (lastDecreaseNanos != 0 && now - lastDecreaseNanos < (long) recentNanos) {
+				return;
+			}
+			lastDecreaseNanos = now;
+			double decreased = Math.max(1, limit * ratio);
+			if ((int) decreased < (int) limit) {
+				log.debug("Lowering the concurrency limit of vault {} to {}", key, (int) decreased);
+			}
+			limit = decreased;
+		}
+
+		/**
+		 * Hands the free slots to the waiters, in arrival order.
+		 */
+		private void dispatch() {
+			while (true) {
+				List<CompletableFuture<Void>> granted = new ArrayList<>();
+				synchronized (this) {
+					long pausedNanos = pausedUntilNanos - System.nanoTime();
+					if (pausedNanos > 0) {
+						if (!waiters.isEmpty() && !resumeScheduled) {
+							resumeScheduled = true;
+							CompletableFuture.delayedExecutor(pausedNanos, TimeUnit.NANOSECONDS).execute(() -> {
+								synchronized (this) {
+									resumeScheduled = false;
+								}
+								dispatch();
+							});
+						}
+						return;
+					}
+					while (inFlight < (int) limit && !waiters.isEmpty()) {
+						granted.add(waiters.pollFirst());
+						inFlight++;
+					}
+				}
+				if (granted.isEmpty()) {
+					return;
+				}
+				int expired = 0;
+				for (CompletableFuture<Void> waiter : granted) {
+					if (!waiter.complete(null)) {
+						// Timed out meanwhile, the slot goes to the next waiter
+						expired++;
+					}
+				}
+				if (expired == 0) {
+					return;
+				}
+				synchronized (this) {
+					inFlight -= expired;
+				}
+			}
+		}
+	}
+
+	private final ConcurrentMap<VaultAccountKey, Limit> limits = new ConcurrentHashMap<>();
+
+	/**
+	 * Runs call once a slot of the vault account of settings is free.
+	 *
+	 * @param maxWaitNanos time left before the deadline of the call, bounding the wait for a slot
+	 * @param call         sends one request to the vault
+	 */
+	<T> CompletableFuture<T> run(VaultConnectionSettings settings, long maxWaitNanos, Supplier<CompletableFuture<T>> call) {
+		int max = settings.intAttribute(CONCURRENCY_LIMIT_MAX, 200);
+		if (max <= 0) {
+			return Futures.call(call::get);
+		}
+		Limit limit = limits.computeIfAbsent(settings.accountKey(),
+				key -> new Limit(key, Math.max(1, settings.intAttribute(CONCURRENCY_LIMIT_INITIAL, 20)), max));
+		limit.configure(max);
+		long waitNanos = Math.min(maxWaitNanos, TimeUnit.SECONDS.toNanos(settings.longAttribute(CONCURRENCY_QUEUE_TIMEOUT_SECONDS, 30)));
+		return limit.acquire(waitNanos).handle((slot, failure) -> {
+			if (failure != null) {
+				int queued, current;
+				synchronized (limit) {
+					queued = limit.waiters.size();
+					current = (int) limit.limit;
+				}
+				throw new VaultSaturatedException("Vault " + limit.key + " is saturated: no request slot within "
+						+ TimeUnit.NANOSECONDS.toMillis(waitNanos) + " ms (concurrency limit " + current + ", " + queued + " requests queued)");
+			}
+			return limit;
+		}).thenCompose(held -> {
+			long start = System.nanoTime();
+			return Futures.call(call::get).whenComplete((value, failure) ->
+					held.release(System.nanoTime() - start, failure == null ? null : Futures.unwrap(failure)));
+		});
+	}
+
+	/**
+	 * @return the current limit, requests in flight and requests queued of every vault account, by vault account
+	 */
+	Map<String, Map<String, Object>> states() {
+		Map<String, Map<String, Object>> states = new LinkedHashMap<>();
+		limits.forEach((key, limit) -> {
+			Map<String, Object> state = new LinkedHashMap<>();
+			synchronized (limit) {
+				state.put("limit", (int) limit.limit);
+				state.put("inFlight", limit.inFlight);
+				state.put("queued", limit.waiters.size());
+				if (limit.recentNanos > 0) {
+					state.put("latencyMillis", TimeUnit.NANOSECONDS.toMillis((long) limit.recentNanos));
+				}
+			}
+			states.put(key.toString(), state);
+		});
+		return states;
+	}
+
+	/**
+	 * @return the limit, requests in flight and requests queued of every vault account
+	 */
+	Map<String, Long> gauges() {
+		Map<String, Long> gauges = new LinkedHashMap<>();
+		limits.forEach((key, limit) -> {
+			synchronized (limit) {
+				gauges.put("limiter:" + key + ".limit", (long) limit.limit);
+				gauges.put("limiter:" + key + ".inFlight", (long) limit.inFlight);
+				gauges.put("limiter:" + key + ".queued", (long) limit.waiters.size());
+			}
+		});
+		return gauges;
+	}
+}
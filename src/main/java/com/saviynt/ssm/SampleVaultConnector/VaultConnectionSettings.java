@@ -0,0 +1,159 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import com.saviynt.ssm.abstractConnector.exceptions.InvalidAttributeValueException;
+import com.saviynt.ssm.abstractConnector.exceptions.MissingKeyException;
+
+
+
+/**
+ * Typed view over the vaultConnectionAtributes map that EIC passes in the data parameter of
+ * getSecret(), setSecret() and test(). The attribute names are the ones declared by
+ * SampleVaultConnector.setVaultConfig().
+ **/
+final class VaultConnectionSettings {
+
+	static final String VAULT_CONNECTION_ATTRIBUTES = "vaultConnectionAtributes";
+
+	static final String AUTH_URL = "AUTH_URL";
+	static final String USERNAME = "username";
+	static final String PASSWORD = "password";
+	static final String ACCOUNT_URL = "ACCOUNT_URL";
+	static final String KEY_URL = "KEY_URL";
+
+	/** Session lifetime used when the vault does not return one with the token. */
+	static final String SESSION_TTL_SECONDS = "SESSION_TTL_SECONDS";
+	/** How long before expiry a session is renewed in the background. */
+	static final String SESSION_REFRESH_AHEAD_SECONDS = "SESSION_REFRESH_AHEAD_SECONDS";
+	/** Timeout applied to every single HTTP request made to the vault. */
+	static final String REQUEST_TIMEOUT_SECONDS = "REQUEST_TIMEOUT_SECONDS";
+	/** How long the blocking getSecret() and setSecret() wait for the asynchronous operation they run. */
+	static final String OPERATION_TIMEOUT_SECONDS = "OPERATION_TIMEOUT_SECONDS";
+
+	private final Map<String, Object> attributes;
+
+	final String authUrl;
+	final String username;
+	final String password;
+	final String accountUrl;
+	final String keyUrl;
+
+	private VaultAccountKey accountKey;
+
+	/** Trace of the call the settings were read for, or null. */
+	private volatile CallTraces.Trace trace;
+
+	private VaultConnectionSettings(Map<String, Object> attributes) {
+		this.attributes = attributes;
+		this.authUrl = required(AUTH_URL);
+		this.username = required(USERNAME);
+		this.password = required(PASSWORD);
+		this.accountUrl = required(ACCOUNT_URL);
+		this.keyUrl = required(KEY_URL);
+	}
+
+	/**
+	 * Reads the vaultConnectionAtributes entry of the data parameter.
+	 *
+	 * @param data the data parameter received by getSecret(), setSecret() or test()
+	 * @return the parsed settings
+	 * @throws MissingKeyException when vaultConnectionAtributes or one of the mandatory attributes is absent
+	 */
+	@SuppressWarnings("unchecked")
+	static VaultConnectionSettings from(Map<String, Object> data) {
+		Object attributes = data == null ? null : data.get(VAULT_CONNECTION_ATTRIBUTES);
+		if (!(attributes instanceof Map)) {
+			throw new MissingKeyException(VAULT_CONNECTION_ATTRIBUTES + " is missing in data");
+		}
+		return new VaultConnectionSettings(Collections.unmodifiableMap((Map<String, Object>) attributes));
+	}
+
+	/**
+	 * Reads OPERATION_TIMEOUT_SECONDS from the data parameter without requiring the other attributes, so that
+	 * a call with incomplete data still gets its error from the operation itself.
+	 *
+	 * @throws InvalidAttributeValueException when the value is not a number
+	 */
+	@SuppressWarnings("unchecked")
+	static long operationTimeoutSeconds(Map<String, Object> data, long defaultValue) {
+		Object attributes = data == null ? null : data.get(VAULT_CONNECTION_ATTRIBUTES);
+		Object value = attributes instanceof Map ? ((Map<String, Object>) attributes).get(OPERATION_TIMEOUT_SECONDS) : null;
+		if (value == null || StringUtils.isBlank(value.toString())) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.toString().trim());
+		} catch (NumberFormatException e) {
+			throw new InvalidAttributeValueException(OPERATION_TIMEOUT_SECONDS + " must be a number but was " + value);
+		}
+	}
+
+	/**
+	 * @return the vault account these settings authenticate against
+	 */
+	VaultAccountKey accountKey() {
+		if (accountKey == null) {
+			accountKey = VaultAccountKey.of(this);
+		}
+		return accountKey;
+	}
+
+	/**
+	 * @return the trace of the call these settings were read for, which records the time spent in the vault calls; or null
+	 */
+	CallTraces.Trace trace() {
+		return trace;
+	}
+
+	void trace(CallTraces.Trace trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * @return the URLs of an endpoint attribute, which may list several replicas separated by commas; empty when it is not set
+	 */
+	List<String> urls(String name) {
+		return VaultReplicaRouter.urls(attribute(name));
+	}
+
+	String attribute(String name) {
+		Object value = attributes.get(name);
+		return value == null ? null : value.toString().trim();
+	}
+
+	long longAttribute(String name, long defaultValue) {
+		String value = attribute(name);
+		if (StringUtils.isEmpty(value)) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new InvalidAttributeValueException(name + " must be a number but was " + value);
+		}
+	}
+
+	int intAttribute(String name, int defaultValue) {
+		long value = longAttribute(name, defaultValue);
+		if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+			throw new InvalidAttributeValueException(name + " is out of range: " + value);
+		}
+		return (int) value;
+	}
+
+	boolean booleanAttribute(String name, boolean defaultValue) {
+		String value = attribute(name);
+		return StringUtils.isEmpty(value) ? defaultValue : Boolean.parseBoolean(value);
+	}
+
+	private String required(String name) {
+		String value = attribute(name);
+		if (StringUtils.isEmpty(value)) {
+			throw new MissingKeyException(name + " is missing in " + VAULT_CONNECTION_ATTRIBUTES);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,538 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.saviynt.ssm.abstractConnector.exceptions.ConnectorException;
+import com.saviynt.ssm.abstractConnector.exceptions.InvalidCredentialException;
+import com.saviynt.ssm.abstractConnector.exceptions.MissingKeyException;
+
+
+
+/**
+ * Reads and writes secrets in the vault on behalf of SampleVaultConnector. Holds the state shared by all
+ * connector instances: the authenticated sessions and the secret caches of every vault account.
+ *
+ * Cached copies of a secret are invalidated when setSecret() writes it and, when the vault has a KEY_VERSIONS_URL,
+ * when SecretVersionTracker finds its version changed in the vault; the cache TTLs only bound how long a secret
+ * can be served when changes are not polled.
+ **/
+final class VaultGateway {
+
+	private static final Logger log = LoggerFactory.getLogger(VaultGateway.class);
+
+	/** Optional batch endpoint of the vault. When absent, bulk reads and writes are done key by key. */
+	static final String BATCH_KEY_URL = "BATCH_KEY_URL";
+	/** Maximum number of keys sent in one request to BATCH_KEY_URL. */
+	static final String BATCH_SIZE = "BATCH_SIZE";
+
+	/** Outcome of reading or writing one key in a bulk operation. */
+	static final class Outcome {
+		final String value;
+		final ConnectorException error;
+
+		private Outcome(String value, ConnectorException error) {
+			this.value = value;
+			this.error = error;
+		}
+
+		static Outcome success(String value) {
+			return new Outcome(value, null);
+		}
+
+		static Outcome failure(RuntimeException e) {
+			return new Outcome(null, e instanceof ConnectorException ? (ConnectorException) e : new ConnectorException(e.getMessage(), e));
+		}
+	}
+
+	private final SampleVaultClient client;
+
+	private final VaultSessionCache sessionCache = new VaultSessionCache();
+
+	/** Opt-in secret caches, one per vault account. */
+	private final ConcurrentMap<VaultAccountKey, SecretCache> secretCaches = new ConcurrentHashMap<>();
+
+	/** KEY_URL reads in flight, keyed by vault account and cache key. */
+	private final SingleFlight<List<Object>, SampleVaultClient.Secret> keyFetches = new SingleFlight<>();
+
+	private final SecretVersionTracker versions;
+
+	/** Cached secrets the vault confirmed unchanged with 304 Not Modified. */
+	private final LongAdder notModified = new LongAdder();
+
+	VaultGateway(SampleVaultClient client) {
+		this.client = client;
+		this.versions = new SecretVersionTracker(
+				(settings, keyNames) -> withSessionAsync(settings, session -> client.getVersions(settings, session, keyNames)),
+				this::invalidate);
+	}
+
+	/**
+	 * Fetches the secret stored under keyName, going through the secret cache when it is enabled.
+	 */
+	String readSecret(VaultConnectionSettings settings, SecretCache secretCache, String keyName) {
+		return readSecret(settings, secretCache, keyName, KeyMappingPlan.keyPath(keyName));
+	}
+
+	/**
+	 * Fetches the secret stored under keyName, whose path under KEY_URL is keyPath.
+	 */
+	String readSecret(VaultConnectionSettings settings, SecretCache secretCache, String keyName, String keyPath) {
+		return Futures.join(readSecretAsync(settings, secretCache, keyName, keyPath, null));
+	}
+
+	/**
+	 * Fetches the secret stored under keyName without blocking, whose path under KEY_URL is keyPath.
+	 * A cached secret, or a secret whose warm cache lease runs, completes the future right away. When the vault fails,
+	 * or is known to be down, the warm cache copy is served while it is not older than WARM_CACHE_MAX_STALE_SECONDS.
+	 *
+	 * @param unavailable the exception to fail with instead of calling the vault, when the vault is known to be down; or null
+	 */
+	CompletableFuture<String> readSecretAsync(VaultConnectionSettings settings, SecretCache secretCache, String keyName, String keyPath,
+			ConnectorException unavailable) {
+		String cacheKey = SecretCache.key(settings.keyUrl, keyName);
+		long generation = versions.readStarted(settings, keyName);
+		SecretCache.Hit expired = null;
+		if (secretCache != null) {
+			SecretCache.Hit hit = secretCache.get(cacheKey);
+			if (hit != null) {
+				if (hit.missing) {
+					return Futures.failed(new MissingKeyException("Key not found in vault: " + keyName));
+				}
+				return CompletableFuture.completedFuture(hit.value);
+			}
+			//An expired secret the vault gave an ETag for is revalidated rather than downloaded again
+			expired = secretCache.revalidatable(cacheKey);
+		}
+		SecretCache.Hit revalidated = expired;
+		WarmSecretStore warm = WarmSecretStore.of(settings);
+		if (warm != null) {
+			WarmSecretStore.Hit warmHit = warm.get(keyName);
+			if (warmHit != null && warmHit.fresh) {
+				if (versions.readCompleted(settings, keyName, warmHit.version, generation) && secretCache != null) {
+					secretCache.put(cacheKey, warmHit.value);
+				}
+				return CompletableFuture.completedFuture(warmHit.value);
+			}
+		}
+		CompletableFuture<String> fetch;
+		if (unavailable != null) {
+			fetch = Futures.failed(unavailable);
+		} else {
+			//Concurrent callers asking for the same key of the same vault account share one KEY_URL call
+			fetch = keyFetches.executeAsync(Arrays.asList(settings.accountKey(), cacheKey), () -> {
+				long fetchGeneration = versions.readStarted(settings, keyName);
+				return withSessionAsync(settings, session -> client.getKey(settings, session, keyPath, revalidated == null ? null : revalidated.etag))
+						.thenApply(secret -> {
+							if (!secret.notModified) {
+								return secret;
+							}
+							notModified.increment();
+							return new SampleVaultClient.Secret(revalidated.value, revalidated.version, secret.etag, true);
+						})
+						.whenComplete((secret, failure) -> {
+							boolean missing = failure != null && Futures.unwrap(failure) instanceof MissingKeyException;
+							//A setSecret() of the key, or a change found by the poller, while the read was in flight
+							//leaves its value unknown: it is returned but not cached
+							if ((failure == null || missing)
+									&& !versions.readCompleted(settings, keyName, failure == null ? secret.version : null, fetchGeneration)) {
+								return;
+							}
+							if (secretCache != null) {
+								if (failure == null) {
+									secretCache.put(cacheKey, secret.value, secret.version, secret.etag);
+								} else if (missing) {
+									secretCache.putMissing(cacheKey);
+								}
+							}
+							if (warm != null) {
+								if (failure == null) {
+									warm.put(keyName, secret.value, secret.version, false);
+								} else if (missing) {
+									warm.remove(keyName);
+								}
+							}
+						});
+			}).thenApply(secret -> secret.value);
+		}
+		if (warm == null) {
+			return fetch;
+		}
+		return fetch.handle((value, failure) -> {
+			if (failure == null) {
+				return CompletableFuture.completedFuture(value);
+			}
+			Throwable cause = Futures.unwrap(failure);
+			WarmSecretStore.Hit stale = staleCopy(warm, keyName, cause);
+			return stale == null ? Futures.<String>failed(cause) : CompletableFuture.completedFuture(stale.value);
+		}).thenCompose(Function.identity());
+	}
+
+	/**
+	 * @return the warm cache copy of keyName to serve instead of failing with cause, or null when there is none or
+	 *         cause is an answer of the vault (a missing key, rejected credentials) rather than a failure to get one
+	 */
+	private static WarmSecretStore.Hit staleCopy(WarmSecretStore warm, String keyName, Throwable cause) {
+		if (warm == null || cause instanceof MissingKeyException || cause instanceof InvalidCredentialException) {
+			return null;
+		}
+		WarmSecretStore.Hit stale = warm.get(keyName);
+		if (stale != null) {
+			log.debug("Serving a warm cache copy written {} ms ago: {}", System.currentTimeMillis() - stale.writtenAtMillis, cause.getMessage());
+		}
+		return stale;
+	}
+
+	/**
+	 * Stores value under keyName, writing through the secret cache when it is enabled.
+	 */
+	void writeSecret(VaultConnectionSettings settings, SecretCache secretCache, String keyName, String value) {
+		writeSecret(settings, secretCache, keyName, KeyMappingPlan.keyPath(keyName), value);
+	}
+
+	/**
+	 * Stores value under keyName, whose path under KEY_URL is keyPath.
+	 */
+	void writeSecret(VaultConnectionSettings settings, SecretCache secretCache, String keyName, String keyPath, String value) {
+		Futures.join(writeSecretAsync(settings, secretCache, keyName, keyPath, value));
+	}
+
+	/**
+	 * Stores value under keyName without blocking, whose path under KEY_URL is keyPath. The cached copies of keyName
+	 * are invalidated right away, and replaced by value once the vault has stored it; reads overlapping the write
+	 * do not cache what they fetched.
+	 */
+	CompletableFuture<Void> writeSecretAsync(VaultConnectionSettings settings, SecretCache secretCache, String keyName, String keyPath, String value) {
+		String cacheKey = SecretCache.key(settings.keyUrl, keyName);
+		WarmSecretStore warm = WarmSecretStore.of(settings);
+		versions.invalidate(settings, keyName);
+		invalidateCached(settings, cacheKey);
+		return withSessionAsync(settings, session -> client.putKey(settings, session, keyPath, value))
+				.whenComplete((version, failure) -> {
+					//Reads started while the write was in flight may hold the old value: they must not cache it
+					versions.writeCompleted(settings, keyName, failure == null ? version : null);
+					if (warm != null) {
+						if (failure == null) {
+							warm.put(keyName, value, version, true);
+						} else {
+							warm.remove(keyName);
+						}
+					}
+					if (secretCache != null && failure == null) {
+						secretCache.put(cacheKey, value);
+					}
+				}).thenApply(version -> null);
+	}
+
+	/**
+	 * Reads many keys of one vault account. Cached keys are served from the cache, the others are read in
+	 * chunks of BATCH_SIZE from BATCH_KEY_URL, or one by one through SecretFetchExecutor when the vault has
+	 * no batch endpoint. A failure only affects the keys it concerns. Either way the reads go through
+	 * SecretVersionTracker and the warm cache like readSecretAsync().
+	 *
+	 * @param unavailable the exception to fail with instead of calling the vault, when the vault is known to be down; or null
+	 * @return the outcome of every keyName
+	 */
+	Map<String, Outcome> readSecrets(VaultConnectionSettings settings, SecretCache secretCache, Collection<String> keyNames,
+			ConnectorException unavailable) {
+		Map<String, Outcome> outcomes = new ConcurrentHashMap<>();
+		List<String> toFetch = new ArrayList<>();
+		for (String keyName : keyNames) {
+			SecretCache.Hit hit = secretCache == null ? null : secretCache.get(SecretCache.key(settings.keyUrl, keyName));
+			if (hit == null) {
+				toFetch.add(keyName);
+			} else if (hit.missing) {
+				outcomes.put(keyName, Outcome.failure(new MissingKeyException("Key not found in vault: " + keyName)));
+			} else {
+				outcomes.put(keyName, Outcome.success(hit.value));
+			}
+		}
+		if (toFetch.isEmpty()) {
+			return outcomes;
+		}
+
+		if (StringUtils.isEmpty(settings.attribute(BATCH_KEY_URL))) {
+			Map<String, String> identity = new LinkedHashMap<>();
+			toFetch.forEach(keyName -> identity.put(keyName, keyName));
+			try {
+				SecretFetchExecutor.fetchAll(settings, identity, keyName -> {
+					try {
+						outcomes.put(keyName, Outcome.success(
+								Futures.join(readSecretAsync(settings, secretCache, keyName, KeyMappingPlan.keyPath(keyName), unavailable))));
+					} catch (RuntimeException e) {
+						outcomes.put(keyName, Outcome.failure(e));
+					}
+					return null;
+				});
+			} catch (ConnectorException e) {
+				// Deadline exceeded: every key not fetched yet fails with the timeout.
+				toFetch.forEach(keyName -> outcomes.putIfAbsent(keyName, Outcome.failure(e)));
+			}
+			return outcomes;
+		}
+
+		WarmSecretStore warm = WarmSecretStore.of(settings);
+		if (warm != null) {
+			//Secrets whose warm cache lease runs are not read from the vault
+			for (Iterator<String> it = toFetch.iterator(); it.hasNext();) {
+				String keyName = it.next();
+				long generation = versions.readStarted(settings, keyName);
+				WarmSecretStore.Hit warmHit = warm.get(keyName);
+				if (warmHit != null && warmHit.fresh) {
+					if (versions.readCompleted(settings, keyName, warmHit.version, generation) && secretCache != null) {
+						secretCache.put(SecretCache.key(settings.keyUrl, keyName), warmHit.value);
+					}
+					outcomes.put(keyName, Outcome.success(warmHit.value));
+					it.remove();
+				}
+			}
+		}
+		if (unavailable != null) {
+			toFetch.forEach(keyName -> outcomes.put(keyName, staleOrFailure(warm, keyName, unavailable)));
+			return outcomes;
+		}
+
+		boolean polled = StringUtils.isNotEmpty(settings.attribute(SecretVersionTracker.KEY_VERSIONS_URL));
+		for (List<String> chunk : chunks(toFetch, settings.intAttribute(BATCH_SIZE, 50))) {
+			Map<String, Long> generations = new HashMap<>();
+			chunk.forEach(keyName -> generations.put(keyName, versions.readStarted(settings, keyName)));
+			try {
+				//The batch endpoint does not report versions: when changes are polled they are listed before the values
+				//are read, so that a change in between is seen by the next poll rather than missed
+				Map<String, String> chunkVersions = new HashMap<>();
+				Set<String> found = new HashSet<>();
+				Futures.join(withSessionAsync(settings, session -> listVersions(settings, session, chunk, polled)
+						.thenCompose(listed -> {
+							chunkVersions.putAll(listed);
+							//Values go straight from the response parser into the outcomes and the caches
+							return client.getKeys(settings, session, chunk, (keyName, value) -> {
+								found.add(keyName);
+								outcomes.put(keyName, Outcome.success(value));
+								String version = chunkVersions.get(keyName);
+								//Like readSecretAsync(), a key invalidated while the chunk was in flight is not cached
+								if (!versions.readCompleted(settings, keyName, version, generations.get(keyName))) {
+									return;
+								}
+								if (secretCache != null) {
+									secretCache.put(SecretCache.key(settings.keyUrl, keyName), value, version, null);
+								}
+								if (warm != null) {
+									warm.put(keyName, value, version, false);
+								}
+							});
+						})));
+				for (String keyName : chunk) {
+					if (!found.contains(keyName)) {
+						outcomes.put(keyName, Outcome.failure(new MissingKeyException("Key not found in vault: " + keyName)));
+						if (!versions.readCompleted(settings, keyName, null, generations.get(keyName))) {
+							continue;
+						}
+						if (secretCache != null) {
+							secretCache.putMissing(SecretCache.key(settings.keyUrl, keyName));
+						}
+						if (warm != null) {
+							warm.remove(keyName);
+						}
+					}
+				}
+			} catch (RuntimeException e) {
+				//Like readSecretAsync(), a chunk the vault failed to serve falls back to the warm cache copies
+				chunk.forEach(keyName -> outcomes.put(keyName, staleOrFailure(warm, keyName, e)));
+			}
+		}
+		return outcomes;
+	}
+
+	private static Outcome staleOrFailure(WarmSecretStore warm, String keyName, RuntimeException failure) {
+		WarmSecretStore.Hit stale = staleCopy(warm, keyName, failure);
+		return stale == null ? Outcome.failure(failure) : Outcome.success(stale.value);
+	}
+
+	/**
+	 * Writes many keys of one vault account, in chunks of BATCH_SIZE to BATCH_KEY_URL when the vault has a
+	 * batch endpoint. A chunk rejected by the batch endpoint is retried key by key so that one bad key does
+	 * not fail the others.
+	 *
+	 * @return the outcome of every keyName
+	 */
+	Map<String, Outcome> writeSecrets(VaultConnectionSettings settings, SecretCache secretCache, Map<String, String> values) {
+		Map<String, Outcome> outcomes = new LinkedHashMap<>();
+		List<String> keyNames = new ArrayList<>(values.keySet());
+		boolean batch = StringUtils.isNotEmpty(settings.attribute(BATCH_KEY_URL));
+		for (List<String> chunk : chunks(keyNames, batch ? settings.intAttribute(BATCH_SIZE, 50) : keyNames.size())) {
+			if (batch && chunk.size() > 1) {
+				Map<String, String> chunkValues = new LinkedHashMap<>();
+				chunk.forEach(keyName -> {
+					chunkValues.put(keyName, values.get(keyName));
+					versions.invalidate(settings, keyName);
+					invalidateCached(settings, SecretCache.key(settings.keyUrl, keyName));
+				});
+				try {
+					Futures.join(withSessionAsync(settings, session -> client.putKeys(settings, session, chunkValues)));
+					WarmSecretStore warm = WarmSecretStore.of(settings);
+					for (String keyName : chunk) {
+						versions.writeCompleted(settings, keyName, null);
+						outcomes.put(keyName, Outcome.success(null));
+						if (secretCache != null) {
+							secretCache.put(SecretCache.key(settings.keyUrl, keyName), values.get(keyName));
+						}
+						if (warm != null) {
+							warm.put(keyName, values.get(keyName), null, true);
+						}
+					}
+					continue;
+				} catch (RuntimeException e) {
+					// fall through and isolate the failing keys
+				}
+			}
+			for (String keyName : chunk) {
+				try {
+					writeSecret(settings, secretCache, keyName, values.get(keyName));
+					outcomes.put(keyName, Outcome.success(null));
+				} catch (RuntimeException e) {
+					outcomes.put(keyName, Outcome.failure(e));
+				}
+			}
+		}
+		return outcomes;
+	}
+
+	/**
+	 * Returns the secret cache of the vault account, or null when caching is not enabled for the connection.
+	 * The cache is shared by the connections of the account and keeps the limits of the first connection enabling it:
+	 * connections with other SECRET_CACHE_* limits use it as it is, connections with caching off bypass it.
+	 */
+	SecretCache secretCache(VaultConnectionSettings settings) {
+		SecretCache.Settings cacheSettings = SecretCache.Settings.from(settings);
+		if (!cacheSettings.enabled()) {
+			return null;
+		}
+		return secretCaches.computeIfAbsent(settings.accountKey(), k -> {
+			SecretCache created = new SecretCache(cacheSettings);
+			//Secrets persisted by an earlier run are served from memory while their lease runs
+			WarmSecretStore warm = WarmSecretStore.of(settings);
+			if (warm != null) {
+				warm.forEachFresh((keyName, value, version, leaseMillisLeft) -> {
+					created.put(SecretCache.key(settings.keyUrl, keyName), value, TimeUnit.MILLISECONDS.toNanos(leaseMillisLeft));
+					versions.written(settings, keyName, version);
+				});
+			}
+			return created;
+		});
+	}
+
+	/**
+	 * @return the secret cache counters summed over all vault accounts, and the number of coalesced reads
+	 */
+	Map<String, Long> gauges() {
+		long hits = 0, misses = 0, entries = 0, bytes = 0;
+		for (SecretCache secretCache : secretCaches.values()) {
+			hits += secretCache.hits();
+			misses += secretCache.misses();
+			entries += secretCache.size();
+			bytes += secretCache.bytes();
+		}
+		Map<String, Long> gauges = new LinkedHashMap<>();
+		gauges.put("cache.hits", hits);
+		gauges.put("cache.misses", misses);
+		gauges.put("cache.entries", entries);
+		gauges.put("cache.bytes", bytes);
+		gauges.put("cache.revalidated", notModified.sum());
+		gauges.put("singleFlight.coalesced", keyFetches.coalesced());
+		gauges.putAll(WarmSecretStore.gauges());
+		gauges.putAll(versions.gauges());
+		return gauges;
+	}
+
+	/**
+	 * Polls the versions of the cached secrets of the vault account now, see SecretVersionTracker.
+	 *
+	 * @return a future completed with the number of secrets found changed in the vault
+	 */
+	CompletableFuture<Integer> pollVersions(VaultConnectionSettings settings) {
+		return versions.poll(settings);
+	}
+
+	/**
+	 * @return the versions of keyNames from KEY_VERSIONS_URL when changes are polled, none when they are not or the listing failed
+	 */
+	private CompletableFuture<Map<String, String>> listVersions(VaultConnectionSettings settings, VaultSession session, List<String> keyNames,
+			boolean polled) {
+		if (!polled) {
+			return CompletableFuture.completedFuture(Collections.emptyMap());
+		}
+		return Futures.call(() -> client.getVersions(settings, session, keyNames)).exceptionally(failure -> {
+			log.debug("Listing the versions of a batch read failed: {}", Futures.unwrap(failure).getMessage());
+			return Collections.emptyMap();
+		});
+	}
+
+	/**
+	 * Drops the cached copies of keyName, in memory and in the warm cache.
+	 */
+	private void invalidate(VaultConnectionSettings settings, String keyName) {
+		invalidateCached(settings, SecretCache.key(settings.keyUrl, keyName));
+		WarmSecretStore warm = WarmSecretStore.of(settings);
+		if (warm != null) {
+			warm.remove(keyName);
+		}
+	}
+
+	/**
+	 * Drops the copy of cacheKey from the secret cache of the vault account, also when the connection does not use it.
+	 */
+	private void invalidateCached(VaultConnectionSettings settings, String cacheKey) {
+		SecretCache secretCache = secretCaches.get(settings.accountKey());
+		if (secretCache != null) {
+			secretCache.invalidate(cacheKey);
+		}
+	}
+
+	/**
+	 * Runs a vault call with the cached session of the vault account. When the vault rejects the token the
+	 * session is dropped and the call is retried once with a freshly authenticated session.
+	 */
+	<T> CompletableFuture<T> withSessionAsync(VaultConnectionSettings settings, Function<VaultSession, CompletableFuture<T>> call) {
+		VaultAccountKey accountKey = settings.accountKey();
+		return sessionCache.acquire(accountKey, settings, client::authenticate)
+				.thenCompose(session -> Futures.call(() -> call.apply(session))
+						.handle((value, failure) -> {
+							if (failure == null) {
+								return CompletableFuture.completedFuture(value);
+							}
+							if (!(Futures.unwrap(failure) instanceof InvalidCredentialException)) {
+								return Futures.<T>failed(failure);
+							}
+							sessionCache.invalidate(accountKey, session);
+							return sessionCache.acquire(accountKey, settings, client::authenticate)
+									.thenCompose(renewed -> Futures.call(() -> call.apply(renewed)));
+						})
+						.thenCompose(Function.identity()));
+	}
+
+	private static <T> List<List<T>> chunks(List<T> items, int size) {
+		List<List<T>> chunks = new ArrayList<>();
+		int chunkSize = Math.max(1, size);
+		for (int from = 0; from < items.size(); from += chunkSize) {
+			chunks.add(items.subList(from, Math.min(items.size(), from + chunkSize)));
+		}
+		return chunks;
+	}
+}
@@ -0,0 +1,253 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.saviynt.ssm.abstractConnector.exceptions.ConnectorException;
+import com.saviynt.ssm.abstractConnector.exceptions.InvalidCredentialException;
+import com.saviynt.ssm.abstractConnector.exceptions.MissingKeyException;
+
+
+
+/**
+ * Checks the health of every vault account in use in the background, so that test() answers from the last
+ * probe instead of logging in to the vault, and so that calls to a vault known to be down fail fast.
+ *
+ * A probe is a full login (AUTH_URL then ACCOUNT_URL) made every HEALTH_PROBE_INTERVAL_SECONDS while the vault
+ * account is in use. Probing is off unless HEALTH_PROBE_INTERVAL_SECONDS is set, as each probe opens a session; probing stops once the account has not been used for PROBE_IDLE_INTERVALS intervals. When the
+ * connections of one vault account set different intervals, the account is probed at the shortest of them.
+ * After HEALTH_PROBE_FAILURE_THRESHOLD consecutive probes failing because the vault is unreachable or erroring,
+ * getSecret() and setSecret() of the account fail fast until a probe succeeds again. A probe rejected for its
+ * credentials marks the vault as down for test() but does not fail calls fast: they get the same rejection
+ * from the vault.
+ **/
+final class VaultHealthProber {
+
+	private static final Logger log = LoggerFactory.getLogger(VaultHealthProber.class);
+
+	/** Time between two probes of a vault account. 0, the default, disables background probing and fast failing. */
+	static final String HEALTH_PROBE_INTERVAL_SECONDS = "HEALTH_PROBE_INTERVAL_SECONDS";
+	/** Consecutive failed probes after which calls to the vault fail fast. */
+	static final String HEALTH_PROBE_FAILURE_THRESHOLD = "HEALTH_PROBE_FAILURE_THRESHOLD";
+
+	/** Probing of a vault account stops after this many intervals without a call. */
+	private static final int PROBE_IDLE_INTERVALS = 10;
+
+	enum Status {
+		UNKNOWN, UP, DOWN
+	}
+
+	/** Health of one vault account, as seen by the last probe. */
+	static final class Health {
+		final Status status;
+		/** Duration of the last probe */
+		final long latencyNanos;
+		/** System.nanoTime() at the end of the last probe */
+		final long checkedNanos;
+		final int consecutiveFailures;
+		/** Failure of the last probe, or null when it succeeded */
+		final RuntimeException failure;
+
+		private Health(Status status, long latencyNanos, long checkedNanos, int consecutiveFailures, RuntimeException failure) {
+			this.status = status;
+			this.latencyNanos = latencyNanos;
+			this.checkedNanos = checkedNanos;
+			this.consecutiveFailures = consecutiveFailures;
+			this.failure = failure;
+		}
+
+		/**
+		 * @return whether the last probe failed because the vault could not serve requests, rather than on the credentials
+		 */
+		boolean unreachable() {
+			return failure != null && !(failure instanceof InvalidCredentialException || failure instanceof MissingKeyException);
+		}
+
+		Map<String, Object> toMap() {
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("status", status.name());
+			if (status != Status.UNKNOWN) {
+				map.put("latencyMillis", TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+				map.put("checkedMillisAgo", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - checkedNanos));
+			}
+			map.put("consecutiveFailures", consecutiveFailures);
+			if (failure != null) {
+				map.put("error", failure.getMessage());
+			}
+			return map;
+		}
+	}
+
+	private static final Health UNKNOWN = new Health(Status.UNKNOWN, 0, 0, 0, null);
+
+	/** Probing state of one vault account. */
+	private final class Vault {
+		final VaultAccountKey key;
+		volatile VaultConnectionSettings settings;
+		volatile Health health = UNKNOWN;
+		volatile long lastUsedNanos = System.nanoTime();
+		/** Probe in flight, shared by the background probe and the live probes of test() */
+		CompletableFuture<Health> probe;
+		/** Shortest HEALTH_PROBE_INTERVAL_SECONDS of the connections of the account, 0 while probing is disabled for all of them */
+		volatile long intervalSeconds;
+		/** Set by the first call enabling probing; the vault is dropped when its probing stops */
+		volatile boolean scheduled;
+
+		Vault(VaultAccountKey key) {
+			this.key = key;
+		}
+	}
+
+	private final SampleVaultClient client;
+
+	private final ConcurrentMap<VaultAccountKey, Vault> vaults = new ConcurrentHashMap<>();
+
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	VaultHealthProber(SampleVaultClient client) {
+		this.client = client;
+		this.scheduler = new ScheduledThreadPoolExecutor(1, VaultThreads.daemonFactory("vault-health-probe"));
+	}
+
+	/**
+	 * Marks the vault account of settings as in use, starting its background probing when it is enabled.
+	 *
+	 * @return the health of the vault account as of its last probe
+	 */
+	Health watch(VaultConnectionSettings settings) {
+		Vault vault = vaults.computeIfAbsent(settings.accountKey(), Vault::new);
+		vault.settings = settings;
+		vault.lastUsedNanos = System.nanoTime();
+		long intervalSeconds = intervalSeconds(settings);
+		if (intervalSeconds > 0 && (!vault.scheduled || intervalSeconds < vault.intervalSeconds)) {
+			schedule(vault, intervalSeconds);
+		}
+		return vault.health;
+	}
+
+	/**
+	 * Fails fast when the probes of the vault account found the vault unreachable HEALTH_PROBE_FAILURE_THRESHOLD times in a row.
+	 *
+	 * @throws ConnectorException when the vault is down
+	 */
+	void checkAvailable(VaultConnectionSettings settings) {
+		ConnectorException unavailable = unavailable(settings);
+		if (unavailable != null) {
+			throw unavailable;
+		}
+	}
+
+	/**
+	 * @return the exception calls to the vault account fail fast with while the vault is down, or null when it is not down
+	 */
+	ConnectorException unavailable(VaultConnectionSettings settings) {
+		Health health = watch(settings);
+		if (health.status != Status.DOWN || !health.unreachable() || intervalSeconds(settings) <= 0) {
+			return null;
+		}
+		if (health.consecutiveFailures < Math.max(1, settings.intAttribute(HEALTH_PROBE_FAILURE_THRESHOLD, 2))) {
+			return null;
+		}
+		return new ConnectorException("Vault " + settings.accountKey() + " is unavailable, the last " + health.consecutiveFailures
+				+ " health probes failed: " + health.failure.getMessage());
+	}
+
+	/**
+	 * @return the HEALTH_PROBE_INTERVAL_SECONDS of settings, 0 when background probing is off
+	 */
+	static long intervalSeconds(VaultConnectionSettings settings) {
+		return Math.max(0, settings.longAttribute(HEALTH_PROBE_INTERVAL_SECONDS, 0));
+	}
+
+	/**
+	 * Probes the vault account now, or joins the probe already in flight.
+	 *
+	 * @return a future completed with the health found by the probe; it does not fail
+	 */
+	CompletableFuture<Health> probe(VaultConnectionSettings settings) {
+		Vault vault = vaults.computeIfAbsent(settings.accountKey(), Vault::new);
+		vault.settings = settings;
+		return probe(vault);
+	}
+
+	/**
+	 * @return the health of every vault account in use, by vault account
+	 */
+	Map<String, Map<String, Object>> states() {
+		Map<String, Map<String, Object>> states = new LinkedHashMap<>();
+		vaults.forEach((key, vault) -> states.put(key.toString(), vault.health.toMap()));
+		return states;
+	}
+
+	/**
+	 * @return the number of vault accounts whose last probe failed
+	 */
+	Map<String, Long> gauges() {
+		return Collections.singletonMap("health.vaultsDown",
+				vaults.values().stream().filter(vault -> vault.health.status == Status.DOWN).count());
+	}
+
+	private CompletableFuture<Health> probe(Vault vault) {
+		CompletableFuture<Health> probe;
+		synchronized (vault) {
+			if (vault.probe != null) {
+				return vault.probe;
+			}
+			long start = System.nanoTime();
+			probe = Futures.call(() -> client.authenticate(vault.settings)).handle((session, failure) -> {
+				long end = System.nanoTime();
+				Health previous = vault.health;
+				Health health = failure == null ? new Health(Status.UP, end - start, end, 0, null)
+						: new Health(Status.DOWN, end - start, end, previous.consecutiveFailures + 1, Futures.propagate(failure));
+				if (previous.status != health.status) {
+					log.debug("Vault {} is now {}", vault.key, health.status);
+				}
+				vault.health = health;
+				return health;
+			});
+			vault.probe = probe;
+		}
+		probe.whenComplete((health, failure) -> {
+			synchronized (vault) {
+				vault.probe = null;
+			}
+		});
+		return probe;
+	}
+
+	/**
+	 * Starts probing the vault account, or shortens its probe interval. A running schedule is never cancelled: the next
+	 * probe is scheduled at the end of each probe with the interval current at that time.
+	 */
+	private void schedule(Vault vault, long intervalSeconds) {
+		synchronized (vault) {
+			if (vault.intervalSeconds <= 0 || intervalSeconds < vault.intervalSeconds) {
+				vault.intervalSeconds = intervalSeconds;
+			}
+			if (vault.scheduled) {
+				return;
+			}
+			vault.scheduled = true;
+		}
+		scheduleNext(vault);
+	}
+
+	private void scheduleNext(Vault vault) {
+		long intervalSeconds = vault.intervalSeconds;
+		scheduler.schedule(() -> {
+			if (System.nanoTime() - vault.lastUsedNanos > TimeUnit.SECONDS.toNanos(intervalSeconds * PROBE_IDLE_INTERVALS)) {
+				// Not used any more: stop probing, the next call starts again from an unknown health
+				vaults.remove(vault.key, vault);
+				return;
+			}
+			probe(vault).whenComplete((health, failure) -> scheduleNext(vault));
+		}, intervalSeconds, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,177 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.saviynt.ssm.abstractConnector.exceptions.OperationTimeoutException;
+
+
+
+/**
+ * Throughput counters and latency histograms of the connector, kept per operation (getSecret, setSecret,
+ * test, dataFormatting, ...), per vault endpoint and per connection, so that the time spent in the vault can
+ * be told apart from the time spent in EIC. Recording is lock-free and allocation-free once a scope exists.
+ * Gauges registered by the other components (secret cache, connection pools) are added to the snapshot.
+ * The last calls are also kept one by one, with their phase timings, in CallTraces.
+ **/
+final class VaultMetrics implements VaultMetricsMXBean {
+
+	private static final Logger log = LoggerFactory.getLogger(VaultMetrics.class);
+
+	static final String OBJECT_NAME = "com.saviynt.ssm.SampleVaultConnector:type=VaultMetrics";
+
+	static final String OPERATION = "operation:";
+	static final String ENDPOINT = "endpoint:";
+	static final String CONNECTION = "connection:";
+
+	/** Counters and latencies of one scope. */
+	static final class Stats {
+		final LongAdder success = new LongAdder();
+		final LongAdder error = new LongAdder();
+		final LongAdder timeout = new LongAdder();
+		final LatencyHistogram latency = new LatencyHistogram();
+
+		void record(long startNanos, Throwable failure) {
+			latency.record(System.nanoTime() - startNanos);
+			if (failure == null) {
+				success.increment();
+			} else if (failure instanceof OperationTimeoutException) {
+				timeout.increment();
+			} else {
+				error.increment();
+			}
+		}
+
+		void reset() {
+			success.reset();
+			error.reset();
+			timeout.reset();
+			latency.reset();
+		}
+	}
+
+	private final ConcurrentMap<String, Stats> scopes = new ConcurrentHashMap<>();
+
+	private final List<Supplier<Map<String, Long>>> gauges = new ArrayList<>();
+
+	private final CallTraces traces = new CallTraces();
+
+	/**
+	 * @param scope one of OPERATION, ENDPOINT or CONNECTION followed by the name
+	 */
+	Stats stats(String scope) {
+		Stats stats = scopes.get(scope);
+		return stats != null ? stats : scopes.computeIfAbsent(scope, k -> new Stats());
+	}
+
+	/**
+	 * Records one call of the scope that started at startNanos and failed with failure, or succeeded when it is null.
+	 */
+	void record(String scope, long startNanos, Throwable failure) {
+		stats(scope).record(startNanos, failure);
+	}
+
+	/**
+	 * @return the traces of the last calls
+	 */
+	CallTraces traces() {
+		return traces;
+	}
+
+	synchronized void addGauges(Supplier<Map<String, Long>> supplier) {
+		gauges.add(supplier);
+	}
+
+	@Override
+	public Map<String, Long> getCounters() {
+		Map<String, Long> counters = new TreeMap<>();
+		scopes.forEach((scope, stats) -> {
+			counters.put(scope + ".success", stats.success.sum());
+			counters.put(scope + ".error", stats.error.sum());
+			counters.put(scope + ".timeout", stats.timeout.sum());
+		});
+		synchronized (this) {
+			for (Supplier<Map<String, Long>> supplier : gauges) {
+				counters.putAll(supplier.get());
+			}
+		}
+		return counters;
+	}
+
+	@Override
+	public Map<String, Double> getLatencies() {
+		Map<String, Double> latencies = new TreeMap<>();
+		scopes.forEach((scope, stats) -> stats.latency.snapshot()
+				.forEach((metric, value) -> latencies.put(scope + "." + metric, value.doubleValue())));
+		return latencies;
+	}
+
+	@Override
+	public List<String> slowestCalls(int count) {
+		List<String> calls = new ArrayList<>();
+		for (CallTraces.Trace trace : traces.slowest(count)) {
+			calls.add(trace.toString());
+		}
+		return calls;
+	}
+
+	@Override
+	public void reset() {
+		scopes.values().forEach(Stats::reset);
+	}
+
+	/**
+	 * @return counters and latencies of every scope, in the form returned by SampleVaultConnector.metricsSnapshot()
+	 */
+	Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new TreeMap<>();
+		scopes.forEach((scope, stats) -> {
+			Map<String, Object> values = new TreeMap<>(stats.latency.snapshot());
+			values.put("success", stats.success.sum());
+			values.put("error", stats.error.sum());
+			values.put("timeout", stats.timeout.sum());
+			snapshot.put(scope, values);
+		});
+		Map<String, Long> gaugeValues = new TreeMap<>();
+		synchronized (this) {
+			for (Supplier<Map<String, Long>> supplier : gauges) {
+				gaugeValues.putAll(supplier.get());
+			}
+		}
+		snapshot.put("gauges", gaugeValues);
+		return snapshot;
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server. A second registration, e.g. from another class loader, is ignored.
+	 */
+	void registerMBean() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		} catch (InstanceAlreadyExistsException e) {
+			log.debug("{} is already registered", OBJECT_NAME);
+		} catch (JMException | SecurityException e) {
+			log.warn("Unable to register {}: {}", OBJECT_NAME, e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the connection name prefixed to keyName by the vault connector framework, e.g. MyADConnector for
+	 * MyADConnector~#~abcd215, or null when the keyName has no prefix.
+	 */
+	static String connectionName(String keyName) {
+		int separator = keyName == null ? -1 : keyName.indexOf(KeyMappingPlan.CONNECTION_SEPARATOR);
+		return separator > 0 ? keyName.substring(0, separator) : null;
+	}
+}
@@ -0,0 +1,36 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.List;
+import java.util.Map;
+
+
+
+/**
+ * JMX view of the connector metrics, registered as com.saviynt.ssm.SampleVaultConnector:type=VaultMetrics.
+ * Keys have the form "&lt;scope&gt;:&lt;name&gt;.&lt;metric&gt;", where scope is operation (getSecret, setSecret, test, ...),
+ * endpoint (vault host and AUTH_URL / ACCOUNT_URL / KEY_URL / BATCH_KEY_URL) or connection (the connection
+ * name prefixed to the keyNames).
+ **/
+public interface VaultMetricsMXBean {
+
+	/**
+	 * @return success, error and timeout counts per scope, plus the secret cache and connection pool counters
+	 */
+	Map<String, Long> getCounters();
+
+	/**
+	 * @return count, mean, p50, p90, p99, p999 and max latency in milliseconds per scope
+	 */
+	Map<String, Double> getLatencies();
+
+	/**
+	 * @return the count slowest of the last getSecret(), setSecret() and dataFormatting() calls, slowest first, one line
+	 *         per call with its duration, connection, attribute count, outcome and time per phase
+	 */
+	List<String> slowestCalls(int count);
+
+	/**
+	 * Clears all the counters and latency histograms.
+	 */
+	void reset();
+}
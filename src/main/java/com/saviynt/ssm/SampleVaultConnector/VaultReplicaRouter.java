@@ -0,0 +1,187 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import com.saviynt.ssm.abstractConnector.exceptions.OperationTimeoutException;
+
+
+
+/**
+ * Chooses which replica of the vault a request goes to, when an endpoint attribute (AUTH_URL, ACCOUNT_URL,
+ * KEY_URL, ...) lists several comma separated URLs. The first URL is the primary.
+ *
+ * Reads go to the better of two replicas picked at random (power of two choices), scored by their latency
+ * (an exponentially weighted moving average) times their requests in flight, then fail over to the other replicas
+ * by score. A replica failing with a transient error (I/O error, timeout, HTTP 429/5xx, open circuit) is only tried
+ * after the healthy ones for REPLICA_FAILOVER_SECONDS. Writes always go to the primary, which is the only replica
+ * guaranteed to accept them.
+ *
+ * Replicas are tracked by vault host, so that the latency of AUTH_URL and KEY_URL calls to one host add up.
+ **/
+final class VaultReplicaRouter {
+
+	/** Time a replica that failed is only tried after the healthy ones. */
+	static final String REPLICA_FAILOVER_SECONDS = "REPLICA_FAILOVER_SECONDS";
+
+	/** Weight of a new sample in the latency of a replica. */
+	private static final double LATENCY_WEIGHT = 0.2;
+
+	/** Latency and health of one vault host. */
+	static final class Replica {
+		final String origin;
+		/** Guarded by the Replica itself */
+		private double latencyNanos;
+		private int inFlight;
+		private long failedAtNanos;
+		private boolean failed;
+		private long requests;
+
+		private Replica(String origin) {
+			this.origin = origin;
+		}
+
+		synchronized void started() {
+			inFlight++;
+			requests++;
+		}
+
+		/**
+		 * @param failure the failure of the request, or null
+		 */
+		synchronized void completed(long latency, Throwable failure) {
+			inFlight--;
+			if (transientFailure(failure)) {
+				failed = true;
+				failedAtNanos = System.nanoTime();
+				return;
+			}
+			failed = false;
+			latencyNanos = latencyNanos == 0 ? latency : latencyNanos + LATENCY_WEIGHT * (latency - latencyNanos);
+		}
+
+		/**
+		 * @return the expected wait of a new request, 0 for a replica without a latency sample so that it gets tried
+		 */
+		synchronized double score() {
+			return latencyNanos * (inFlight + 1);
+		}
+
+		synchronized boolean healthy(long now, long failoverNanos) {
+			return !failed || now - failedAtNanos >= failoverNanos;
+		}
+
+		synchronized Map<String, Object> toMap(long now, long failoverNanos) {
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("healthy", !failed || now - failedAtNanos >= failoverNanos);
+			map.put("latencyMillis", TimeUnit.NANOSECONDS.toMillis((long) latencyNanos));
+			map.put("inFlight", inFlight);
+			map.put("requests", requests);
+			return map;
+		}
+	}
+
+	private final ConcurrentMap<String, Replica> replicas = new ConcurrentHashMap<>();
+
+	/** REPLICA_FAILOVER_SECONDS of the last routed request, for states() */
+	private volatile long lastFailoverNanos = TimeUnit.SECONDS.toNanos(30);
+
+	/**
+	 * @return the URLs listed in an endpoint attribute, separated by commas; none for a missing or blank attribute
+	 */
+	static List<String> urls(String value) {
+		if (value == null || value.trim().isEmpty()) {
+			return Collections.emptyList();
+		}
+		if (value.indexOf(',') < 0) {
+			return Collections.singletonList(value.trim());
+		}
+		List<String> urls = new ArrayList<>();
+		for (String url : value.split(",")) {
+			if (!url.trim().isEmpty()) {
+				urls.add(url.trim());
+			}
+		}
+		return urls;
+	}
+
+	/**
+	 * @return whether a request failing with failure should be sent to another replica
+	 */
+	static boolean transientFailure(Throwable failure) {
+		return failure instanceof VaultServerException
+				|| (failure instanceof OperationTimeoutException && !(failure instanceof VaultSaturatedException));
+	}
+
+	/**
+	 * @param read whether the request is a read, which any replica can serve
+	 * @return the URLs to try in turn: for a read the chosen replica first and the others as failover,
+	 *         for a write the primary only
+	 */
+	List<String> order(VaultConnectionSettings settings, List<String> urls, boolean read) {
+		if (urls.size() <= 1) {
+			return urls;
+		}
+		if (!read) {
+			return urls.subList(0, 1);
+		}
+		long now = System.nanoTime();
+		long failoverNanos = TimeUnit.SECONDS.toNanos(settings.longAttribute(REPLICA_FAILOVER_SECONDS, 30));
+		lastFailoverNanos = failoverNanos;
+		List<String> healthy = new ArrayList<>();
+		List<String> failed = new ArrayList<>();
+		for (String url : urls) {
+			(replica(url).healthy(now, failoverNanos) ? healthy : failed).add(url);
+		}
+		List<String> order = new ArrayList<>(urls.size());
+		if (healthy.size() >= 2) {
+			//Power of two choices: the better of two random replicas, which spreads load better than always the best one
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			int first = random.nextInt(healthy.size());
+			int second = random.nextInt(healthy.size() - 1);
+			if (second >= first) {
+				second++;
+			}
+			String a = healthy.get(first);
+			String b = healthy.get(second);
+			String chosen = replica(b).score() < replica(a).score() ? b : a;
+			order.add(chosen);
+			healthy.remove(chosen);
+		}
+		healthy.sort(Comparator.comparingDouble(url -> replica(url).score()));
+		order.addAll(healthy);
+		order.addAll(failed);
+		return order;
+	}
+
+	/**
+	 * @return the replica of the vault host of url
+	 */
+	Replica replica(String url) {
+		return replica(URI.create(url));
+	}
+
+	Replica replica(URI uri) {
+		String origin = uri.getScheme() + "://" + uri.getAuthority();
+		Replica replica = replicas.get(origin);
+		return replica != null ? replica : replicas.computeIfAbsent(origin, Replica::new);
+	}
+
+	/**
+	 * @return the latency, requests in flight and health of every vault host called so far, by host
+	 */
+	Map<String, Map<String, Object>> states() {
+		long now = System.nanoTime();
+		Map<String, Map<String, Object>> states = new LinkedHashMap<>();
+		replicas.forEach((origin, replica) -> states.put(origin, replica.toMap(now, lastFailoverNanos)));
+		return states;
+	}
+}
@@ -0,0 +1,191 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.saviynt.ssm.abstractConnector.exceptions.OperationTimeoutException;
+
+
+
+/**
+ * Protects the vault and the EIC worker threads when the vault is degraded. Every vault endpoint
+ * (host and AUTH_URL / ACCOUNT_URL / KEY_URL / BATCH_KEY_URL) gets:
+ * <ul>
+ * <li>a CircuitBreaker, so that calls fail fast while the endpoint is down,</li>
+ * <li>a retry budget: every call earns RETRY_BUDGET_PERCENT of a retry and every retry spends one, so that
+ * retries never add more than that share of load on a struggling vault,</li>
+ * </ul>
+ * Idempotent calls failing with a transient error are retried up to RETRY_MAX_ATTEMPTS times with full
+ * jitter exponential backoff, honouring Retry-After. Retries are scheduled, so waiting for one holds no thread. All attempts of a call share the
+ * VAULT_CALL_DEADLINE_SECONDS deadline; running out of it is reported as OperationTimeoutException.
+ **/
+final class VaultResilience {
+
+	private static final Logger log = LoggerFactory.getLogger(VaultResilience.class);
+
+	/** Consecutive transient failures that open the circuit of an endpoint. */
+	static final String CIRCUIT_FAILURE_THRESHOLD = "CIRCUIT_FAILURE_THRESHOLD";
+	/** Time an open circuit rejects calls before letting a trial call through. */
+	static final String CIRCUIT_OPEN_SECONDS = "CIRCUIT_OPEN_SECONDS";
+	/** Maximum number of attempts of an idempotent call, including the first one. */
+	static final String RETRY_MAX_ATTEMPTS = "RETRY_MAX_ATTEMPTS";
+	/** Backoff before the first retry; doubled for every further retry. */
+	static final String RETRY_BASE_DELAY_MILLIS = "RETRY_BASE_DELAY_MILLIS";
+	/** Upper bound of the backoff between two attempts. */
+	static final String RETRY_MAX_DELAY_MILLIS = "RETRY_MAX_DELAY_MILLIS";
+	/** Retries allowed as a percentage of the calls made to an endpoint. */
+	static final String RETRY_BUDGET_PERCENT = "RETRY_BUDGET_PERCENT";
+	/** Deadline of one vault call, all attempts included. */
+	static final String VAULT_CALL_DEADLINE_SECONDS = "VAULT_CALL_DEADLINE_SECONDS";
+
+	/** Retries an endpoint may bank, so that a burst after a quiet period can still retry. */
+	private static final double MAX_RETRY_TOKENS = 10;
+
+	/** Token bucket limiting the retries of an endpoint. */
+	private static final class RetryBudget {
+		private double tokens = MAX_RETRY_TOKENS;
+
+		synchronized void deposit(double amount) {
+			tokens = Math.min(MAX_RETRY_TOKENS, tokens + amount);
+		}
+
+		synchronized boolean withdraw() {
+			if (tokens < 1) {
+				return false;
+			}
+			tokens -= 1;
+			return true;
+		}
+	}
+
+	private static final class Endpoint {
+		final CircuitBreaker breaker = new CircuitBreaker();
+		final RetryBudget budget = new RetryBudget();
+	}
+
+	private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+	/**
+	 * Runs call against the endpoint and waits for its result. See callAsync().
+	 *
+	 * @param call the call, given the nanoseconds left before the deadline
+	 */
+	<T> T call(VaultConnectionSettings settings, String endpoint, boolean idempotent, LongFunction<T> call) {
+		return Futures.join(callAsync(settings, endpoint, idempotent, remaining -> CompletableFuture.completedFuture(call.apply(remaining))));
+	}
+
+	/**
+	 * Runs call against the endpoint. Retries are scheduled after their backoff, no thread waits for them.
+	 *
+	 * @param endpoint   identifies the endpoint, e.g. "https://sampleVault:443 KEY_URL"
+	 * @param idempotent whether the call may be retried on transient failures
+	 * @param call       starts one attempt, given the nanoseconds left before the deadline
+	 */
+	<T> CompletableFuture<T> callAsync(VaultConnectionSettings settings, String endpoint, boolean idempotent, LongFunction<CompletableFuture<T>> call) {
+		return Futures.call(() -> new Call<>(settings, endpoint, idempotent, call).start());
+	}
+
+	/** The attempts of one call. */
+	private final class Call<T> {
+		private final VaultConnectionSettings settings;
+		private final String endpoint;
+		private final LongFunction<CompletableFuture<T>> call;
+		private final Endpoint state;
+		private final int threshold;
+		private final long openNanos;
+		private final int maxAttempts;
+		private final long deadline;
+		private final CompletableFuture<T> result = new CompletableFuture<>();
+
+		Call(VaultConnectionSettings settings, String endpoint, boolean idempotent, LongFunction<CompletableFuture<T>> call) {
+			this.settings = settings;
+			this.endpoint = endpoint;
+			this.call = call;
+			this.state = endpoints.computeIfAbsent(endpoint, k -> new Endpoint());
+			this.threshold = Math.max(1, settings.intAttribute(CIRCUIT_FAILURE_THRESHOLD, 5));
+			this.openNanos = TimeUnit.SECONDS.toNanos(settings.longAttribute(CIRCUIT_OPEN_SECONDS, 30));
+			this.maxAttempts = idempotent ? Math.max(1, settings.intAttribute(RETRY_MAX_ATTEMPTS, 3)) : 1;
+			this.deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(settings.longAttribute(VAULT_CALL_DEADLINE_SECONDS, 60));
+			state.budget.deposit(settings.intAttribute(RETRY_BUDGET_PERCENT, 20) / 100.0);
+		}
+
+		CompletableFuture<T> start() {
+			attempt(1);
+			return result;
+		}
+
+		private void attempt(int attempt) {
+			if (result.isDone()) {
+				// Cancelled by the caller
+				return;
+			}
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				result.completeExceptionally(new OperationTimeoutException("Deadline exceeded calling vault " + endpoint));
+				return;
+			}
+			if (!state.breaker.tryAcquire(System.nanoTime(), openNanos)) {
+				result.completeExceptionally(new VaultServerException("Vault " + endpoint + " is unavailable, circuit is open", 0, 0, null));
+				return;
+			}
+			Futures.call(() -> call.apply(remaining)).whenComplete((value, failure) -> {
+				if (failure == null) {
+					state.breaker.onSuccess();
+					result.complete(value);
+					return;
+				}
+				Throwable cause = Futures.unwrap(failure);
+				if (cause instanceof VaultSaturatedException) {
+					// Turned away before reaching the vault: retrying would only lengthen the queue
+					state.breaker.onAbandoned();
+					result.completeExceptionally(cause);
+					return;
+				}
+				if (!(cause instanceof VaultServerException || cause instanceof OperationTimeoutException)) {
+					// The vault answered, the endpoint is healthy
+					state.breaker.onSuccess();
+					result.completeExceptionally(cause);
+					return;
+				}
+				state.breaker.onFailure(System.nanoTime(), threshold);
+				if (attempt >= maxAttempts || !state.budget.withdraw()) {
+					result.completeExceptionally(cause);
+					return;
+				}
+				long delayMillis = backoffMillis(settings, attempt);
+				if (cause instanceof VaultServerException) {
+					delayMillis = Math.max(delayMillis, ((VaultServerException) cause).retryAfterMillis);
+				}
+				if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis) - deadline >= 0) {
+					result.completeExceptionally(new OperationTimeoutException("Deadline exceeded calling vault " + endpoint + ": " + cause.getMessage(), cause));
+					return;
+				}
+				log.debug("Retrying vault {} in {} ms after attempt {} failed: {}", endpoint, delayMillis, attempt, cause.getMessage());
+				CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS).execute(() -> attempt(attempt + 1));
+			});
+		}
+	}
+
+	/**
+	 * @return the circuit state of every endpoint called so far, e.g. "https://sampleVault:443 KEY_URL" -> "CLOSED"
+	 */
+	Map<String, String> circuitStates() {
+		Map<String, String> states = new LinkedHashMap<>();
+		endpoints.forEach((endpoint, state) -> states.put(endpoint, state.breaker.state().name()));
+		return states;
+	}
+
+	private static long backoffMillis(VaultConnectionSettings settings, int attempt) {
+		long base = Math.max(1, settings.longAttribute(RETRY_BASE_DELAY_MILLIS, 100));
+		long max = Math.max(base, settings.longAttribute(RETRY_MAX_DELAY_MILLIS, 2000));
+		long ceiling = Math.min(max, base << Math.min(attempt - 1, 20));
+		return ThreadLocalRandom.current().nextLong(ceiling + 1);
+	}
+}
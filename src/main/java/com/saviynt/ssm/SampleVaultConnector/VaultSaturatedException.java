@@ -0,0 +1,20 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import com.saviynt.ssm.abstractConnector.exceptions.OperationTimeoutException;
+
+
+
+/**
+ * Signals that a call was turned away by the connector before reaching the vault, because the calls already
+ * in flight to the vault account use up its concurrency limit and the call could not get a slot in time, or because
+ * the bulkhead of its connection or vault account was full.
+ * The vault was not called: the call is neither retried nor counted against the circuit breaker.
+ **/
+class VaultSaturatedException extends OperationTimeoutException {
+
+	private static final long serialVersionUID = 1L;
+
+	VaultSaturatedException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,30 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import com.saviynt.ssm.abstractConnector.exceptions.ConnectorException;
+
+
+
+/**
+ * Signals that the vault could not be reached or answered with a server side error (HTTP 5xx) or a
+ * throttling response (HTTP 429). These failures are transient: they count against the circuit breaker
+ * of the endpoint and idempotent calls are retried on them.
+ **/
+class VaultServerException extends ConnectorException {
+
+	private static final long serialVersionUID = 1L;
+
+	/** HTTP status returned by the vault, 0 when no response was received. */
+	final int status;
+	/** Delay requested by the vault through Retry-After, in milliseconds, or 0. */
+	final long retryAfterMillis;
+
+	VaultServerException(String message, int status, long retryAfterMillis, Throwable cause) {
+		super(message, cause);
+		this.status = status;
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	boolean isThrottled() {
+		return status == 429 || status == 503;
+	}
+}
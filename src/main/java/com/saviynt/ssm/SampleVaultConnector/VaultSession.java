@@ -0,0 +1,32 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+
+
+/**
+ * An authenticated session with the vault: the token obtained from AUTH_URL after the account has been
+ * selected through ACCOUNT_URL, together with the monotonic time (System.nanoTime()) at which it expires.
+ **/
+final class VaultSession {
+
+	final String token;
+	final long createdAtNanos;
+	final long expiresAtNanos;
+
+	VaultSession(String token, long createdAtNanos, long ttlNanos) {
+		this.token = token;
+		this.createdAtNanos = createdAtNanos;
+		this.expiresAtNanos = createdAtNanos + ttlNanos;
+	}
+
+	boolean isExpired(long nowNanos) {
+		return nowNanos - expiresAtNanos >= 0;
+	}
+
+	/**
+	 * @return true when the session is still valid but is within refreshAheadNanos of its expiry
+	 */
+	boolean needsRefresh(long nowNanos, long refreshAheadNanos) {
+		long window = Math.min(refreshAheadNanos, (expiresAtNanos - createdAtNanos) / 2);
+		return nowNanos - (expiresAtNanos - window) >= 0;
+	}
+}
@@ -0,0 +1,117 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+
+/**
+ * Caches authenticated vault sessions per vault account so that the AUTH_URL and ACCOUNT_URL handshakes
+ * are done once per session lifetime instead of once per getSecret() / setSecret() call.
+ *
+ * Sessions are renewed in the background when they enter the refresh-ahead window, so callers keep using
+ * the current token while a new one is obtained. Only when a session is missing or already expired does a
+ * caller have to wait for a login; concurrent callers for the same account share that single login.
+ * A session is dropped as soon as the vault rejects its token.
+ **/
+final class VaultSessionCache {
+
+	private static final Logger log = LoggerFactory.getLogger(VaultSessionCache.class);
+
+	/** Performs the AUTH_URL / ACCOUNT_URL handshake. */
+	interface Authenticator {
+		CompletableFuture<VaultSession> authenticate(VaultConnectionSettings settings);
+	}
+
+	private final ConcurrentMap<VaultAccountKey, Holder> sessions = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns a valid session for the account, logging in when there is none.
+	 */
+	CompletableFuture<VaultSession> acquire(VaultAccountKey key, VaultConnectionSettings settings, Authenticator authenticator) {
+		Holder holder = sessions.computeIfAbsent(key, k -> new Holder());
+		long now = System.nanoTime();
+		VaultSession session = holder.session;
+		if (session != null && !session.isExpired(now)) {
+			long refreshAhead = TimeUnit.SECONDS.toNanos(settings.longAttribute(VaultConnectionSettings.SESSION_REFRESH_AHEAD_SECONDS, 30));
+			if (session.needsRefresh(now, refreshAhead)) {
+				refreshInBackground(key, holder, settings, authenticator);
+			}
+			return CompletableFuture.completedFuture(session);
+		}
+		synchronized (holder) {
+			session = holder.session;
+			if (session != null && !session.isExpired(System.nanoTime())) {
+				return CompletableFuture.completedFuture(session);
+			}
+			if (holder.login != null) {
+				return holder.login;
+			}
+			log.debug("Authenticating vault session for {}", key);
+			// The session is cached before the callers waiting on the login see it
+			CompletableFuture<VaultSession> login = Futures.call(() -> authenticator.authenticate(settings)).thenApply(fresh -> {
+				synchronized (holder) {
+					holder.session = fresh;
+				}
+				return fresh;
+			});
+			holder.login = login;
+			login.whenComplete((fresh, failure) -> {
+				synchronized (holder) {
+					if (holder.login == login) {
+						holder.login = null;
+					}
+				}
+			});
+			return login;
+		}
+	}
+
+	/**
+	 * Drops the session if it is still the cached one. Called when the vault rejects the session's token.
+	 */
+	void invalidate(VaultAccountKey key, VaultSession rejected) {
+		Holder holder = sessions.get(key);
+		if (holder != null) {
+			synchronized (holder) {
+				if (holder.session == rejected) {
+					log.debug("Vault rejected session token for {}, invalidating", key);
+					holder.session = null;
+				}
+			}
+		}
+	}
+
+	void clear() {
+		sessions.clear();
+	}
+
+	private void refreshInBackground(VaultAccountKey key, Holder holder, VaultConnectionSettings settings, Authenticator authenticator) {
+		if (!holder.refreshing.compareAndSet(false, true)) {
+			return;
+		}
+		Futures.call(() -> authenticator.authenticate(settings)).whenComplete((fresh, failure) -> {
+			if (failure == null) {
+				synchronized (holder) {
+					holder.session = fresh;
+				}
+			} else {
+				// The current session stays in use until it expires; the next caller will retry.
+				log.warn("Background refresh of vault session for {} failed: {}", key, Futures.unwrap(failure).getMessage());
+			}
+			holder.refreshing.set(false);
+		});
+	}
+
+	private static final class Holder {
+		volatile VaultSession session;
+		/** Login in flight, guarded by the holder */
+		CompletableFuture<VaultSession> login;
+		final AtomicBoolean refreshing = new AtomicBoolean();
+	}
+}
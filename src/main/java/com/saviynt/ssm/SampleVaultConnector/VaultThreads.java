@@ -0,0 +1,25 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+
+/**
+ * Thread factories for the background work done by the connector. All connector threads are daemon
+ * threads so that they never keep the EIC JVM alive on shutdown.
+ **/
+final class VaultThreads {
+
+	private VaultThreads() {
+	}
+
+	static ThreadFactory daemonFactory(String prefix) {
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,166 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.saviynt.ssm.abstractConnector.exceptions.ConnectorException;
+import com.saviynt.ssm.abstractConnector.exceptions.OperationTimeoutException;
+
+
+
+/**
+ * Connection pooling for the HTTP calls made to the vault. One HttpClient is kept per vault origin
+ * (scheme, host and port) and shared by every connector instance, so connections are kept alive and
+ * reused across getSecret(), setSecret() and test() calls, and HTTP/2 multiplexes concurrent requests
+ * over one connection. All clients share one SSLContext, so TLS sessions are resumed when a new
+ * connection to a vault host is needed.
+ *
+ * HTTP_POOL_SIZE bounds the number of requests in flight per host, which with HTTP/1.1 is the number of
+ * open connections. Requests are sent asynchronously; a request waiting for a free slot does not hold a thread.
+ * The pool of a host keeps the HTTP_VERSION, HTTP_POOL_SIZE and CONNECT_TIMEOUT_SECONDS of the first connection
+ * that creates it, so that connections with other settings share its pooled connections instead of replacing it.
+ *
+ * The idle timeout of pooled connections is a JVM wide setting of the JDK HTTP client, read once: it is set with
+ * -Djdk.httpclient.keepalive.timeout=<seconds> on the command line of the JVM hosting the connector (default 1200).
+ **/
+final class VaultTransport {
+
+	private static final Logger log = LoggerFactory.getLogger(VaultTransport.class);
+
+	/** HTTP_2 (default) or HTTP_1_1. */
+	static final String HTTP_VERSION = "HTTP_VERSION";
+	/** Maximum number of requests in flight per vault host. */
+	static final String HTTP_POOL_SIZE = "HTTP_POOL_SIZE";
+	/** Timeout of establishing a new connection to the vault. */
+	static final String CONNECT_TIMEOUT_SECONDS = "CONNECT_TIMEOUT_SECONDS";
+
+	/** Pool configuration of one vault host. */
+	private static final class PoolSettings {
+		final HttpClient.Version version;
+		final int poolSize;
+		final long connectTimeoutSeconds;
+
+		PoolSettings(VaultConnectionSettings settings) {
+			String version = settings.attribute(HTTP_VERSION);
+			this.version = version == null || version.isEmpty() ? HttpClient.Version.HTTP_2 : HttpClient.Version.valueOf(version);
+			this.poolSize = Math.max(1, settings.intAttribute(HTTP_POOL_SIZE, 20));
+			this.connectTimeoutSeconds = settings.longAttribute(CONNECT_TIMEOUT_SECONDS, 30);
+		}
+	}
+
+	/** The pooled client of one vault host. */
+	static final class HostPool {
+		final String origin;
+		final HttpClient client;
+		final AsyncSemaphore permits;
+		private final PoolSettings settings;
+
+		private HostPool(String origin, PoolSettings settings, SSLContext sslContext) {
+			this.origin = origin;
+			this.settings = settings;
+			this.permits = new AsyncSemaphore(settings.poolSize);
+			this.client = HttpClient.newBuilder()
+					.version(settings.version)
+					.connectTimeout(Duration.ofSeconds(settings.connectTimeoutSeconds))
+					.sslContext(sslContext)
+					.build();
+		}
+
+		int inFlight() {
+			return permits.inUse();
+		}
+
+		int poolSize() {
+			return settings.poolSize;
+		}
+	}
+
+	private final ConcurrentMap<String, HostPool> pools = new ConcurrentHashMap<>();
+
+	private final SSLContext sslContext;
+
+	VaultTransport() {
+		try {
+			sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(null, null, null);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Unable to initialize TLS", e);
+		}
+	}
+
+	/**
+	 * Sends the request on the pooled client of its host, waiting at most the request timeout for a free slot in the pool.
+	 * The future fails with OperationTimeoutException when no slot frees up in time, and with the IOException of the
+	 * HTTP client (HttpTimeoutException on timeout) when the request fails.
+	 */
+	<T> CompletableFuture<HttpResponse<T>> sendAsync(VaultConnectionSettings settings, HttpRequest request, HttpResponse.BodyHandler<T> handler,
+			String endpoint) {
+		HostPool pool = pool(settings, request.uri());
+		long waitNanos = request.timeout().map(Duration::toNanos).orElse(TimeUnit.SECONDS.toNanos(30));
+		return pool.permits.acquire(waitNanos).handle((permit, failure) -> {
+			if (failure != null) {
+				throw new OperationTimeoutException("No free connection to vault " + endpoint + " within the request timeout");
+			}
+			return pool;
+		}).thenCompose(held -> {
+			CompletableFuture<HttpResponse<T>> response;
+			try {
+				response = held.client.sendAsync(request, handler);
+			} catch (RuntimeException e) {
+				held.permits.release();
+				throw e;
+			}
+			return response.whenComplete((r, e) -> held.permits.release());
+		});
+	}
+
+	/**
+	 * Returns the pool of the vault host of uri, creating it with the pool settings of the caller when the host has none yet.
+	 */
+	HostPool pool(VaultConnectionSettings settings, URI uri) {
+		String origin = origin(uri);
+		HostPool pool = pools.get(origin);
+		if (pool != null) {
+			return pool;
+		}
+		PoolSettings poolSettings;
+		try {
+			poolSettings = new PoolSettings(settings);
+		} catch (IllegalArgumentException e) {
+			throw new ConnectorException(HTTP_VERSION + " must be HTTP_2 or HTTP_1_1");
+		}
+		return pools.computeIfAbsent(origin, k -> {
+			log.debug("Creating {} connection pool of {} for vault host {}", poolSettings.version, poolSettings.poolSize, origin);
+			return new HostPool(origin, poolSettings, sslContext);
+		});
+	}
+
+	/**
+	 * @return requests in flight and pool size of every vault host
+	 */
+	Map<String, Long> gauges() {
+		Map<String, Long> gauges = new LinkedHashMap<>();
+		for (HostPool pool : pools.values()) {
+			gauges.put("pool:" + pool.origin + ".inFlight", (long) pool.inFlight());
+			gauges.put("pool:" + pool.origin + ".size", (long) pool.poolSize());
+		}
+		return gauges;
+	}
+
+	private static String origin(URI uri) {
+		int port = uri.getPort() != -1 ? uri.getPort() : "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+		return uri.getScheme() + "://" + uri.getHost() + ":" + port;
+	}
+}
@@ -0,0 +1,185 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+
+/**
+ * Optional warm-up of a vault account, so that the first getSecret() after a deploy or a configuration change does not pay
+ * for DNS, the TLS handshakes and the login on top of its own call and trip the job timeout.
+ *
+ * setVaultConfig() warms the shared serializers once per JVM: it is called before any connection data is known. The first
+ * test() of a vault account with WARMUP_ENABLED then, in the background and within WARMUP_TIMEOUT_SECONDS: connects to every
+ * replica of every endpoint attribute, logs in and selects the account so that the session is cached, and reads the
+ * keyNames listed in WARMUP_KEY_NAMES, which fills the secret and warm caches when they are enabled. Nothing waits for the
+ * warm-up; a warm-up that failed or timed out runs again on the next test().
+ **/
+final class VaultWarmup {
+
+	private static final Logger log = LoggerFactory.getLogger(VaultWarmup.class);
+
+	/** When true, the first test() of a vault account warms it up in the background. */
+	static final String WARMUP_ENABLED = "WARMUP_ENABLED";
+	/** keyNames read by the warm-up, separated by commas. */
+	static final String WARMUP_KEY_NAMES = "WARMUP_KEY_NAMES";
+	/** Time the warm-up of a vault account may take. */
+	static final String WARMUP_TIMEOUT_SECONDS = "WARMUP_TIMEOUT_SECONDS";
+
+	/** Endpoint attributes whose replicas are connected to. */
+	private static final String[] ENDPOINTS = { VaultConnectionSettings.AUTH_URL, VaultConnectionSettings.ACCOUNT_URL,
+			VaultConnectionSettings.KEY_URL, VaultGateway.BATCH_KEY_URL, SecretVersionTracker.KEY_VERSIONS_URL };
+
+	private final SampleVaultClient client;
+
+	private final VaultGateway gateway;
+
+	private final AtomicBoolean serializersWarmed = new AtomicBoolean();
+
+	private final ConcurrentMap<VaultAccountKey, CompletableFuture<Void>> warmups = new ConcurrentHashMap<>();
+
+	private final LongAdder completed = new LongAdder();
+
+	private final LongAdder failed = new LongAdder();
+
+	VaultWarmup(SampleVaultClient client, VaultGateway gateway) {
+		this.client = client;
+		this.gateway = gateway;
+	}
+
+	/**
+	 * Runs warm, which exercises the serializers of the connector, once per JVM on a background thread.
+	 */
+	void warmSerializers(Runnable warm) {
+		if (!serializersWarmed.compareAndSet(false, true)) {
+			return;
+		}
+		Thread thread = VaultThreads.daemonFactory("vault-warmup").newThread(() -> {
+			long start = System.nanoTime();
+			try {
+				warm.run();
+				log.debug("Serializers warmed up in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			} catch (RuntimeException e) {
+				log.debug("Serializer warm-up failed: {}", e.getMessage());
+			}
+		});
+		thread.start();
+	}
+
+	/**
+	 * Starts the warm-up of the vault account of settings when WARMUP_ENABLED is set and the account was not warmed up yet.
+	 *
+	 * @return the warm-up of the account, which never fails
+	 */
+	CompletableFuture<Void> warmUp(VaultConnectionSettings settings) {
+		if (!settings.booleanAttribute(WARMUP_ENABLED, false)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		//The failure is kept in warmups so that the next call retries the warm-up; callers get a future that never fails
+		return warmups.compute(settings.accountKey(), (key, existing) ->
+				existing != null && (!existing.isDone() || completedNormally(existing)) ? existing : run(settings))
+				.exceptionally(failure -> null);
+	}
+
+	/**
+	 * @return the warm-ups completed and failed or timed out so far
+	 */
+	Map<String, Long> gauges() {
+		Map<String, Long> gauges = new LinkedHashMap<>();
+		gauges.put("warmup.completed", completed.sum());
+		gauges.put("warmup.failed", failed.sum());
+		return gauges;
+	}
+
+	/**
+	 * @return the warm-up, failed when one of its steps failed or it timed out
+	 */
+	private CompletableFuture<Void> run(VaultConnectionSettings settings) {
+		long start = System.nanoTime();
+		long timeoutSeconds = Math.max(1, settings.longAttribute(WARMUP_TIMEOUT_SECONDS, 30));
+		List<CompletableFuture<?>> steps = new ArrayList<>();
+		Set<String> connected = new HashSet<>();
+		//Steps run through Futures.call: one throwing right away fails the warm-up, never the test() that started it
+		for (String endpoint : ENDPOINTS) {
+			for (String url : settings.urls(endpoint)) {
+				if (connected.add(url)) {
+					//A replica that cannot be reached is left to the router, it does not fail the warm-up
+					steps.add(Futures.call(() -> client.connect(settings, endpoint, url)).handle((status, failure) -> {
+						if (failure != null) {
+							log.debug("Warm-up could not connect to {} {}: {}", endpoint, url, Futures.unwrap(failure).getMessage());
+						}
+						return status;
+					}));
+				}
+			}
+		}
+		//Hot keys are read with the session of the login, once it is cached.
+		steps.add(Futures.call(() -> gateway.withSessionAsync(settings, session -> prefetch(settings))));
+		//The warm-up is marked failed on timeout; its steps carry on, bounded by REQUEST_TIMEOUT_SECONDS
+		CompletableFuture<Void> warmup = CompletableFuture.allOf(steps.toArray(new CompletableFuture<?>[0]))
+				.orTimeout(timeoutSeconds, TimeUnit.SECONDS);
+		CompletableFuture<Void> outcome = new CompletableFuture<>();
+		warmup.whenComplete((done, failure) -> {
+			if (failure == null) {
+				completed.increment();
+				log.debug("Vault {} warmed up in {} ms", settings.accountKey(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+				outcome.complete(null);
+			} else {
+				failed.increment();
+				log.debug("Warm-up of vault {} failed: {}", settings.accountKey(), Futures.unwrap(failure).getMessage());
+				outcome.completeExceptionally(Futures.unwrap(failure));
+			}
+		});
+		return outcome;
+	}
+
+	private CompletableFuture<Void> prefetch(VaultConnectionSettings settings) {
+		List<String> keyNames = keyNames(settings.attribute(WARMUP_KEY_NAMES));
+		if (keyNames.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		SecretCache secretCache = gateway.secretCache(settings);
+		List<CompletableFuture<?>> reads = new ArrayList<>();
+		for (String keyName : keyNames) {
+			reads.add(gateway.readSecretAsync(settings, secretCache, keyName, KeyMappingPlan.keyPath(keyName), null)
+					.handle((value, failure) -> {
+						if (failure != null) {
+							log.debug("Warm-up could not read a hot key: {}", Futures.unwrap(failure).getMessage());
+						}
+						return null;
+					}));
+		}
+		return CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0]));
+	}
+
+	/**
+	 * @return the keyNames listed in WARMUP_KEY_NAMES, separated by commas
+	 */
+	private static List<String> keyNames(String value) {
+		List<String> keyNames = new ArrayList<>();
+		if (value != null) {
+			for (String keyName : value.split(",")) {
+				if (!keyName.trim().isEmpty()) {
+					keyNames.add(keyName.trim());
+				}
+			}
+		}
+		return keyNames;
+	}
+
+	private static boolean completedNormally(CompletableFuture<?> future) {
+		return future.isDone() && !future.isCompletedExceptionally();
+	}
+}
@@ -0,0 +1,658 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+
+/**
+ * Optional persistent tier below the in-memory SecretCache: the secrets of one vault account and KEY_URL, kept in a
+ * memory-mapped file under WARM_CACHE_DIR so that they survive a restart of the JVM and can be served while the vault
+ * is failing.
+ *
+ * The file is a log of AES-GCM encrypted records (keyName, value, version, write time and lease) after a small header.
+ * A record written by setSecret() is flushed before the committed length in the header is moved past it, and the header
+ * is flushed before setSecret() returns, so a crash leaves either the previous or the new state. Records of values read
+ * from the vault are flushed in the background within FLUSH_DELAY_MILLIS: a crash may lose the last of them, which the
+ * next read fetches again. Either way a torn or tampered record fails its GCM tag and ends the log there. When the file is
+ * full, the live records are written to a temporary file which atomically replaces it.
+ *
+ * The AES key is derived with PBKDF2 from the vault password and a random salt kept in the header: no other key has to
+ * be managed, and a file written with another password cannot be read and is started over. While a file is open for one
+ * password, connections with another password (both sides of a password rotation, say) go without a warm cache rather
+ * than reopen it; they take it over once it has not been used for TAKEOVER_IDLE_MILLIS. The settings of a file are those
+ * of the connection that opened it. Values are only decrypted when they are served; the in-heap index holds the offsets
+ * and the lease of the records.
+ *
+ * A record is fresh until its lease (WARM_CACHE_LEASE_SECONDS after it was written) and is then served without calling
+ * the vault. Past its lease, it is served only when the vault fails, and dropped after WARM_CACHE_MAX_STALE_SECONDS.
+ **/
+final class WarmSecretStore {
+
+	private static final Logger log = LoggerFactory.getLogger(WarmSecretStore.class);
+
+	/** Directory of the warm cache files. The warm cache is disabled when it is not set. */
+	static final String WARM_CACHE_DIR = "WARM_CACHE_DIR";
+	/** Size of the warm cache file of a vault account. */
+	static final String WARM_CACHE_MAX_BYTES = "WARM_CACHE_MAX_BYTES";
+	/** Time after being written during which a secret is served from the warm cache without calling the vault. */
+	static final String WARM_CACHE_LEASE_SECONDS = "WARM_CACHE_LEASE_SECONDS";
+	/** Age after which a secret is no longer served from the warm cache, even when the vault is failing. */
+	static final String WARM_CACHE_MAX_STALE_SECONDS = "WARM_CACHE_MAX_STALE_SECONDS";
+
+	private static final int MAGIC = 0x53565743;
+	private static final int FORMAT = 1;
+	private static final int SALT_BYTES = 16;
+	private static final int NONCE_BYTES = 12;
+	private static final int TAG_BITS = 128;
+	private static final int PBKDF2_ITERATIONS = 100_000;
+	private static final byte[] KEY_CHECK = "sampleVault warm cache".getBytes(StandardCharsets.UTF_8);
+
+	/** magic, format, salt, committed end, key check (nonce, length, ciphertext) */
+	private static final int HEADER_BYTES = 128;
+	private static final int END_OFFSET = 8 + SALT_BYTES;
+	private static final int KEY_CHECK_OFFSET = END_OFFSET + 8;
+
+	private static final byte VALUE = 1;
+	private static final byte REMOVED = 2;
+
+	/** Time records of values read from the vault may wait before being flushed to disk. */
+	private static final long FLUSH_DELAY_MILLIS = 1000;
+	/** Time a file must go unused by the password it is open for before a connection with another password reopens it. */
+	private static final long TAKEOVER_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+	private static final SecureRandom random = new SecureRandom();
+
+	/** Background flushes of the records of values read from the vault. */
+	private static final ScheduledThreadPoolExecutor flusher = new ScheduledThreadPoolExecutor(1, VaultThreads.daemonFactory("vault-warm-cache-flush"));
+
+	/** Open stores, one per file. */
+	private static final ConcurrentMap<Path, WarmSecretStore> stores = new ConcurrentHashMap<>();
+
+	/** File names by vault account and KEY_URL, so that calls do not hash them again. */
+	private static final ConcurrentMap<List<String>, String> fileNames = new ConcurrentHashMap<>();
+
+	/** Warm cache settings read from the connection attributes. */
+	static final class Settings {
+		final Path directory;
+		final int maxBytes;
+		final long leaseMillis;
+		final long maxStaleMillis;
+
+		private Settings(Path directory, int maxBytes, long leaseMillis, long maxStaleMillis) {
+			this.directory = directory;
+			this.maxBytes = maxBytes;
+			this.leaseMillis = leaseMillis;
+			this.maxStaleMillis = maxStaleMillis;
+		}
+
+		/**
+		 * @return the warm cache settings, or null when WARM_CACHE_DIR is not set
+		 */
+		static Settings from(VaultConnectionSettings settings) {
+			String directory = settings.attribute(WARM_CACHE_DIR);
+			if (StringUtils.isEmpty(directory)) {
+				return null;
+			}
+			return new Settings(Paths.get(directory), Math.max(64 * 1024, settings.intAttribute(WARM_CACHE_MAX_BYTES, 8 * 1024 * 1024)),
+					TimeUnit.SECONDS.toMillis(settings.longAttribute(WARM_CACHE_LEASE_SECONDS, 300)),
+					TimeUnit.SECONDS.toMillis(settings.longAttribute(WARM_CACHE_MAX_STALE_SECONDS, 86400)));
+		}
+	}
+
+	/** A secret read from the warm cache. */
+	static final class Hit {
+		final String value;
+		final String version;
+		final long writtenAtMillis;
+		/** True while the lease of the record runs */
+		final boolean fresh;
+
+		private Hit(String value, String version, long writtenAtMillis, boolean fresh) {
+			this.value = value;
+			this.version = version;
+			this.writtenAtMillis = writtenAtMillis;
+			this.fresh = fresh;
+		}
+	}
+
+	/** Index entry of the last record of a keyName. */
+	private static final class Ref {
+		final int offset;
+		final int length;
+		final long writtenAtMillis;
+		final long leaseExpiresAtMillis;
+
+		Ref(int offset, int length, long writtenAtMillis, long leaseExpiresAtMillis) {
+			this.offset = offset;
+			this.length = length;
+			this.writtenAtMillis = writtenAtMillis;
+			this.leaseExpiresAtMillis = leaseExpiresAtMillis;
+		}
+	}
+
+	/** Decrypted record. */
+	private static final class Record {
+		final byte type;
+		final String keyName;
+		final long writtenAtMillis;
+		final long leaseExpiresAtMillis;
+		final String version;
+		final String value;
+
+		Record(byte type, String keyName, long writtenAtMillis, long leaseExpiresAtMillis, String version, String value) {
+			this.type = type;
+			this.keyName = keyName;
+			this.writtenAtMillis = writtenAtMillis;
+			this.leaseExpiresAtMillis = leaseExpiresAtMillis;
+			this.version = version;
+			this.value = value;
+		}
+	}
+
+	private final Path file;
+	/** Vault account the key was derived for; another password reopens the file */
+	private final VaultAccountKey accountKey;
+	private final char[] password;
+	private final Settings settings;
+	/** System.currentTimeMillis() of the last of() handing out the store */
+	private volatile long lastUsedMillis = System.currentTimeMillis();
+	private final Map<String, Ref> index = new HashMap<>();
+	private final Cipher cipher;
+	private SecretKey key;
+	private byte[] salt;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private int end;
+	/** Whether records were appended since the last flush; a flush is then scheduled */
+	private boolean dirty;
+
+	private WarmSecretStore(Path file, VaultConnectionSettings connection, Settings settings) throws IOException, GeneralSecurityException {
+		this.file = file;
+		this.accountKey = connection.accountKey();
+		this.password = connection.password.toCharArray();
+		this.settings = settings;
+		this.cipher = Cipher.getInstance("AES/GCM/NoPadding");
+		try {
+			open();
+		} finally {
+			Arrays.fill(password, '\0');
+		}
+	}
+
+	/**
+	 * Returns the warm cache of the vault account and KEY_URL of settings, opening its file on first use.
+	 *
+	 * @return the store, or null when the warm cache is not enabled, its file cannot be opened, or it is in use by another password
+	 */
+	static WarmSecretStore of(VaultConnectionSettings settings) {
+		Settings warmSettings = Settings.from(settings);
+		if (warmSettings == null) {
+			return null;
+		}
+		Path file = warmSettings.directory.resolve(fileNames.computeIfAbsent(
+				Arrays.asList(settings.authUrl, settings.username, settings.accountUrl, settings.keyUrl), k -> fileName(settings))).toAbsolutePath();
+		VaultAccountKey accountKey = settings.accountKey();
+		WarmSecretStore store = stores.get(file);
+		if (store == null || (!store.accountKey.equals(accountKey) && store.idle())) {
+			//A store is only handed to the password it was opened with
+			store = stores.compute(file, (f, open) -> {
+				if (open != null && (open.accountKey.equals(accountKey) || !open.idle())) {
+					return open;
+				}
+				if (open != null) {
+					open.close();
+				}
+				try {
+					Files.createDirectories(f.getParent());
+					return new WarmSecretStore(f, settings, warmSettings);
+				} catch (IOException | GeneralSecurityException e) {
+					log.debug("Warm cache {} cannot be opened: {}", f, e.getMessage());
+					return null;
+				}
+			});
+		}
+		if (store == null || !store.accountKey.equals(accountKey)) {
+			return null;
+		}
+		store.lastUsedMillis = System.currentTimeMillis();
+		return store;
+	}
+
+	/**
+	 * @return the secret stored for keyName, or null when there is none or it is older than WARM_CACHE_MAX_STALE_SECONDS
+	 */
+	synchronized Hit get(String keyName) {
+		Ref ref = index.get(keyName);
+		if (ref == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		if (now - ref.writtenAtMillis > settings.maxStaleMillis) {
+			return null;
+		}
+		try {
+			Record record = read(ref.offset, ref.length);
+			return new Hit(record.value, record.version, record.writtenAtMillis, now < ref.leaseExpiresAtMillis);
+		} catch (IOException | GeneralSecurityException e) {
+			log.debug("Warm cache record of a key cannot be read: {}", e.getMessage());
+			index.remove(keyName);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the value of keyName with a new lease.
+	 *
+	 * @param version version of the value reported by the vault, or null
+	 * @param durable whether the record must be on disk when put() returns, as for a value written by setSecret(); the
+	 *                records of values read from the vault are flushed in the background
+	 */
+	synchronized void put(String keyName, String value, String version, boolean durable) {
+		long now = System.currentTimeMillis();
+		append(new Record(VALUE, keyName, now, now + settings.leaseMillis, version, value), durable);
+	}
+
+	/**
+	 * Forgets keyName, e.g. after a failed write left its value in the vault unknown. The removal is on disk when remove() returns.
+	 */
+	synchronized void remove(String keyName) {
+		if (index.containsKey(keyName)) {
+			append(new Record(REMOVED, keyName, System.currentTimeMillis(), 0, null, null), true);
+		}
+	}
+
+	/**
+	 * Hands every fresh secret to consumer with its version and the milliseconds left on its lease, to warm the in-memory cache.
+	 */
+	synchronized void forEachFresh(FreshConsumer consumer) {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, Ref> entry : new ArrayList<>(index.entrySet())) {
+			Ref ref = entry.getValue();
+			if (ref.leaseExpiresAtMillis <= now) {
+				continue;
+			}
+			try {
+				Record record = read(ref.offset, ref.length);
+				consumer.accept(entry.getKey(), record.value, record.version, ref.leaseExpiresAtMillis - now);
+			} catch (IOException | GeneralSecurityException e) {
+				index.remove(entry.getKey());
+			}
+		}
+	}
+
+	/** Receives the fresh secrets of forEachFresh(). */
+	interface FreshConsumer {
+		void accept(String keyName, String value, String version, long leaseMillisLeft);
+	}
+
+	synchronized int size() {
+		return index.size();
+	}
+
+	/**
+	 * Closes every open store, as on shutdown. The next use opens the files again.
+	 */
+	static void closeAll() {
+		stores.values().removeIf(store -> {
+			store.close();
+			return true;
+		});
+	}
+
+	private synchronized void close() {
+		if (dirty) {
+			buffer.force();
+			dirty = false;
+		}
+		index.clear();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			log.debug("Warm cache {} cannot be closed: {}", file, e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the number of open warm cache files and the secrets they hold
+	 */
+	static Map<String, Long> gauges() {
+		long entries = 0;
+		for (WarmSecretStore store : stores.values()) {
+			entries += store.size();
+		}
+		Map<String, Long> gauges = new HashMap<>();
+		gauges.put("warmCache.files", (long) stores.size());
+		gauges.put("warmCache.entries", entries);
+		return gauges;
+	}
+
+	/**
+	 * File name of the vault account and KEY_URL. The password is left out, a file of another password is started over.
+	 */
+	private static String fileName(VaultConnectionSettings settings) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] hash = digest.digest((settings.authUrl + '\n' + settings.username + '\n' + settings.accountUrl + '\n' + settings.keyUrl)
+					.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder("vault-");
+			for (int i = 0; i < 16; i++) {
+				name.append(String.format("%02x", hash[i]));
+			}
+			return name.append(".cache").toString();
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void open() throws IOException, GeneralSecurityException {
+		boolean exists = Files.exists(file) && Files.size(file) >= HEADER_BYTES;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		int size = (int) Math.max(settings.maxBytes, channel.size());
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		if (exists && buffer.getInt(0) == MAGIC && buffer.getInt(4) == FORMAT) {
+			salt = bytes(buffer, 8, SALT_BYTES);
+			key = deriveKey(salt);
+			if (checkKey()) {
+				load();
+				return;
+			}
+			log.debug("Warm cache {} was written with another password and is started over", file);
+		}
+		initialize(buffer);
+	}
+
+	/**
+	 * Writes an empty log with a new salt.
+	 */
+	private void initialize(MappedByteBuffer target) throws GeneralSecurityException {
+		salt = new byte[SALT_BYTES];
+		random.nextBytes(salt);
+		key = deriveKey(salt);
+		target.putInt(0, MAGIC);
+		target.putInt(4, FORMAT);
+		put(target, 8, salt);
+		byte[] check = encrypt(KEY_CHECK.clone());
+		target.putInt(KEY_CHECK_OFFSET, check.length);
+		put(target, KEY_CHECK_OFFSET + 4, check);
+		target.putLong(END_OFFSET, HEADER_BYTES);
+		target.force();
+		end = HEADER_BYTES;
+		index.clear();
+	}
+
+	private boolean checkKey() {
+		int length = buffer.getInt(KEY_CHECK_OFFSET);
+		if (length <= NONCE_BYTES || KEY_CHECK_OFFSET + 4 + length > HEADER_BYTES) {
+			return false;
+		}
+		byte[] check = bytes(buffer, KEY_CHECK_OFFSET + 4, length);
+		try {
+			return Arrays.equals(KEY_CHECK, decrypt(check));
+		} catch (GeneralSecurityException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Rebuilds the index from the committed records, ending the log at the first record that cannot be read.
+	 */
+	private void load() {
+		long committed = buffer.getLong(END_OFFSET);
+		int offset = HEADER_BYTES;
+		while (offset + 4 <= committed && offset + 4 <= buffer.capacity()) {
+			int length = buffer.getInt(offset);
+			if (length <= 0 || offset + 4 + length > committed) {
+				break;
+			}
+			try {
+				Record record = read(offset, length);
+				if (record.type == REMOVED) {
+					index.remove(record.keyName);
+				} else {
+					index.put(record.keyName, new Ref(offset, length, record.writtenAtMillis, record.leaseExpiresAtMillis));
+				}
+			} catch (IOException | GeneralSecurityException e) {
+				log.debug("Warm cache {} is truncated at offset {}: {}", file, offset, e.getMessage());
+				break;
+			}
+			offset += 4 + length;
+		}
+		end = offset;
+		buffer.putLong(END_OFFSET, end);
+		log.debug("Warm cache {} holds {} secrets", file, index.size());
+	}
+
+	/**
+	 * @return whether the password the store is open for has not used it for TAKEOVER_IDLE_MILLIS
+	 */
+	private boolean idle() {
+		return System.currentTimeMillis() - lastUsedMillis > TAKEOVER_IDLE_MILLIS;
+	}
+
+	/**
+	 * Flushes the records appended since the last flush. The mapping is forced outside the lock of the store, so that
+	 * reads and appends do not wait for the disk.
+	 */
+	private void flush() {
+		MappedByteBuffer dirtyBuffer;
+		synchronized (this) {
+			if (!dirty) {
+				return;
+			}
+			dirty = false;
+			dirtyBuffer = buffer;
+		}
+		dirtyBuffer.force();
+	}
+
+	private void append(Record record, boolean durable) {
+		try {
+			byte[] sealed = encrypt(serialize(record));
+			if (end + 4 + sealed.length > buffer.capacity()) {
+				compact(4 + sealed.length);
+				if (end + 4 + sealed.length > buffer.capacity()) {
+					log.debug("Secret of {} bytes does not fit in warm cache {}", sealed.length, file);
+					index.remove(record.keyName);
+					return;
+				}
+			}
+			int offset = end;
+			buffer.putInt(offset, sealed.length);
+			put(buffer, offset + 4, sealed);
+			if (durable) {
+				//Committed only once the record is on disk
+				buffer.force();
+			}
+			end = offset + 4 + sealed.length;
+			buffer.putLong(END_OFFSET, end);
+			if (durable) {
+				buffer.force();
+				dirty = false;
+			} else if (!dirty) {
+				//The records appended until the flush share it
+				dirty = true;
+				flusher.schedule(this::flush, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			if (record.type == REMOVED) {
+				index.remove(record.keyName);
+			} else {
+				index.put(record.keyName, new Ref(offset, sealed.length, record.writtenAtMillis, record.leaseExpiresAtMillis));
+			}
+		} catch (IOException | GeneralSecurityException e) {
+			log.debug("Warm cache {} cannot be written: {}", file, e.getMessage());
+			index.remove(record.keyName);
+		}
+	}
+
+	/**
+	 * Rewrites the live records, newest first until the file is full, to a temporary file that replaces the log.
+	 *
+	 * @param needed bytes the next record needs
+	 */
+	private void compact(int needed) throws IOException, GeneralSecurityException {
+		long now = System.currentTimeMillis();
+		List<Map.Entry<String, Ref>> live = new ArrayList<>(index.entrySet());
+		live.removeIf(entry -> now - entry.getValue().writtenAtMillis > settings.maxStaleMillis);
+		live.sort(Comparator.comparingLong((Map.Entry<String, Ref> entry) -> entry.getValue().writtenAtMillis).reversed());
+
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		Map<String, Ref> compacted = new HashMap<>();
+		int size = Math.max(settings.maxBytes, HEADER_BYTES + needed);
+		try (FileChannel target = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer out = target.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			put(out, 0, bytes(buffer, 0, HEADER_BYTES));
+			int offset = HEADER_BYTES;
+			for (Map.Entry<String, Ref> entry : live) {
+				Ref ref = entry.getValue();
+				if (offset + 4 + ref.length > size - needed) {
+					continue;
+				}
+				//Records are copied as they are: same key, same salt
+				put(out, offset, bytes(buffer, ref.offset, 4 + ref.length));
+				compacted.put(entry.getKey(), new Ref(offset, ref.length, ref.writtenAtMillis, ref.leaseExpiresAtMillis));
+				offset += 4 + ref.length;
+			}
+			out.putLong(END_OFFSET, offset);
+			out.force();
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			end = offset;
+			buffer = out;
+		}
+		channel.close();
+		channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		index.clear();
+		index.putAll(compacted);
+		log.debug("Warm cache {} compacted to {} secrets", file, index.size());
+	}
+
+	private Record read(int offset, int length) throws IOException, GeneralSecurityException {
+		byte[] sealed = bytes(buffer, offset + 4, length);
+		byte[] plain = decrypt(sealed);
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain))) {
+			byte type = in.readByte();
+			String keyName = in.readUTF();
+			long writtenAt = in.readLong();
+			long leaseExpiresAt = in.readLong();
+			String version = in.readBoolean() ? in.readUTF() : null;
+			String value = null;
+			int valueLength = in.readInt();
+			if (valueLength >= 0) {
+				byte[] bytes = new byte[valueLength];
+				in.readFully(bytes);
+				value = new String(bytes, StandardCharsets.UTF_8);
+				Arrays.fill(bytes, (byte) 0);
+			}
+			return new Record(type, keyName, writtenAt, leaseExpiresAt, version, value);
+		} finally {
+			Arrays.fill(plain, (byte) 0);
+		}
+	}
+
+	private static byte[] bytes(ByteBuffer source, int offset, int length) {
+		byte[] bytes = new byte[length];
+		ByteBuffer view = source.duplicate();
+		view.position(offset);
+		view.get(bytes);
+		return bytes;
+	}
+
+	private static void put(ByteBuffer target, int offset, byte[] bytes) {
+		ByteBuffer view = target.duplicate();
+		view.position(offset);
+		view.put(bytes);
+	}
+
+	private static byte[] serialize(Record record) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(record.type);
+			out.writeUTF(record.keyName);
+			out.writeLong(record.writtenAtMillis);
+			out.writeLong(record.leaseExpiresAtMillis);
+			out.writeBoolean(record.version != null);
+			if (record.version != null) {
+				out.writeUTF(record.version);
+			}
+			if (record.value == null) {
+				out.writeInt(-1);
+			} else {
+				byte[] value = record.value.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(value.length);
+				out.write(value);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Encrypts plain, which is zeroed.
+	 *
+	 * @return nonce followed by the ciphertext and its tag, authenticated with the salt of the file
+	 */
+	private byte[] encrypt(byte[] plain) throws GeneralSecurityException {
+		byte[] nonce = new byte[NONCE_BYTES];
+		random.nextBytes(nonce);
+		cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, nonce));
+		cipher.updateAAD(salt);
+		byte[] sealed = new byte[NONCE_BYTES + cipher.getOutputSize(plain.length)];
+		System.arraycopy(nonce, 0, sealed, 0, NONCE_BYTES);
+		cipher.doFinal(plain, 0, plain.length, sealed, NONCE_BYTES);
+		Arrays.fill(plain, (byte) 0);
+		return sealed;
+	}
+
+	private byte[] decrypt(byte[] sealed) throws GeneralSecurityException {
+		if (sealed.length <= NONCE_BYTES) {
+			throw new GeneralSecurityException("Record too short");
+		}
+		cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, sealed, 0, NONCE_BYTES));
+		cipher.updateAAD(salt);
+		return cipher.doFinal(sealed, NONCE_BYTES, sealed.length - NONCE_BYTES);
+	}
+
+	private SecretKey deriveKey(byte[] salt) throws GeneralSecurityException {
+		PBEKeySpec spec = new PBEKeySpec(password, salt, PBKDF2_ITERATIONS, 256);
+		try {
+			byte[] encoded = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+			return new SecretKeySpec(encoded, "AES");
+		} finally {
+			spec.clearPassword();
+		}
+	}
+}
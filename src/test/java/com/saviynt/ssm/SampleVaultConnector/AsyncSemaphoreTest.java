@@ -0,0 +1,49 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for AsyncSemaphore.
+ */
+public class AsyncSemaphoreTest extends TestCase
+{
+    public void testWaitersAreServedInArrivalOrder()
+    {
+        AsyncSemaphore semaphore = new AsyncSemaphore(1);
+        assertTrue(semaphore.acquire(TimeUnit.SECONDS.toNanos(10)).isDone());
+        CompletableFuture<Void> first = semaphore.acquire(TimeUnit.SECONDS.toNanos(10));
+        CompletableFuture<Void> second = semaphore.acquire(TimeUnit.SECONDS.toNanos(10));
+        assertFalse(first.isDone());
+        assertEquals(2, semaphore.queued());
+
+        semaphore.release();
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        semaphore.release();
+        assertTrue(second.isDone());
+        semaphore.release();
+        assertEquals(0, semaphore.inUse());
+    }
+
+    public void testTimedOutWaiterLeavesTheQueue()
+    {
+        AsyncSemaphore semaphore = new AsyncSemaphore(1);
+        semaphore.acquire(TimeUnit.SECONDS.toNanos(10));
+        CompletableFuture<Void> waiter = semaphore.acquire(TimeUnit.MILLISECONDS.toNanos(20));
+        try {
+            waiter.join();
+            fail("TimeoutException expected");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(0, semaphore.queued());
+
+        semaphore.release();
+        assertEquals(0, semaphore.inUse());
+        assertTrue(semaphore.acquire(TimeUnit.SECONDS.toNanos(10)).isDone());
+    }
+}
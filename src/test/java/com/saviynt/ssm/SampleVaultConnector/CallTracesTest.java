@@ -0,0 +1,85 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.ObjectName;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for CallTraces.
+ */
+public class CallTracesTest extends TestCase
+{
+    public void testOldestCallsAreOverwrittenAndSlowestComeFirst() throws InterruptedException
+    {
+        CallTraces traces = new CallTraces(4);
+        for (int i = 0; i < 6; i++) {
+            CallTraces.Trace trace = traces.start("call" + i);
+            if (i == 1 || i == 4) {
+                Thread.sleep(20);
+            }
+            traces.finish(trace, null);
+        }
+        List<CallTraces.Trace> slowest = traces.slowest(10);
+        assertEquals(4, slowest.size());
+        assertEquals("call4", slowest.get(0).operation);
+        for (CallTraces.Trace trace : slowest) {
+            assertFalse("call1 was overwritten", trace.operation.equals("call1"));
+        }
+        assertEquals(1, traces.slowest(1).size());
+    }
+
+    public void testPhasesAreRecordedUntilTheCallFinishes()
+    {
+        CallTraces traces = new CallTraces(8);
+        CallTraces.Trace trace = traces.start("getSecret");
+        trace.connection("MyADConnector", 2);
+        long fetch = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(30);
+        trace.record(CallTraces.Phase.of("KEY_URL"), fetch);
+        trace.record(CallTraces.Phase.of("KEY_URL"), fetch);
+        trace.record(CallTraces.Phase.of("AUTH_URL"), System.nanoTime());
+        traces.finish(trace, new VaultServerException("Vault returned HTTP 500 on KEY_URL", 500, 0, null));
+        trace.record(CallTraces.Phase.ACCOUNT, System.nanoTime());
+
+        Map<String, Object> call = trace.toMap();
+        assertEquals("MyADConnector", call.get("connection"));
+        assertEquals(2, call.get("attributes"));
+        assertEquals("VaultServerException", call.get("outcome"));
+        Map<String, Map<String, Object>> phases = (Map<String, Map<String, Object>>) call.get("phases");
+        assertEquals(2L, phases.get("keyFetch").get("count"));
+        assertTrue((Long) phases.get("keyFetch").get("millis") >= 60);
+        assertEquals(1L, phases.get("auth").get("count"));
+        assertFalse(phases.containsKey("account"));
+    }
+
+    public void testConnectorTracesCallsWithoutSecrets() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            SampleVaultConnector connector = new SampleVaultConnector();
+            vault.putKey("TracedConnector~#~abcd215", "password@1234");
+            Map<String, Object> vaultConfigData = StubVaultServer.vaultConfigData(Collections.singletonMap("PASSWORD", "TracedConnector~#~abcd215"));
+            connector.getSecret(vaultConfigData, vault.data(Collections.singletonMap("PASSWORD", null)));
+
+            //The buffer is shared by every connector instance of the JVM
+            Map<String, Object> call = connector.slowestCalls(CallTraces.CAPACITY).stream()
+                    .filter(traced -> "TracedConnector".equals(traced.get("connection"))).findFirst().get();
+            assertEquals("getSecret", call.get("operation"));
+            assertEquals(1, call.get("attributes"));
+            assertEquals("success", call.get("outcome"));
+            Map<String, Map<String, Object>> phases = (Map<String, Map<String, Object>>) call.get("phases");
+            assertTrue(phases.keySet().containsAll(List.of("auth", "account", "keyFetch", "jsonDecoding")));
+            assertFalse(call.toString().contains("password@1234"));
+
+            //MXBeans return lists as arrays
+            String[] lines = (String[]) ManagementFactory.getPlatformMBeanServer().invoke(new ObjectName(VaultMetrics.OBJECT_NAME),
+                    "slowestCalls", new Object[] { CallTraces.CAPACITY }, new String[] { int.class.getName() });
+            String line = Arrays.stream(lines).filter(traced -> traced.contains("connection=TracedConnector")).findFirst().get();
+            assertTrue(line.startsWith("getSecret "));
+            assertFalse(line.contains("password@1234"));
+        }
+    }
+}
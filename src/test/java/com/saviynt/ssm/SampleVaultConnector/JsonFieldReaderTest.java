@@ -0,0 +1,70 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+
+public class JsonFieldReaderTest extends TestCase
+{
+    public void testReadsWantedFieldsAndSkipsTheRest() throws IOException
+    {
+        String body = "{\"metadata\":{\"versions\":[1,2,{\"nested\":[\"x\"]}]},\"value\":\"password@1234\",\"bundle\":[\"a\",\"b\"],\"version\":7}";
+        Map<String, String> fields = new LinkedHashMap<>();
+        JsonFieldReader.read(body.getBytes(StandardCharsets.UTF_8), parser -> {
+            JsonFieldReader.forEachField(parser, (name, value) -> {
+                if ("value".equals(name) || "version".equals(name)) {
+                    fields.put(name, JsonFieldReader.text(value));
+                    return true;
+                }
+                return false;
+            });
+            return null;
+        });
+        assertEquals("{value=password@1234, version=7}", fields.toString());
+    }
+
+    public void testNullAndEmptyValues() throws IOException
+    {
+        Map<String, String> fields = new LinkedHashMap<>();
+        JsonFieldReader.read("{\"a\":null,\"b\":\"\",\"d\":true}".getBytes(StandardCharsets.UTF_8), parser -> {
+            JsonFieldReader.forEachField(parser, (name, value) -> {
+                fields.put(name, JsonFieldReader.text(value));
+                return true;
+            });
+            return null;
+        });
+        assertEquals("{a=null, b=, d=true}", fields.toString());
+        assertEquals(Boolean.TRUE, JsonFieldReader.read(new byte[0], parser -> {
+            JsonFieldReader.forEachField(parser, (name, value) -> false);
+            return true;
+        }));
+    }
+
+    public void testRejectsContainerValue()
+    {
+        try {
+            JsonFieldReader.read("{\"value\":{\"password\":\"password@1234\"}}".getBytes(StandardCharsets.UTF_8), parser -> {
+                JsonFieldReader.forEachField(parser, (name, value) -> JsonFieldReader.text(value) != null);
+                return null;
+            });
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("START_OBJECT"));
+        }
+    }
+
+    public void testRejectsNonObjectBody()
+    {
+        try {
+            JsonFieldReader.read("[1]".getBytes(StandardCharsets.UTF_8), parser -> {
+                JsonFieldReader.forEachField(parser, (name, value) -> false);
+                return null;
+            });
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("START_ARRAY"));
+        }
+    }
+}
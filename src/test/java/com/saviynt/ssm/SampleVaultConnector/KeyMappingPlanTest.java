@@ -0,0 +1,77 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import com.saviynt.ssm.abstractConnector.exceptions.MissingKeyException;
+import junit.framework.TestCase;
+
+public class KeyMappingPlanTest extends TestCase
+{
+    public void testResolvesEntries()
+    {
+        Map<String, Object> vaultConfigData = vaultConfigData("MyADConnector~#~abcd 215", "Base64", null);
+        KeyMappingPlan.Entry entry = KeyMappingPlan.of(vaultConfigData).entry("PASSWORD");
+
+        assertEquals("MyADConnector~#~abcd 215", entry.keyName);
+        assertEquals("MyADConnector", entry.connectionName);
+        assertEquals("abcd 215", entry.baseKeyName);
+        assertEquals(KeyMappingPlan.EncryptionMechanism.BASE64, entry.encryptionMechanism);
+        assertEquals("MyADConnector%7E%23%7Eabcd%20215", entry.keyPath);
+    }
+
+    public void testIgnoredKeyNameIsNotSplit()
+    {
+        KeyMappingPlan.Entry entry = KeyMappingPlan.of(vaultConfigData("team~#~abcd215", "None", "keyName")).entry("PASSWORD");
+        assertNull(entry.connectionName);
+        assertEquals("team~#~abcd215", entry.baseKeyName);
+        assertEquals(Collections.singleton("keyName"), entry.ignoreMapping);
+    }
+
+    public void testPlansAreCachedByContent()
+    {
+        KeyMappingPlan plan = KeyMappingPlan.of(vaultConfigData("cached~#~key", "None", null));
+        assertSame(plan, KeyMappingPlan.of(vaultConfigData("cached~#~key", "None", null)));
+        assertNotSame(plan, KeyMappingPlan.of(vaultConfigData("cached~#~other", "None", null)));
+    }
+
+    public void testChangingTheMapAfterwardsDoesNotChangeThePlan()
+    {
+        Map<String, Object> vaultConfigData = vaultConfigData("mutable~#~key", "None", null);
+        KeyMappingPlan plan = KeyMappingPlan.of(vaultConfigData);
+        Map<String, Object> mapping = (Map<String, Object>) ((Map<String, Object>) vaultConfigData.get("keyMapping")).get("PASSWORD");
+        mapping.put("keyName", "mutable~#~changed");
+
+        assertEquals("mutable~#~key", plan.entry("PASSWORD").keyName);
+        assertEquals("mutable~#~changed", KeyMappingPlan.of(vaultConfigData).entry("PASSWORD").keyName);
+    }
+
+    public void testMissingKeyNameAndUnknownMechanism()
+    {
+        try {
+            KeyMappingPlan.of(vaultConfigData("key", "None", null)).entry("USERNAME");
+            fail("MissingKeyException expected");
+        } catch (MissingKeyException e) {
+            assertTrue(e.getMessage().contains("USERNAME"));
+        }
+        //The framework handles the encryption: an unknown mechanism is not rejected
+        assertEquals(KeyMappingPlan.EncryptionMechanism.NONE,
+                KeyMappingPlan.of(vaultConfigData("key", "Rot13", null)).entry("PASSWORD").encryptionMechanism);
+    }
+
+    private static Map<String, Object> vaultConfigData(String keyName, String encryptionMechanism, String ignored)
+    {
+        Map<String, Object> mapping = new HashMap<>();
+        mapping.put("keyName", keyName);
+        mapping.put("encryptionmechanism", encryptionMechanism);
+        if (ignored != null) {
+            mapping.put("ignoreMapping", Arrays.asList(ignored));
+        }
+        Map<String, Object> keyMapping = new HashMap<>();
+        keyMapping.put("PASSWORD", mapping);
+        Map<String, Object> vaultConfigData = new HashMap<>();
+        vaultConfigData.put("keyMapping", keyMapping);
+        return vaultConfigData;
+    }
+}
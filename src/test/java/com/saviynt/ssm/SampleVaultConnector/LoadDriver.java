@@ -0,0 +1,171 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ramps up concurrent getSecret() / setSecret() callers against a StubVaultServer and reports, for every
+ * step of the ramp, the throughput, the p50/p99/p999 latency and the errors by type. Used to size
+ * SECRET_FETCH_PARALLELISM, HTTP_POOL_SIZE and the EIC worker threads, and to check how the connector
+ * scales when the vault is slow, failing or throttling.
+ *
+ * <pre>
+ * mvn -P load test-compile exec:exec -Dload.args="--threads 1,8,32 --latency 20 --error-rate 0.01"
+ * </pre>
+ *
+ * Options, all optional: --threads (ramp, default 1,2,4,8,16,32), --duration (seconds per step, 10),
+ * --attributes (encrypted attributes per call, 4), --write-percent (share of setSecret calls, 10),
+ * --latency and --jitter (milliseconds added by the vault, 0), --error-rate (0..1, 0),
+ * --throttle (vault requests per second before HTTP 429, 0 for none), --retry-after (seconds, 1).
+ */
+public class LoadDriver
+{
+    /** Outcome of one step of the ramp. */
+    static final class Step
+    {
+        final int threads;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder successes = new LongAdder();
+        final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+        long elapsedNanos;
+
+        Step(int threads)
+        {
+            this.threads = threads;
+        }
+
+        Map<String, Long> errors()
+        {
+            Map<String, Long> errors = new TreeMap<>();
+            this.errors.forEach((type, count) -> errors.put(type, count.sum()));
+            return errors;
+        }
+
+        double throughput()
+        {
+            return elapsedNanos == 0 ? 0 : successes.sum() * 1e9 / elapsedNanos;
+        }
+
+        String report()
+        {
+            return String.format("%7d %10d %10.1f %9.2f %9.2f %9.2f  %s", threads, latency.count(), throughput(),
+                    millis(latency.percentile(50)), millis(latency.percentile(99)), millis(latency.percentile(99.9)),
+                    errors.isEmpty() ? "-" : errors().toString());
+        }
+    }
+
+    private final SampleVaultConnector connector = new SampleVaultConnector();
+    private final Map<String, Object> vaultConfigData;
+    private final Map<String, Object> getData;
+    private final Map<String, Object> setData;
+    private final int writePercent;
+
+    LoadDriver(StubVaultServer vault, int attributes, int writePercent)
+    {
+        Map<String, String> keyNames = new LinkedHashMap<>();
+        Map<String, String> requested = new HashMap<>();
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < attributes; i++) {
+            keyNames.put("ATTRIBUTE" + i, "LoadDriver~#~key" + i);
+            requested.put("ATTRIBUTE" + i, null);
+            values.put("ATTRIBUTE" + i, "secret-value-" + i);
+            vault.putKey("LoadDriver~#~key" + i, "secret-value-" + i);
+        }
+        this.vaultConfigData = StubVaultServer.vaultConfigData(keyNames);
+        this.getData = vault.data(requested);
+        this.setData = vault.data(values);
+        this.writePercent = writePercent;
+    }
+
+    /**
+     * Runs threads callers for durationMillis. Each caller makes a getSecret() or setSecret() call at a time.
+     */
+    Step run(int threads, long durationMillis) throws InterruptedException
+    {
+        Step step = new Step(threads);
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread caller = new Thread(() -> {
+                while (System.nanoTime() - deadline < 0) {
+                    call(step);
+                }
+            }, "load-driver-" + i);
+            caller.start();
+            callers.add(caller);
+        }
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        step.elapsedNanos = System.nanoTime() - start;
+        return step;
+    }
+
+    private void call(Step step)
+    {
+        long start = System.nanoTime();
+        try {
+            if (ThreadLocalRandom.current().nextInt(100) < writePercent) {
+                connector.setSecret(vaultConfigData, setData);
+            } else {
+                connector.getSecret(vaultConfigData, getData);
+            }
+            step.successes.increment();
+        } catch (RuntimeException e) {
+            step.errors.computeIfAbsent(errorType(e), k -> new LongAdder()).increment();
+        } finally {
+            step.latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return the exception type, with the HTTP status for errors answered by the vault
+     */
+    static String errorType(RuntimeException e)
+    {
+        if (e instanceof VaultServerException) {
+            return "HTTP " + ((VaultServerException) e).status;
+        }
+        return e.getClass().getSimpleName();
+    }
+
+    private static double millis(long nanos)
+    {
+        return nanos / 1e6;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        long durationMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault("duration", "10")));
+
+        try (StubVaultServer vault = new StubVaultServer()) {
+            LoadDriver driver = new LoadDriver(vault, Integer.parseInt(options.getOrDefault("attributes", "4")),
+                    Integer.parseInt(options.getOrDefault("write-percent", "10")));
+            //Authenticate and open the connections before the faults are injected
+            driver.run(1, 200);
+            vault.setLatency(Long.parseLong(options.getOrDefault("latency", "0")), Long.parseLong(options.getOrDefault("jitter", "0")));
+            vault.setErrorRate(Double.parseDouble(options.getOrDefault("error-rate", "0")));
+            vault.setThrottling(Integer.parseInt(options.getOrDefault("throttle", "0")), Long.parseLong(options.getOrDefault("retry-after", "1")));
+
+            System.out.printf("%7s %10s %10s %9s %9s %9s  %s%n", "threads", "calls", "ok/s", "p50 ms", "p99 ms", "p999 ms", "errors");
+            for (String threads : options.getOrDefault("threads", "1,2,4,8,16,32").split(",")) {
+                System.out.println(driver.run(Integer.parseInt(threads.trim()), durationMillis).report());
+            }
+            System.out.println("Vault answers by HTTP status: " + vault.responseCounts());
+        }
+    }
+}
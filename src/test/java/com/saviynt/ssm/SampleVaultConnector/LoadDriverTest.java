@@ -0,0 +1,29 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import junit.framework.TestCase;
+
+public class LoadDriverTest extends TestCase
+{
+    public void testReportsThroughputAndLatency() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            LoadDriver.Step step = new LoadDriver(vault, 2, 50).run(4, 300);
+            assertTrue(step.successes.sum() > 0);
+            assertEquals(step.successes.sum(), step.latency.count());
+            assertTrue(step.errors().isEmpty());
+            assertTrue(step.throughput() > 0);
+        }
+    }
+
+    public void testReportsErrorsByType() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            LoadDriver driver = new LoadDriver(vault, 1, 0);
+            driver.run(1, 50);
+            vault.setErrorRate(1);
+            LoadDriver.Step step = driver.run(2, 300);
+            assertEquals(0, step.successes.sum());
+            assertTrue(step.errors().toString(), step.errors().containsKey("HTTP 500"));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for LogSanitizer.
+ */
+public class LogSanitizerTest extends TestCase
+{
+    public void testSecretsAndPasswordsAreMasked()
+    {
+        Map<String, Object> attributes = StubVaultServer.attributes("CLIENT_SECRET", "s3cr3t");
+        Map<String, Object> secrets = new HashMap<>();
+        secrets.put("PASSWORD", "password@1234");
+        secrets.put("EMPTY", null);
+        Map<String, Object> data = new HashMap<>();
+        data.put("vaultConnectionAtributes", attributes);
+        data.put("encryptedConnAttr", secrets);
+
+        Set<String> sensitiveNames = LogSanitizer.sensitiveNames(Arrays.asList("Client_Secret"));
+        String json = LogSanitizer.toJson(data, sensitiveNames);
+
+        assertFalse(json.contains("password@vault"));
+        assertFalse(json.contains("password@1234"));
+        assertFalse(json.contains("s3cr3t"));
+        assertFalse(json.contains("\n"));
+        assertTrue(json.contains("https://sampleVault/session/auth"));
+        assertTrue(json.contains("\"EMPTY\":null"));
+    }
+
+    public void testPrettyPrintMasksPassword() throws Exception
+    {
+        assertFalse(new SampleVaultConnector().prettyPrint(StubVaultServer.attributes()).contains("password@vault"));
+    }
+}
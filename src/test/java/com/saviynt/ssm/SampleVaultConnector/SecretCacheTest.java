@@ -0,0 +1,99 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for SecretCache.
+ */
+public class SecretCacheTest extends TestCase
+{
+    private static SecretCache cache(int maxEntries, long maxBytes)
+    {
+        return new SecretCache(new SecretCache.Settings(maxEntries, maxBytes, TimeUnit.MINUTES.toNanos(5), TimeUnit.MINUTES.toNanos(1)));
+    }
+
+    public void testLeastRecentlyUsedEntryIsEvicted()
+    {
+        SecretCache cache = cache(2, Long.MAX_VALUE);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a").value);
+        cache.put("c", "3");
+
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a").value);
+        assertEquals("3", cache.get("c").value);
+    }
+
+    public void testByteLimitIsEnforced()
+    {
+        SecretCache cache = cache(100, 250);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        assertTrue(cache.bytes() <= 250);
+        assertEquals(2, cache.size());
+    }
+
+    public void testMissingKeysAndInvalidation()
+    {
+        SecretCache cache = cache(10, Long.MAX_VALUE);
+        cache.putMissing("gone");
+        assertTrue(cache.get("gone").missing);
+
+        cache.put("gone", "back");
+        assertFalse(cache.get("gone").missing);
+
+        cache.invalidate("gone");
+        assertNull(cache.get("gone"));
+        assertEquals(0, cache.bytes());
+    }
+
+    public void testExpiredEntriesAreNotServed()
+    {
+        SecretCache cache = new SecretCache(new SecretCache.Settings(10, Long.MAX_VALUE, 1, 1));
+        cache.put("a", "1");
+        assertNull(cache.get("a"));
+    }
+
+    public void testExpiredEntryWithETagIsKeptForRevalidation() throws InterruptedException
+    {
+        SecretCache cache = new SecretCache(new SecretCache.Settings(10, Long.MAX_VALUE, TimeUnit.MILLISECONDS.toNanos(50), 1));
+        cache.put("a", "1", "7", "\"7\"");
+        cache.put("b", "2");
+        Thread.sleep(60);
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        SecretCache.Hit expired = cache.revalidatable("a");
+        assertEquals("1", expired.value);
+        assertEquals("7", expired.version);
+        assertEquals("\"7\"", expired.etag);
+        assertNull(cache.revalidatable("b"));
+        assertEquals(1, cache.size());
+
+        Thread.sleep(50);
+        assertNull(cache.revalidatable("a"));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testAccountCacheIsNotReconfiguredOrClearedByOtherConnections()
+    {
+        VaultGateway gateway = new VaultGateway(null);
+        SecretCache cache = gateway.secretCache(connection("10"));
+        cache.put("a", "1");
+        cache.put("b", "2");
+
+        //A connection with caching off bypasses the cache, one with smaller limits shares it as it is
+        assertNull(gateway.secretCache(connection("0")));
+        assertSame(cache, gateway.secretCache(connection("1")));
+        assertEquals(2, cache.size());
+        assertEquals("1", cache.get("a").value);
+    }
+
+    private static VaultConnectionSettings connection(String maxEntries)
+    {
+        return StubVaultServer.settings(SecretCache.SECRET_CACHE_MAX_ENTRIES, maxEntries);
+    }
+}
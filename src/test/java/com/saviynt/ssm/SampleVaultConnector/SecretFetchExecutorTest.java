@@ -0,0 +1,68 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import com.saviynt.ssm.abstractConnector.exceptions.MissingKeyException;
+import com.saviynt.ssm.abstractConnector.exceptions.OperationTimeoutException;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for SecretFetchExecutor.
+ */
+public class SecretFetchExecutorTest extends TestCase
+{
+    private static VaultConnectionSettings settings(String parallelism, String timeoutSeconds)
+    {
+        return StubVaultServer.settings(SecretFetchExecutor.SECRET_FETCH_PARALLELISM, parallelism,
+                SecretFetchExecutor.SECRET_FETCH_TIMEOUT_SECONDS, timeoutSeconds);
+    }
+
+    private static Map<String, String> keyNames(int count)
+    {
+        Map<String, String> keyNames = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            keyNames.put("ATTR" + i, "MyADConnector~#~key" + i);
+        }
+        return keyNames;
+    }
+
+    public void testParallelResultMatchesSequential()
+    {
+        Map<String, String> keyNames = keyNames(10);
+        Map<String, String> sequential = SecretFetchExecutor.fetchAll(settings("1", "10"), keyNames, k -> "value-" + k);
+        Map<String, String> parallel = SecretFetchExecutor.fetchAll(settings("4", "10"), keyNames, k -> "value-" + k);
+        assertEquals(10, parallel.size());
+        assertEquals(sequential, parallel);
+    }
+
+    public void testFailureIsPropagated()
+    {
+        try {
+            SecretFetchExecutor.fetchAll(settings("4", "10"), keyNames(6), k -> {
+                if (k.endsWith("key3")) {
+                    throw new MissingKeyException("Key not found in vault: " + k);
+                }
+                return k;
+            });
+            fail("expected MissingKeyException");
+        } catch (MissingKeyException expected) {
+            assertTrue(expected.getMessage().contains("key3"));
+        }
+    }
+
+    public void testDeadlineMapsToOperationTimeout()
+    {
+        try {
+            SecretFetchExecutor.fetchAll(settings("2", "0"), keyNames(4), k -> {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return k;
+            });
+            fail("expected OperationTimeoutException");
+        } catch (OperationTimeoutException expected) {
+        }
+    }
+}
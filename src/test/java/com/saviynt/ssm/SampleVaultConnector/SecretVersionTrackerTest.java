@@ -0,0 +1,160 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for SecretVersionTracker.
+ */
+public class SecretVersionTrackerTest extends TestCase
+{
+    private static VaultConnectionSettings settings(String batchSize)
+    {
+        return settings(batchSize, null);
+    }
+
+    /**
+     * @param pollIntervalSeconds the CHANGE_POLL_INTERVAL_SECONDS of a connection with a KEY_VERSIONS_URL, or null for none
+     */
+    private static VaultConnectionSettings settings(String batchSize, String pollIntervalSeconds)
+    {
+        return StubVaultServer.settings(VaultGateway.BATCH_SIZE, batchSize,
+                SecretVersionTracker.KEY_VERSIONS_URL, pollIntervalSeconds == null ? null : "https://sampleVault/versions",
+                SecretVersionTracker.CHANGE_POLL_INTERVAL_SECONDS, pollIntervalSeconds);
+    }
+
+    public void testChangedAndDeletedKeysAreInvalidatedInBatches()
+    {
+        Map<String, String> current = new HashMap<>();
+        List<List<String>> batches = new CopyOnWriteArrayList<>();
+        List<String> invalidated = new CopyOnWriteArrayList<>();
+        SecretVersionTracker tracker = new SecretVersionTracker((settings, keyNames) -> {
+            batches.add(new ArrayList<>(keyNames));
+            Map<String, String> versions = new HashMap<>();
+            keyNames.forEach(keyName -> {
+                if (current.containsKey(keyName)) {
+                    versions.put(keyName, current.get(keyName));
+                }
+            });
+            return CompletableFuture.completedFuture(versions);
+        }, (settings, keyName) -> invalidated.add(keyName));
+        VaultConnectionSettings settings = settings("2");
+        for (int i = 0; i < 5; i++) {
+            long generation = tracker.readStarted(settings, "key" + i);
+            assertTrue(tracker.readCompleted(settings, "key" + i, "1", generation));
+            current.put("key" + i, "1");
+        }
+        current.put("key1", "2");
+        current.remove("key3");
+
+        assertEquals(Integer.valueOf(2), tracker.poll(settings).join());
+        assertEquals(3, batches.size());
+        for (List<String> batch : batches) {
+            assertTrue(batch.size() <= 2);
+        }
+        Collections.sort(invalidated);
+        assertEquals(List.of("key1", "key3"), invalidated);
+
+        //Changes are reported once: the invalidated keys are polled again only once read again
+        assertEquals(Integer.valueOf(0), tracker.poll(settings).join());
+        assertEquals(3, tracker.gauges().get("versions.tracked").intValue());
+        assertEquals(2, tracker.gauges().get("versions.changes").intValue());
+    }
+
+    public void testReadRacingAnInvalidationIsNotCached()
+    {
+        SecretVersionTracker tracker = new SecretVersionTracker(
+                (settings, keyNames) -> CompletableFuture.completedFuture(Collections.emptyMap()), (settings, keyName) -> { });
+        VaultConnectionSettings settings = settings("50");
+        long generation = tracker.readStarted(settings, "abcd215");
+        tracker.invalidate(settings, "abcd215");
+        assertFalse(tracker.readCompleted(settings, "abcd215", "1", generation));
+        assertTrue(tracker.readCompleted(settings, "abcd215", "2", tracker.readStarted(settings, "abcd215")));
+
+        //A read started while a write is in flight can fetch the old value and complete after the write
+        tracker.invalidate(settings, "abcd215");
+        long duringWrite = tracker.readStarted(settings, "abcd215");
+        tracker.writeCompleted(settings, "abcd215", "3");
+        assertFalse(tracker.readCompleted(settings, "abcd215", "2", duringWrite));
+        assertEquals(1, tracker.gauges().get("versions.tracked").intValue());
+    }
+
+    public void testConnectionsWithDifferentPollSettingsKeepPolling() throws Exception
+    {
+        List<String> polledThrough = new CopyOnWriteArrayList<>();
+        SecretVersionTracker tracker = new SecretVersionTracker((settings, keyNames) -> {
+            polledThrough.add(settings.attribute(SecretVersionTracker.KEY_VERSIONS_URL));
+            return CompletableFuture.completedFuture(Collections.singletonMap("abcd215", "1"));
+        }, (settings, keyName) -> { });
+        //Connections of one vault account and KEY_URL polling every second, every two seconds, and not at all
+        List<VaultConnectionSettings> connections = List.of(settings("50", "1"), settings("50", "2"), settings("50"));
+        assertTrue(tracker.readCompleted(connections.get(0), "abcd215", "1", tracker.readStarted(connections.get(0), "abcd215")));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        for (int i = 0; polledThrough.isEmpty() && System.nanoTime() < deadline; i++) {
+            tracker.readStarted(connections.get(i % connections.size()), "abcd215");
+            Thread.sleep(100);
+        }
+        assertFalse(polledThrough.isEmpty());
+        assertEquals("https://sampleVault/versions", polledThrough.get(0));
+    }
+
+    public void testRotationInTheVaultInvalidatesTheCachedSecret() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            SampleVaultConnector connector = new SampleVaultConnector();
+            vault.putKey("abcd215", "password@1234");
+            Map<String, Object> vaultConfigData = StubVaultServer.vaultConfigData(Collections.singletonMap("PASSWORD", "abcd215"));
+            Map<String, Object> data = vault.data(Collections.singletonMap("PASSWORD", null));
+            Map<String, Object> attributes = (Map<String, Object>) data.get("vaultConnectionAtributes");
+            attributes.put(SecretCache.SECRET_CACHE_MAX_ENTRIES, "10");
+            attributes.put(SecretCache.SECRET_CACHE_TTL_SECONDS, "36000");
+            attributes.put(SecretVersionTracker.KEY_VERSIONS_URL, vault.keyVersionsUrl());
+            attributes.put(SecretVersionTracker.CHANGE_POLL_INTERVAL_SECONDS, "1");
+            assertEquals("password@1234", ((Map) connector.getSecret(vaultConfigData, data).get("encryptedConnAttr")).get("PASSWORD"));
+
+            vault.putKey("abcd215", "rotated@5678");
+            String password = null;
+            for (int i = 0; i < 50 && !"rotated@5678".equals(password); i++) {
+                Thread.sleep(100);
+                password = (String) ((Map) connector.getSecret(vaultConfigData, data).get("encryptedConnAttr")).get("PASSWORD");
+            }
+            assertEquals("rotated@5678", password);
+        }
+    }
+
+    public void testRotationOfKeysReadInBatchesIsSeen() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            SampleVaultConnector connector = new SampleVaultConnector();
+            vault.putKey("batched", "password@1234");
+            Map<String, Object> data = vault.data(Collections.singletonMap("PASSWORD", null));
+            Map<String, Object> attributes = (Map<String, Object>) data.get("vaultConnectionAtributes");
+            attributes.put(VaultGateway.BATCH_KEY_URL, vault.batchKeyUrl());
+            attributes.put(SecretCache.SECRET_CACHE_MAX_ENTRIES, "10");
+            attributes.put(SecretCache.SECRET_CACHE_TTL_SECONDS, "36000");
+            attributes.put(SecretVersionTracker.KEY_VERSIONS_URL, vault.keyVersionsUrl());
+            attributes.put(SecretVersionTracker.CHANGE_POLL_INTERVAL_SECONDS, "1");
+            Map<String, Object> request = new HashMap<>();
+            request.put("vaultConfigData", StubVaultServer.vaultConfigData(Collections.singletonMap("PASSWORD", "batched")));
+            request.put("data", data);
+            List<Map<String, Object>> requests = Collections.singletonList(request);
+            assertEquals("password@1234", ((Map) connector.getSecrets(requests).get(0).get("encryptedConnAttr")).get("PASSWORD"));
+
+            vault.putKey("batched", "rotated@5678");
+            String password = null;
+            for (int i = 0; i < 50 && !"rotated@5678".equals(password); i++) {
+                Thread.sleep(100);
+                password = (String) ((Map) connector.getSecrets(requests).get(0).get("encryptedConnAttr")).get("PASSWORD");
+            }
+            assertEquals("rotated@5678", password);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import com.saviynt.ssm.abstractConnector.exceptions.ConnectorException;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for SingleFlight.
+ */
+public class SingleFlightTest extends TestCase
+{
+    private static final int WAITERS = 7;
+
+    /**
+     * Starts a caller that blocks inside the load, then WAITERS callers for the same key, and releases
+     * the load once all of them wait for it.
+     *
+     * @return what each caller got: the value or the exception
+     */
+    private AtomicReferenceArray<Object> runConcurrently(AtomicInteger loads, RuntimeException failure) throws Exception
+    {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReferenceArray<Object> outcomes = new AtomicReferenceArray<>(WAITERS + 1);
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i <= WAITERS; i++) {
+            int caller = i;
+            callers.add(new Thread(() -> {
+                try {
+                    outcomes.set(caller, singleFlight.execute("PASSWORD", () -> {
+                        loads.incrementAndGet();
+                        loading.countDown();
+                        try {
+                            release.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        if (failure != null) {
+                            throw failure;
+                        }
+                        return "password@1234";
+                    }));
+                } catch (RuntimeException e) {
+                    outcomes.set(caller, e);
+                }
+            }));
+        }
+        callers.get(0).start();
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        for (Thread waiter : callers.subList(1, callers.size())) {
+            waiter.start();
+        }
+        for (Thread waiter : callers.subList(1, callers.size())) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (waiter.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+        release.countDown();
+        for (Thread caller : callers) {
+            caller.join(5000);
+        }
+        return outcomes;
+    }
+
+    public void testConcurrentCallersShareOneLoad() throws Exception
+    {
+        AtomicInteger loads = new AtomicInteger();
+        AtomicReferenceArray<Object> outcomes = runConcurrently(loads, null);
+        assertEquals(1, loads.get());
+        for (int i = 0; i < outcomes.length(); i++) {
+            assertEquals("password@1234", outcomes.get(i));
+        }
+    }
+
+    public void testFailureIsSharedWithWaiters() throws Exception
+    {
+        AtomicInteger loads = new AtomicInteger();
+        ConnectorException failure = new ConnectorException("vault unavailable");
+        AtomicReferenceArray<Object> outcomes = runConcurrently(loads, failure);
+        assertEquals(1, loads.get());
+        for (int i = 0; i < outcomes.length(); i++) {
+            assertSame(failure, outcomes.get(i));
+        }
+    }
+}
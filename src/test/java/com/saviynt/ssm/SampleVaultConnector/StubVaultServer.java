@@ -0,0 +1,462 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for the sample vault described in the getSecret() and setSecret() Javadoc,
+ * implementing the AUTH_URL, ACCOUNT_URL, KEY_URL, BATCH_KEY_URL and KEY_VERSIONS_URL endpoints of SampleVaultClient
+ * on localhost. Every key has a version, incremented each time its value is written, which KEY_URL reads also return
+ * as ETag and honor in If-None-Match. Bodies above COMPRESSION_THRESHOLD_BYTES are gzipped for clients accepting it.
+ * Replicas sharing the keys and
+ * sessions of a vault, each with its own faults, are created with replica().
+ * Faults can be injected into every endpoint while it runs: added latency, a rate of HTTP 500 answers
+ * and throttling with HTTP 429 and Retry-After above a number of requests per second.
+ */
+public class StubVaultServer implements AutoCloseable
+{
+    public static final String USERNAME = "abcd@xyz.com";
+    public static final String PASSWORD = "password@vault";
+
+    /** Smallest body sent gzipped to clients accepting it. */
+    public static final int COMPRESSION_THRESHOLD_BYTES = 1024;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    static {
+        //Without TCP_NODELAY small responses wait for the client's delayed ACK, adding ~40 ms to every call
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, String> keys;
+    private final Map<String, Long> versions;
+    private final AtomicLong lastVersion;
+    private final Set<String> tokens;
+    private final ConcurrentMap<Integer, LongAdder> responses = new ConcurrentHashMap<>();
+    private final LongAdder compressedResponses = new LongAdder();
+
+    private volatile long latencyMillis;
+    private volatile long latencyJitterMillis;
+    private volatile double errorRate;
+    private volatile int maxRequestsPerSecond;
+    private volatile long retryAfterSeconds;
+
+    /** Requests counted in the current one second throttling window. */
+    private long windowStart;
+    private int windowRequests;
+
+    public StubVaultServer() throws IOException
+    {
+        this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new AtomicLong(), ConcurrentHashMap.newKeySet());
+    }
+
+    private StubVaultServer(Map<String, String> keys, Map<String, Long> versions, AtomicLong lastVersion, Set<String> tokens) throws IOException
+    {
+        this.keys = keys;
+        this.versions = versions;
+        this.lastVersion = lastVersion;
+        this.tokens = tokens;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/session/auth", withFaults(this::auth));
+        server.createContext("/select_account", withFaults(this::selectAccount));
+        server.createContext("/keys/", withFaults(this::key));
+        server.createContext("/batch", withFaults(this::batch));
+        server.createContext("/versions", withFaults(this::versions));
+        server.start();
+    }
+
+    /**
+     * @return a new server on another port serving the same keys and accepting the same tokens, as a replica of this vault
+     */
+    public StubVaultServer replica() throws IOException
+    {
+        return new StubVaultServer(keys, versions, lastVersion, tokens);
+    }
+
+    public String baseUrl()
+    {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return the vaultConnectionAtributes pointing at this vault
+     */
+    public Map<String, Object> connectionAttributes()
+    {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("AUTH_URL", baseUrl() + "/session/auth");
+        attributes.put("username", USERNAME);
+        attributes.put("password", PASSWORD);
+        attributes.put("ACCOUNT_URL", baseUrl() + "/select_account");
+        attributes.put("KEY_URL", baseUrl() + "/keys");
+        return attributes;
+    }
+
+    /**
+     * @return the URL of the batch endpoint, to be set as BATCH_KEY_URL
+     */
+    public String batchKeyUrl()
+    {
+        return baseUrl() + "/batch";
+    }
+
+    /**
+     * @return the URL of the version listing endpoint, to be set as KEY_VERSIONS_URL
+     */
+    public String keyVersionsUrl()
+    {
+        return baseUrl() + "/versions";
+    }
+
+    /**
+     * @return the data parameter of getSecret() / setSecret() for this vault and the given encryptedConnAttr
+     */
+    public Map<String, Object> data(Map<String, String> encryptedConnAttr)
+    {
+        Map<String, Object> data = new HashMap<>();
+        data.put("vaultConnectionAtributes", connectionAttributes());
+        data.put("encryptedConnAttr", encryptedConnAttr);
+        return data;
+    }
+
+    /**
+     * @param pairs attribute names and values added to, or replacing, the login attributes; a null value removes the attribute
+     * @return the vaultConnectionAtributes of a connection to https://sampleVault, for tests not calling a vault
+     */
+    public static Map<String, Object> attributes(String... pairs)
+    {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("AUTH_URL", "https://sampleVault/session/auth");
+        attributes.put("username", "abcd@xyz.com");
+        attributes.put("password", "password@vault");
+        attributes.put("ACCOUNT_URL", "https://sampleVault/select_account");
+        attributes.put("KEY_URL", "https://sampleVault/keys");
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (pairs[i + 1] == null) {
+                attributes.remove(pairs[i]);
+            } else {
+                attributes.put(pairs[i], pairs[i + 1]);
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * @return the settings of a connection to https://sampleVault with the attributes of attributes(pairs)
+     */
+    public static VaultConnectionSettings settings(String... pairs)
+    {
+        return VaultConnectionSettings.from(Collections.singletonMap("vaultConnectionAtributes", attributes(pairs)));
+    }
+
+    /**
+     * @return the vaultConfigData parameter of getSecret() / setSecret() mapping every attribute to its keyName
+     */
+    public static Map<String, Object> vaultConfigData(Map<String, String> keyNames)
+    {
+        Map<String, Object> keyMapping = new HashMap<>();
+        keyNames.forEach((attribute, keyName) -> {
+            Map<String, Object> mapping = new HashMap<>();
+            mapping.put("keyName", keyName);
+            mapping.put("encryptionmechanism", "None");
+            keyMapping.put(attribute, mapping);
+        });
+        Map<String, Object> vaultConfigData = new HashMap<>();
+        vaultConfigData.put("keyMapping", keyMapping);
+        return vaultConfigData;
+    }
+
+    /**
+     * Stores value under keyName, as a rotation done outside the connector would.
+     */
+    public void putKey(String keyName, String value)
+    {
+        store(keyName, value);
+    }
+
+    public void removeKey(String keyName)
+    {
+        synchronized (keys) {
+            keys.remove(keyName);
+            versions.remove(keyName);
+        }
+    }
+
+    public String getKey(String keyName)
+    {
+        return keys.get(keyName);
+    }
+
+    /**
+     * Delays every answer by latencyMillis plus a random jitter of up to jitterMillis.
+     */
+    public void setLatency(long latencyMillis, long jitterMillis)
+    {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = jitterMillis;
+    }
+
+    /**
+     * Answers the given fraction of the requests, between 0 and 1, with HTTP 500.
+     */
+    public void setErrorRate(double errorRate)
+    {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Answers the requests above maxRequestsPerSecond (0 for no limit) with HTTP 429 and Retry-After: retryAfterSeconds.
+     */
+    public void setThrottling(int maxRequestsPerSecond, long retryAfterSeconds)
+    {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return the number of answers sent so far by HTTP status
+     */
+    public Map<Integer, Long> responseCounts()
+    {
+        Map<Integer, Long> counts = new TreeMap<>();
+        responses.forEach((status, count) -> counts.put(status, count.sum()));
+        return counts;
+    }
+
+    /**
+     * @return the number of answers sent gzipped so far
+     */
+    public long compressedResponses()
+    {
+        return compressedResponses.sum();
+    }
+
+    /**
+     * Rejects every token issued so far, as a vault does when sessions are revoked.
+     */
+    public void revokeTokens()
+    {
+        tokens.clear();
+    }
+
+    @Override
+    public void close()
+    {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private HttpHandler withFaults(HttpHandler handler)
+    {
+        return exchange -> {
+            long delay = latencyMillis + (latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1) : 0);
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (throttled()) {
+                body(exchange);
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+                respond(exchange, 429, null);
+            } else if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                body(exchange);
+                respond(exchange, 500, null);
+            } else {
+                handler.handle(exchange);
+            }
+        };
+    }
+
+    private synchronized boolean throttled()
+    {
+        int limit = maxRequestsPerSecond;
+        if (limit <= 0) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (now - windowStart >= 1_000_000_000L) {
+            windowStart = now;
+            windowRequests = 0;
+        }
+        return ++windowRequests > limit;
+    }
+
+    private void auth(HttpExchange exchange) throws IOException
+    {
+        JsonNode credentials = mapper.readTree(body(exchange));
+        if (!USERNAME.equals(credentials.path("username").asText()) || !PASSWORD.equals(credentials.path("password").asText())) {
+            respond(exchange, 401, null);
+            return;
+        }
+        String token = UUID.randomUUID().toString();
+        tokens.add(token);
+        Map<String, Object> response = new HashMap<>();
+        response.put("token", token);
+        response.put("expiresIn", 300);
+        respond(exchange, 200, response);
+    }
+
+    private void selectAccount(HttpExchange exchange) throws IOException
+    {
+        body(exchange);
+        respond(exchange, authorized(exchange) ? 200 : 401, null);
+    }
+
+    private void key(HttpExchange exchange) throws IOException
+    {
+        String body = body(exchange);
+        if (!authorized(exchange)) {
+            respond(exchange, 401, null);
+            return;
+        }
+        String keyName = URLDecoder.decode(exchange.getRequestURI().getRawPath().substring("/keys/".length()), StandardCharsets.UTF_8);
+        if ("PUT".equals(exchange.getRequestMethod())) {
+            long version = store(keyName, mapper.readTree(body).path("value").asText());
+            respond(exchange, 200, Map.of("version", String.valueOf(version)));
+            return;
+        }
+        String value;
+        Long version;
+        synchronized (keys) {
+            value = keys.get(keyName);
+            version = versions.get(keyName);
+        }
+        if (value == null) {
+            respond(exchange, 404, null);
+            return;
+        }
+        String etag = "\"" + version + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            respond(exchange, 304, null);
+            return;
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("name", keyName);
+        response.put("value", value);
+        response.put("version", String.valueOf(version));
+        respond(exchange, 200, response);
+    }
+
+    private void batch(HttpExchange exchange) throws IOException
+    {
+        JsonNode request = mapper.readTree(body(exchange));
+        if (!authorized(exchange)) {
+            respond(exchange, 401, null);
+            return;
+        }
+        if ("PUT".equals(exchange.getRequestMethod())) {
+            request.path("values").fields().forEachRemaining(value -> store(value.getKey(), value.getValue().asText()));
+            respond(exchange, 204, null);
+            return;
+        }
+        Map<String, String> values = new HashMap<>();
+        request.path("keys").forEach(keyName -> {
+            if (keys.containsKey(keyName.asText())) {
+                values.put(keyName.asText(), keys.get(keyName.asText()));
+            }
+        });
+        Map<String, Object> response = new HashMap<>();
+        response.put("values", values);
+        respond(exchange, 200, response);
+    }
+
+    private void versions(HttpExchange exchange) throws IOException
+    {
+        JsonNode request = mapper.readTree(body(exchange));
+        if (!authorized(exchange)) {
+            respond(exchange, 401, null);
+            return;
+        }
+        Map<String, String> found = new HashMap<>();
+        request.path("keys").forEach(keyName -> {
+            Long version = versions.get(keyName.asText());
+            if (version != null) {
+                found.put(keyName.asText(), String.valueOf(version));
+            }
+        });
+        Map<String, Object> response = new HashMap<>();
+        response.put("versions", found);
+        respond(exchange, 200, response);
+    }
+
+    private long store(String keyName, String value)
+    {
+        synchronized (keys) {
+            long version = lastVersion.incrementAndGet();
+            keys.put(keyName, value);
+            versions.put(keyName, version);
+            return version;
+        }
+    }
+
+    private boolean authorized(HttpExchange exchange)
+    {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        return authorization != null && authorization.startsWith("Bearer ") && tokens.contains(authorization.substring(7));
+    }
+
+    private static String body(HttpExchange exchange) throws IOException
+    {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException
+    {
+        responses.computeIfAbsent(status, k -> new LongAdder()).increment();
+        byte[] bytes = body == null ? new byte[0] : mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (bytes.length >= COMPRESSION_THRESHOLD_BYTES && accepted != null && accepted.contains("gzip")) {
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+                out.write(bytes);
+            }
+            bytes = gzipped.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            compressedResponses.increment();
+        }
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+        exchange.close();
+    }
+}
@@ -0,0 +1,354 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import com.saviynt.ssm.abstractConnector.exceptions.ConnectorException;
+import com.saviynt.ssm.abstractConnector.exceptions.MissingKeyException;
+import junit.framework.TestCase;
+
+/**
+ * Round trips of SampleVaultConnector against the in-process stub vault.
+ */
+public class StubVaultServerTest extends TestCase
+{
+    public void testSetThenGetSecret() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            SampleVaultConnector connector = new SampleVaultConnector();
+            Map<String, Object> vaultConfigData = StubVaultServer.vaultConfigData(Collections.singletonMap("PASSWORD", "MyADConnector~#~abcd215"));
+
+            Map set = connector.setSecret(vaultConfigData, vault.data(Collections.singletonMap("PASSWORD", "password@1234")));
+            assertEquals("success", set.get("status"));
+            assertEquals("password@1234", vault.getKey("MyADConnector~#~abcd215"));
+
+            Map<String, String> requested = new HashMap<>();
+            requested.put("PASSWORD", null);
+            Map get = connector.getSecret(vaultConfigData, vault.data(requested));
+            assertEquals("success", get.get("status"));
+            assertEquals("password@1234", ((Map) get.get("encryptedConnAttr")).get("PASSWORD"));
+        }
+    }
+
+    public void testAsyncSetThenGetSecret() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            SampleVaultConnector connector = new SampleVaultConnector();
+            Map<String, String> keyNames = new HashMap<>();
+            Map<String, String> values = new HashMap<>();
+            Map<String, String> requested = new HashMap<>();
+            for (int i = 0; i < 6; i++) {
+                keyNames.put("ATTRIBUTE" + i, "async~#~key" + i);
+                values.put("ATTRIBUTE" + i, "value-" + i);
+                requested.put("ATTRIBUTE" + i, null);
+            }
+            Map<String, Object> vaultConfigData = StubVaultServer.vaultConfigData(keyNames);
+
+            assertEquals("success", connector.setSecretAsync(vaultConfigData, vault.data(values)).get().get("status"));
+            Map get = connector.getSecretAsync(vaultConfigData, vault.data(requested)).get();
+            assertEquals(values, get.get("encryptedConnAttr"));
+
+            try {
+                connector.getSecretAsync(StubVaultServer.vaultConfigData(Collections.singletonMap("PASSWORD", "missing")),
+                        vault.data(Collections.singletonMap("PASSWORD", null))).join();
+                fail("MissingKeyException expected");
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof MissingKeyException);
+            }
+        }
+    }
+
+    public void testTestAnswersFromCachedHealth() throws Exception
+    {
+        SampleVaultConnector connector = new SampleVaultConnector();
+        Map<String, Object> data;
+        String account;
+        try (StubVaultServer vault = new StubVaultServer()) {
+            data = vault.data(Collections.emptyMap());
+            ((Map<String, Object>) data.get("vaultConnectionAtributes")).put(VaultHealthProber.HEALTH_PROBE_INTERVAL_SECONDS, "30");
+            account = StubVaultServer.USERNAME + "@" + vault.baseUrl() + "/select_account";
+            Map first = connector.test(null, data);
+            assertEquals(Boolean.TRUE, first.get("status"));
+            assertEquals(Boolean.TRUE, ((Map) first.get("health")).get("live"));
+            //AUTH_URL and ACCOUNT_URL, once
+            assertEquals(2L, (long) vault.responseCounts().get(200));
+            connector.test(null, data);
+            assertEquals(2L, (long) vault.responseCounts().get(200));
+        }
+        //The vault is gone: the cached health still answers, a live probe does not
+        Map cached = connector.test(null, data);
+        assertEquals(Boolean.TRUE, cached.get("status"));
+        assertEquals(Boolean.FALSE, ((Map) cached.get("health")).get("live"));
+        try {
+            connector.test(null, data, true);
+            fail("VaultServerException expected");
+        } catch (VaultServerException e) {
+            assertEquals("DOWN", connector.vaultHealth().get(account).get("status"));
+        }
+    }
+
+    public void testCallsFailFastWhileVaultIsDown() throws Exception
+    {
+        SampleVaultConnector connector = new SampleVaultConnector();
+        Map<String, Object> vaultConfigData = StubVaultServer.vaultConfigData(Collections.singletonMap("PASSWORD", "abcd215"));
+        try (StubVaultServer vault = new StubVaultServer()) {
+            Map<String, Object> data = vault.data(Collections.singletonMap("PASSWORD", null));
+            Map<String, Object> attributes = (Map<String, Object>) data.get("vaultConnectionAtributes");
+            attributes.put(VaultHealthProber.HEALTH_PROBE_INTERVAL_SECONDS, "30");
+            attributes.put(VaultResilience.RETRY_MAX_ATTEMPTS, "1");
+            vault.setErrorRate(1.0);
+            for (int i = 0; i < 2; i++) {
+                try {
+                    connector.test(vaultConfigData, data, true);
+                    fail("ConnectorException expected");
+                } catch (ConnectorException e) {
+                    // probe failed
+                }
+            }
+
+            //Neither the call nor the requests of the vault account in a bulk call reach the vault
+            Map<Integer, Long> responses = vault.responseCounts();
+            try {
+                connector.getSecret(vaultConfigData, data);
+                fail("ConnectorException expected");
+            } catch (ConnectorException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("is unavailable"));
+            }
+            Map<String, Object> request = new HashMap<>();
+            request.put("vaultConfigData", vaultConfigData);
+            request.put("data", data);
+            Map get = connector.getSecrets(Collections.singletonList(request)).get(0);
+            assertEquals("failure", get.get("status"));
+            assertTrue((String) get.get("message"), ((String) get.get("message")).contains("is unavailable"));
+            assertEquals(responses, vault.responseCounts());
+        }
+    }
+
+    public void testSharedAccountRecoversWithDifferentProbeIntervals() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            SampleVaultConnector connector = new SampleVaultConnector();
+            String account = StubVaultServer.USERNAME + "@" + vault.baseUrl() + "/select_account";
+            vault.putKey("abcd215", "password@1234");
+            Map<String, Object> vaultConfigData = StubVaultServer.vaultConfigData(Collections.singletonMap("PASSWORD", "abcd215"));
+            //Two connections of the same vault account, probing every second and every two seconds
+            List<Map<String, Object>> connections = new ArrayList<>();
+            for (String interval : new String[] { "1", "2" }) {
+                Map<String, Object> data = vault.data(Collections.singletonMap("PASSWORD", null));
+                Map<String, Object> attributes = (Map<String, Object>) data.get("vaultConnectionAtributes");
+                attributes.put("HEALTH_PROBE_INTERVAL_SECONDS", interval);
+                attributes.put("RETRY_MAX_ATTEMPTS", "1");
+                attributes.put("CIRCUIT_OPEN_SECONDS", "1");
+                connections.add(data);
+            }
+
+            vault.setErrorRate(1.0);
+            for (int i = 0; i < 2; i++) {
+                try {
+                    connector.test(vaultConfigData, connections.get(i), true);
+                    fail("ConnectorException expected");
+                } catch (ConnectorException e) {
+                    // probe failed
+                }
+            }
+            assertEquals("DOWN", connector.vaultHealth().get(account).get("status"));
+
+            //Calls alternating between the connections must not keep postponing the background probe
+            vault.setErrorRate(0);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(8);
+            for (int i = 0; !"UP".equals(connector.vaultHealth().get(account).get("status")) && System.nanoTime() < deadline; i++) {
+                try {
+                    connector.getSecret(vaultConfigData, connections.get(i % 2));
+                } catch (ConnectorException e) {
+                    // failing fast while the vault is down
+                }
+                Thread.sleep(100);
+            }
+            assertEquals("UP", connector.vaultHealth().get(account).get("status"));
+            Map get = connector.getSecret(vaultConfigData, connections.get(0));
+            assertEquals("password@1234", ((Map) get.get("encryptedConnAttr")).get("PASSWORD"));
+        }
+    }
+
+    public void testRevokedSessionIsRenewed() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            SampleVaultConnector connector = new SampleVaultConnector();
+            vault.putKey("abcd215", "password@1234");
+            Map<String, Object> vaultConfigData = StubVaultServer.vaultConfigData(Collections.singletonMap("PASSWORD", "abcd215"));
+            Map<String, String> requested = new HashMap<>();
+            requested.put("PASSWORD", null);
+
+            connector.getSecret(vaultConfigData, vault.data(requested));
+            vault.revokeTokens();
+            Map get = connector.getSecret(vaultConfigData, vault.data(requested));
+            assertEquals("password@1234", ((Map) get.get("encryptedConnAttr")).get("PASSWORD"));
+        }
+    }
+
+    public void testMissingKey() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            Map<String, String> requested = new HashMap<>();
+            requested.put("PASSWORD", null);
+            try {
+                new SampleVaultConnector().getSecret(StubVaultServer.vaultConfigData(Collections.singletonMap("PASSWORD", "missing")), vault.data(requested));
+                fail("MissingKeyException expected");
+            } catch (MissingKeyException e) {
+                assertTrue(e.getMessage().contains("missing"));
+            }
+        }
+    }
+
+    public void testRetryAfterIsReadAsSecondsOrHttpDate()
+    {
+        long now = 1445412480000L;
+        assertEquals(120000, SampleVaultClient.retryAfterMillis(" 120", now));
+        assertEquals(30000, SampleVaultClient.retryAfterMillis("Wed, 21 Oct 2015 07:28:30 GMT", now));
+        assertEquals(0, SampleVaultClient.retryAfterMillis("Wed, 21 Oct 2015 07:27:00 GMT", now));
+        assertEquals(0, SampleVaultClient.retryAfterMillis("soon", now));
+    }
+
+    public void testThrottledReadIsRetriedAfterRetryAfter() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            SampleVaultConnector connector = new SampleVaultConnector();
+            vault.putKey("abcd215", "password@1234");
+            Map<String, Object> vaultConfigData = StubVaultServer.vaultConfigData(Collections.singletonMap("PASSWORD", "abcd215"));
+            Map<String, String> requested = new HashMap<>();
+            requested.put("PASSWORD", null);
+            connector.getSecret(vaultConfigData, vault.data(requested));
+
+            vault.setThrottling(1, 1);
+            long start = System.nanoTime();
+            for (int i = 0; i < 2; i++) {
+                Map get = connector.getSecret(vaultConfigData, vault.data(requested));
+                assertEquals("password@1234", ((Map) get.get("encryptedConnAttr")).get("PASSWORD"));
+            }
+            assertTrue(vault.responseCounts().get(429) >= 1);
+            assertTrue(System.nanoTime() - start >= 900_000_000L);
+        }
+    }
+
+    public void testBatchReadThroughBatchKeyUrl() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            vault.putKey("batch1", "value1");
+            vault.putKey("batch2", "value2");
+            Map<String, String> requested = new HashMap<>();
+            requested.put("PASSWORD", null);
+            List<Map<String, Object>> requests = new ArrayList<>();
+            for (String keyName : new String[] { "batch1", "batch2", "missing" }) {
+                Map<String, Object> data = vault.data(requested);
+                ((Map<String, Object>) data.get("vaultConnectionAtributes")).put("BATCH_KEY_URL", vault.batchKeyUrl());
+                Map<String, Object> request = new HashMap<>();
+                request.put("vaultConfigData", StubVaultServer.vaultConfigData(Collections.singletonMap("PASSWORD", keyName)));
+                request.put("data", data);
+                requests.add(request);
+            }
+
+            SampleVaultConnector connector = new SampleVaultConnector();
+            long errors = getSecretsErrors(connector);
+            List<Map> results = connector.getSecrets(requests);
+            assertEquals("value1", ((Map) results.get(0).get("encryptedConnAttr")).get("PASSWORD"));
+            assertEquals("value2", ((Map) results.get(1).get("encryptedConnAttr")).get("PASSWORD"));
+            assertEquals("failure", results.get(2).get("status"));
+            //A call with a failed request counts as an error of getSecrets
+            assertEquals(errors + 1, getSecretsErrors(connector));
+        }
+    }
+
+    private static long getSecretsErrors(SampleVaultConnector connector)
+    {
+        Map operation = (Map) connector.metricsSnapshot().get("operation:getSecrets");
+        return operation == null ? 0 : (Long) operation.get("error");
+    }
+
+    public void testExpiredSecretIsRevalidatedAndLargeResponsesAreCompressed() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            SampleVaultConnector connector = new SampleVaultConnector();
+            StringBuilder chain = new StringBuilder();
+            while (chain.length() < 4 * StubVaultServer.COMPRESSION_THRESHOLD_BYTES) {
+                chain.append("-----BEGIN CERTIFICATE-----MIIDdzCCAl+gAwIBAgIEAgAAuTANBgkqhkiG9w0BAQUFADBa-----END CERTIFICATE-----");
+            }
+            vault.putKey("certificate", chain.toString());
+            Map<String, Object> vaultConfigData = StubVaultServer.vaultConfigData(Collections.singletonMap("CERTIFICATE", "certificate"));
+            Map<String, Object> data = vault.data(Collections.singletonMap("CERTIFICATE", null));
+            Map<String, Object> attributes = (Map<String, Object>) data.get("vaultConnectionAtributes");
+            attributes.put("SECRET_CACHE_MAX_ENTRIES", "10");
+            attributes.put("SECRET_CACHE_TTL_SECONDS", "1");
+
+            assertEquals(chain.toString(), ((Map) connector.getSecret(vaultConfigData, data).get("encryptedConnAttr")).get("CERTIFICATE"));
+            assertEquals(1, vault.compressedResponses());
+
+            Thread.sleep(1100);
+            assertEquals(chain.toString(), ((Map) connector.getSecret(vaultConfigData, data).get("encryptedConnAttr")).get("CERTIFICATE"));
+            assertEquals(Long.valueOf(1), vault.responseCounts().get(304));
+            assertEquals(1, vault.compressedResponses());
+
+            vault.putKey("certificate", "rotated");
+            Thread.sleep(1100);
+            assertEquals("rotated", ((Map) connector.getSecret(vaultConfigData, data).get("encryptedConnAttr")).get("CERTIFICATE"));
+            assertEquals(Long.valueOf(1), vault.responseCounts().get(304));
+        }
+    }
+
+    public void testTestWarmsUpSessionAndHotKeys() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            SampleVaultConnector connector = new SampleVaultConnector();
+            vault.putKey("WarmConnector~#~abcd215", "password@1234");
+            Map<String, Object> vaultConfigData = StubVaultServer.vaultConfigData(Collections.singletonMap("PASSWORD", "WarmConnector~#~abcd215"));
+            Map<String, Object> data = vault.data(Collections.singletonMap("PASSWORD", null));
+            Map<String, Object> attributes = (Map<String, Object>) data.get("vaultConnectionAtributes");
+            attributes.put("WARMUP_ENABLED", "true");
+            attributes.put("WARMUP_KEY_NAMES", "WarmConnector~#~abcd215, WarmConnector~#~missing");
+            attributes.put("SECRET_CACHE_MAX_ENTRIES", "10");
+            //Declared but unset optional endpoints come as empty strings
+            attributes.put("BATCH_KEY_URL", "");
+            long completed = warmups(connector);
+
+            connector.test(null, data);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (warmups(connector) == completed && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(completed + 1, warmups(connector));
+
+            //The session and the hot key are cached: getSecret() does not call the vault
+            vault.setErrorRate(1.0);
+            Map get = connector.getSecret(vaultConfigData, data);
+            assertEquals("password@1234", ((Map) get.get("encryptedConnAttr")).get("PASSWORD"));
+        }
+    }
+
+    public void testFailedWarmUpDoesNotFailItsCaller() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            SampleVaultClient client = new SampleVaultClient(new VaultTransport(), new VaultResilience(), new VaultConcurrencyLimiter(),
+                    new VaultReplicaRouter(), new VaultMetrics());
+            VaultWarmup warmup = new VaultWarmup(client, new VaultGateway(client));
+            Map<String, Object> attributes = vault.connectionAttributes();
+            attributes.put(VaultWarmup.WARMUP_ENABLED, "true");
+            attributes.put(VaultResilience.RETRY_MAX_ATTEMPTS, "1");
+            VaultConnectionSettings settings = VaultConnectionSettings.from(Collections.singletonMap("vaultConnectionAtributes", attributes));
+            vault.setErrorRate(1.0);
+
+            assertNull(warmup.warmUp(settings).get(10, TimeUnit.SECONDS));
+            assertEquals(Long.valueOf(1), warmup.gauges().get("warmup.failed"));
+            //The failed warm-up runs again on the next call
+            assertNull(warmup.warmUp(settings).get(10, TimeUnit.SECONDS));
+            assertEquals(Long.valueOf(2), warmup.gauges().get("warmup.failed"));
+        }
+    }
+
+    private static long warmups(SampleVaultConnector connector)
+    {
+        return ((Map<String, Long>) connector.metricsSnapshot().get("gauges")).get("warmup.completed");
+    }
+}
@@ -0,0 +1,101 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for VaultBulkheads.
+ */
+public class VaultBulkheadsTest extends TestCase
+{
+    private static final long WAIT = TimeUnit.SECONDS.toNanos(5);
+
+    private static VaultConnectionSettings settings(int connectionConcurrent, int connectionQueued)
+    {
+        return settings(connectionConcurrent, connectionQueued, 128);
+    }
+
+    private static VaultConnectionSettings settings(int connectionConcurrent, int connectionQueued, int accountConcurrent)
+    {
+        return StubVaultServer.settings(VaultBulkheads.ACCOUNT_MAX_CONCURRENT, String.valueOf(accountConcurrent),
+                VaultBulkheads.ACCOUNT_MAX_QUEUED, "0",
+                VaultBulkheads.CONNECTION_MAX_CONCURRENT, String.valueOf(connectionConcurrent),
+                VaultBulkheads.CONNECTION_MAX_QUEUED, String.valueOf(connectionQueued));
+    }
+
+    public void testSaturatedConnectionIsRejectedAtOnceWhileOthersProceed()
+    {
+        VaultBulkheads bulkheads = new VaultBulkheads();
+        VaultConnectionSettings settings = settings(2, 1);
+        CompletableFuture<String> stuck = new CompletableFuture<>();
+        for (int i = 0; i < 3; i++) {
+            bulkheads.run(settings, "SlowConnector", WAIT, () -> stuck);
+        }
+        long start = System.nanoTime();
+        CompletableFuture<String> rejected = bulkheads.run(settings, "SlowConnector", WAIT, () -> CompletableFuture.completedFuture("not run"));
+        assertTrue(rejected.isCompletedExceptionally());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        try {
+            rejected.join();
+            fail("Expected the call to be rejected");
+        } catch (RuntimeException e) {
+            Throwable cause = Futures.unwrap(e);
+            assertTrue(cause instanceof VaultSaturatedException);
+            assertTrue(cause.getMessage().contains("SlowConnector"));
+        }
+
+        assertEquals("done", bulkheads.run(settings, "MyADConnector", WAIT, () -> CompletableFuture.completedFuture("done")).join());
+
+        Map<String, Object> slow = bulkheads.states().get("connection:SlowConnector");
+        assertEquals(2, slow.get("inFlight"));
+        assertEquals(1, slow.get("queued"));
+        assertEquals(1L, slow.get("rejected"));
+
+        stuck.complete("done");
+        assertEquals(0, bulkheads.states().get("connection:SlowConnector").get("inFlight"));
+        assertEquals(0, bulkheads.states().values().stream().filter(state -> !state.get("inFlight").equals(0)).count());
+    }
+
+    public void testQueuedCallWithoutPermitInTimeIsRejected()
+    {
+        VaultBulkheads bulkheads = new VaultBulkheads();
+        VaultConnectionSettings settings = settings(1, 10);
+        CompletableFuture<String> held = new CompletableFuture<>();
+        bulkheads.run(settings, "MyADConnector", WAIT, () -> held);
+        CompletableFuture<String> queued = bulkheads.run(settings, "MyADConnector", TimeUnit.MILLISECONDS.toNanos(50),
+                () -> CompletableFuture.completedFuture("not run"));
+        try {
+            queued.join();
+            fail("Expected the call to time out in the queue");
+        } catch (RuntimeException e) {
+            assertTrue(Futures.unwrap(e) instanceof VaultSaturatedException);
+        }
+        held.complete("done");
+        assertEquals(0, bulkheads.states().get("connection:MyADConnector").get("inFlight"));
+    }
+
+    public void testAccountBulkheadIsSharedByCallersWithOtherLimits()
+    {
+        VaultBulkheads bulkheads = new VaultBulkheads();
+        CompletableFuture<String> held = new CompletableFuture<>();
+        bulkheads.run(settings(0, 0, 1), null, WAIT, () -> held);
+
+        //Neither larger limits nor no limit at all give a caller permits of its own
+        for (VaultConnectionSettings other : new VaultConnectionSettings[] { settings(0, 0, 8), settings(0, 0, 0) }) {
+            CompletableFuture<String> rejected = bulkheads.run(other, null, WAIT, () -> CompletableFuture.completedFuture("not run"));
+            assertTrue(rejected.isCompletedExceptionally());
+        }
+        try {
+            bulkheads.runBlocking(settings(0, 0, 8), null, WAIT, () -> "not run");
+            fail("Expected the blocking call to be rejected");
+        } catch (VaultSaturatedException e) {
+            assertTrue(e.getMessage().contains("Vault"));
+        }
+
+        held.complete("done");
+        assertEquals("done", bulkheads.runBlocking(settings(0, 0, 8), "MyADConnector", WAIT, () -> "done"));
+        assertEquals(0, bulkheads.states().values().stream().filter(state -> !state.get("inFlight").equals(0)).count());
+    }
+}
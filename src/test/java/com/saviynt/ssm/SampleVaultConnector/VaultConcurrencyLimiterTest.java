@@ -0,0 +1,108 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for VaultConcurrencyLimiter.
+ */
+public class VaultConcurrencyLimiterTest extends TestCase
+{
+    private static VaultConnectionSettings settings(int initial, int max)
+    {
+        return StubVaultServer.settings(VaultConcurrencyLimiter.CONCURRENCY_LIMIT_INITIAL, String.valueOf(initial),
+                VaultConcurrencyLimiter.CONCURRENCY_LIMIT_MAX, String.valueOf(max));
+    }
+
+    private static Map<String, Object> state(VaultConcurrencyLimiter limiter)
+    {
+        return limiter.states().values().iterator().next();
+    }
+
+    public void testRequestsAboveTheLimitWaitInArrivalOrder()
+    {
+        VaultConcurrencyLimiter limiter = new VaultConcurrencyLimiter();
+        VaultConnectionSettings settings = settings(2, 2);
+        long wait = TimeUnit.SECONDS.toNanos(5);
+        List<CompletableFuture<String>> requests = new CopyOnWriteArrayList<>();
+        List<String> started = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String name = "request" + i;
+            limiter.run(settings, wait, () -> {
+                started.add(name);
+                CompletableFuture<String> request = new CompletableFuture<>();
+                requests.add(request);
+                return request;
+            });
+        }
+        assertEquals(List.of("request0", "request1"), started);
+        assertEquals(2, state(limiter).get("queued"));
+
+        requests.get(1).complete("done");
+        assertEquals(List.of("request0", "request1", "request2"), started);
+        requests.get(0).complete("done");
+        assertEquals(List.of("request0", "request1", "request2", "request3"), started);
+        assertEquals(0, state(limiter).get("queued"));
+    }
+
+    public void testRequestWithoutSlotInTimeIsRejected()
+    {
+        VaultConcurrencyLimiter limiter = new VaultConcurrencyLimiter();
+        VaultConnectionSettings settings = settings(1, 1);
+        CompletableFuture<String> held = new CompletableFuture<>();
+        limiter.run(settings, TimeUnit.SECONDS.toNanos(5), () -> held);
+        CompletableFuture<String> rejected = limiter.run(settings, TimeUnit.MILLISECONDS.toNanos(50),
+                () -> CompletableFuture.completedFuture("not sent"));
+        try {
+            rejected.join();
+            fail("Expected the request to be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(Futures.unwrap(e) instanceof VaultSaturatedException);
+        }
+        held.complete("done");
+        assertEquals(0, state(limiter).get("inFlight"));
+    }
+
+    public void testThrottlingHalvesTheLimitAndHoldsRequestsForRetryAfter()
+    {
+        VaultConcurrencyLimiter limiter = new VaultConcurrencyLimiter();
+        VaultConnectionSettings settings = settings(10, 10);
+        CompletableFuture<String> throttled = limiter.run(settings, TimeUnit.SECONDS.toNanos(5),
+                () -> Futures.failed(new VaultServerException("Vault returned HTTP 429", 429, 300, null)));
+        assertTrue(throttled.isCompletedExceptionally());
+        assertEquals(5, state(limiter).get("limit"));
+
+        long start = System.nanoTime();
+        limiter.run(settings, TimeUnit.SECONDS.toNanos(5), () -> CompletableFuture.completedFuture("done")).join();
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+    }
+
+    public void testLimitGrowsWhileInUseUpToTheMaximum()
+    {
+        VaultConcurrencyLimiter limiter = new VaultConcurrencyLimiter();
+        VaultConnectionSettings settings = settings(2, 4);
+        //Sequential requests do not use the limit, which stays where it is
+        for (int i = 0; i < 20; i++) {
+            limiter.run(settings, TimeUnit.SECONDS.toNanos(5), () -> CompletableFuture.completedFuture("done")).join();
+        }
+        assertEquals(2, state(limiter).get("limit"));
+
+        for (int round = 0; round < 20; round++) {
+            List<CompletableFuture<String>> requests = new CopyOnWriteArrayList<>();
+            int limit = (Integer) state(limiter).get("limit");
+            for (int i = 0; i < limit; i++) {
+                limiter.run(settings, TimeUnit.SECONDS.toNanos(5), () -> {
+                    CompletableFuture<String> request = new CompletableFuture<>();
+                    requests.add(request);
+                    return request;
+                });
+            }
+            requests.forEach(request -> request.complete("done"));
+        }
+        assertEquals(4, state(limiter).get("limit"));
+    }
+}
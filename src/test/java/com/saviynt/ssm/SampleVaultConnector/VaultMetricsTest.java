@@ -0,0 +1,65 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import com.saviynt.ssm.abstractConnector.exceptions.OperationTimeoutException;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for VaultMetrics and LatencyHistogram.
+ */
+public class VaultMetricsTest extends TestCase
+{
+    public void testHistogramPercentilesAreWithinBucketPrecision()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long millis = 1; millis <= 1000; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        assertEquals(1000, histogram.count());
+        long p50 = TimeUnit.NANOSECONDS.toMillis(histogram.percentile(50));
+        long p99 = TimeUnit.NANOSECONDS.toMillis(histogram.percentile(99));
+        assertTrue("p50 was " + p50, p50 >= 500 && p50 <= 500 * 1.125);
+        assertTrue("p99 was " + p99, p99 >= 990 && p99 <= 1000);
+    }
+
+    public void testBucketBoundsCoverValues()
+    {
+        for (long value : new long[] { 0, 7, 8, 9, 1000, 123456789, Long.MAX_VALUE / 2 }) {
+            assertTrue(LatencyHistogram.upperBound(LatencyHistogram.index(value)) >= value);
+        }
+    }
+
+    public void testOutcomesAreCountedPerScope()
+    {
+        VaultMetrics metrics = new VaultMetrics();
+        long start = System.nanoTime();
+        metrics.record(VaultMetrics.OPERATION + "getSecret", start, null);
+        metrics.record(VaultMetrics.OPERATION + "getSecret", start, new OperationTimeoutException("slow"));
+        metrics.record(VaultMetrics.OPERATION + "getSecret", start, new RuntimeException("broken"));
+
+        Map<String, Long> counters = metrics.getCounters();
+        assertEquals(Long.valueOf(1), counters.get("operation:getSecret.success"));
+        assertEquals(Long.valueOf(1), counters.get("operation:getSecret.timeout"));
+        assertEquals(Long.valueOf(1), counters.get("operation:getSecret.error"));
+        assertEquals(Double.valueOf(3), metrics.getLatencies().get("operation:getSecret.count"));
+    }
+
+    public void testConnectionNameIsTakenFromKeyNamePrefix()
+    {
+        assertEquals("MyADConnector", VaultMetrics.connectionName("MyADConnector~#~abcd215"));
+        assertNull(VaultMetrics.connectionName("abcd215"));
+    }
+
+    public void testConnectorRegistersMBean() throws Exception
+    {
+        new SampleVaultConnector().metricsSnapshot();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(VaultMetrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+        assertNotNull(server.getAttribute(name, "Counters"));
+    }
+}
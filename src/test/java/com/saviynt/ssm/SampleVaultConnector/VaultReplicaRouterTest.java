@@ -0,0 +1,94 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import com.saviynt.ssm.abstractConnector.exceptions.ConnectorException;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for VaultReplicaRouter.
+ */
+public class VaultReplicaRouterTest extends TestCase
+{
+    private static final List<String> KEY_URLS = List.of("https://primary:443/keys", "https://replica1:443/keys", "https://replica2:443/keys");
+
+    private static VaultConnectionSettings settings()
+    {
+        return StubVaultServer.settings("AUTH_URL", "https://primary/session/auth",
+                "ACCOUNT_URL", "https://primary/select_account", "KEY_URL", String.join(", ", KEY_URLS));
+    }
+
+    public void testEndpointAttributeListsReplicas()
+    {
+        assertEquals(KEY_URLS, settings().urls("KEY_URL"));
+        assertEquals(List.of("https://primary/session/auth"), settings().urls("AUTH_URL"));
+        assertTrue(settings().urls("BATCH_KEY_URL").isEmpty());
+        assertTrue(VaultReplicaRouter.urls("").isEmpty());
+        assertTrue(VaultReplicaRouter.urls(" ").isEmpty());
+    }
+
+    public void testReadsPreferFastReplicasAndWritesGoToThePrimary()
+    {
+        VaultReplicaRouter router = new VaultReplicaRouter();
+        long[] latencyMillis = { 40, 1, 20 };
+        for (int i = 0; i < KEY_URLS.size(); i++) {
+            VaultReplicaRouter.Replica replica = router.replica(KEY_URLS.get(i));
+            replica.started();
+            replica.completed(TimeUnit.MILLISECONDS.toNanos(latencyMillis[i]), null);
+        }
+        int fastest = 0;
+        for (int i = 0; i < 100; i++) {
+            List<String> order = router.order(settings(), KEY_URLS, true);
+            assertEquals(3, order.size());
+            assertFalse("The slowest replica is never chosen", order.get(0).equals(KEY_URLS.get(0)));
+            if (order.get(0).equals(KEY_URLS.get(1))) {
+                fastest++;
+            }
+        }
+        //Two random choices include the fastest replica two times out of three
+        assertTrue(fastest > 40);
+        assertEquals(List.of(KEY_URLS.get(0)), router.order(settings(), KEY_URLS, false));
+    }
+
+    public void testFailedReplicaIsTriedLast()
+    {
+        VaultReplicaRouter router = new VaultReplicaRouter();
+        VaultReplicaRouter.Replica replica = router.replica(KEY_URLS.get(1));
+        replica.started();
+        replica.completed(0, new VaultServerException("Vault returned HTTP 503 on KEY_URL", 503, 0, null));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(KEY_URLS.get(1), router.order(settings(), KEY_URLS, true).get(2));
+        }
+        assertEquals(Boolean.FALSE, router.states().get("https://replica1:443").get("healthy"));
+    }
+
+    public void testReadsFailOverAndWritesStayOnThePrimary() throws Exception
+    {
+        try (StubVaultServer primary = new StubVaultServer(); StubVaultServer replica = primary.replica()) {
+            SampleVaultConnector connector = new SampleVaultConnector();
+            primary.putKey("abcd215", "password@1234");
+            Map<String, Object> vaultConfigData = StubVaultServer.vaultConfigData(Collections.singletonMap("PASSWORD", "abcd215"));
+            Map<String, Object> data = primary.data(Collections.singletonMap("PASSWORD", "rotated@5678"));
+            Map<String, Object> attributes = (Map<String, Object>) data.get("vaultConnectionAtributes");
+            attributes.put("AUTH_URL", primary.baseUrl() + "/session/auth," + replica.baseUrl() + "/session/auth");
+            attributes.put("ACCOUNT_URL", primary.baseUrl() + "/select_account," + replica.baseUrl() + "/select_account");
+            attributes.put("KEY_URL", primary.baseUrl() + "/keys," + replica.baseUrl() + "/keys");
+            attributes.put(VaultResilience.RETRY_MAX_ATTEMPTS, "1");
+            attributes.put(VaultHealthProber.HEALTH_PROBE_INTERVAL_SECONDS, "0");
+
+            primary.setErrorRate(1.0);
+            for (int i = 0; i < 5; i++) {
+                Map get = connector.getSecret(vaultConfigData, data);
+                assertEquals("password@1234", ((Map) get.get("encryptedConnAttr")).get("PASSWORD"));
+            }
+            try {
+                connector.setSecret(vaultConfigData, data);
+                fail("Expected the write to fail with the primary");
+            } catch (ConnectorException expected) {
+            }
+            assertEquals("password@1234", primary.getKey("abcd215"));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import com.saviynt.ssm.abstractConnector.exceptions.ConnectorException;
+import com.saviynt.ssm.abstractConnector.exceptions.MissingKeyException;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for VaultResilience and CircuitBreaker.
+ */
+public class VaultResilienceTest extends TestCase
+{
+    private static final String ENDPOINT = "https://sampleVault:443 KEY_URL";
+
+    private static VaultConnectionSettings settings(String... tuning)
+    {
+        String[] pairs = new String[4 + tuning.length];
+        pairs[0] = VaultResilience.RETRY_BASE_DELAY_MILLIS;
+        pairs[1] = "1";
+        pairs[2] = VaultResilience.RETRY_MAX_DELAY_MILLIS;
+        pairs[3] = "2";
+        System.arraycopy(tuning, 0, pairs, 4, tuning.length);
+        return StubVaultServer.settings(pairs);
+    }
+
+    public void testTransientFailuresOfReadsAreRetried()
+    {
+        VaultResilience resilience = new VaultResilience();
+        AtomicInteger attempts = new AtomicInteger();
+        String value = resilience.call(settings(), ENDPOINT, true, remaining -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new VaultServerException("Vault returned HTTP 503 on KEY_URL", 503, 0, null);
+            }
+            return "password@1234";
+        });
+        assertEquals("password@1234", value);
+        assertEquals(3, attempts.get());
+    }
+
+    public void testWritesAndClientErrorsAreNotRetried()
+    {
+        VaultResilience resilience = new VaultResilience();
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            resilience.call(settings(), ENDPOINT, false, remaining -> {
+                attempts.incrementAndGet();
+                throw new VaultServerException("Vault returned HTTP 500 on KEY_URL", 500, 0, null);
+            });
+            fail("expected VaultServerException");
+        } catch (VaultServerException expected) {
+        }
+        try {
+            resilience.call(settings(), ENDPOINT, true, remaining -> {
+                attempts.incrementAndGet();
+                throw new MissingKeyException("Key not found in vault");
+            });
+            fail("expected MissingKeyException");
+        } catch (MissingKeyException expected) {
+        }
+        assertEquals(2, attempts.get());
+    }
+
+    public void testCircuitOpensAfterConsecutiveFailures()
+    {
+        VaultResilience resilience = new VaultResilience();
+        VaultConnectionSettings settings = settings(VaultResilience.CIRCUIT_FAILURE_THRESHOLD, "2",
+            VaultResilience.RETRY_MAX_ATTEMPTS, "1", VaultResilience.CIRCUIT_OPEN_SECONDS, "60");
+        for (int i = 0; i < 2; i++) {
+            try {
+                resilience.call(settings, ENDPOINT, true, remaining -> {
+                    throw new VaultServerException("Unable to call vault KEY_URL", 0, 0, null);
+                });
+            } catch (VaultServerException expected) {
+            }
+        }
+        assertEquals("OPEN", resilience.circuitStates().get(ENDPOINT));
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            resilience.call(settings, ENDPOINT, true, remaining -> attempts.incrementAndGet());
+            fail("expected the open circuit to reject the call");
+        } catch (ConnectorException expected) {
+            assertEquals(0, attempts.get());
+        }
+    }
+
+    public void testHalfOpenTrialClosesCircuit()
+    {
+        CircuitBreaker breaker = new CircuitBreaker();
+        breaker.onFailure(0, 1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire(5, 10));
+        assertTrue(breaker.tryAcquire(10, 10));
+        assertFalse(breaker.tryAcquire(11, 10));
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+}
@@ -0,0 +1,77 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for VaultSessionCache.
+ */
+public class VaultSessionCacheTest extends TestCase
+{
+    private VaultConnectionSettings settings()
+    {
+        return StubVaultServer.settings();
+    }
+
+    public void testSessionIsReusedUntilInvalidated()
+    {
+        VaultSessionCache cache = new VaultSessionCache();
+        VaultConnectionSettings settings = settings();
+        VaultAccountKey key = VaultAccountKey.of(settings);
+        AtomicInteger logins = new AtomicInteger();
+        VaultSessionCache.Authenticator authenticator = s -> CompletableFuture.completedFuture(
+            new VaultSession("token-" + logins.incrementAndGet(), System.nanoTime(), TimeUnit.HOURS.toNanos(1)));
+
+        VaultSession first = cache.acquire(key, settings, authenticator).join();
+        assertSame(first, cache.acquire(key, settings, authenticator).join());
+        assertEquals(1, logins.get());
+
+        cache.invalidate(key, first);
+        VaultSession second = cache.acquire(key, settings, authenticator).join();
+        assertEquals("token-2", second.token);
+    }
+
+    public void testExpiredSessionIsRenewed()
+    {
+        VaultSessionCache cache = new VaultSessionCache();
+        VaultConnectionSettings settings = settings();
+        VaultAccountKey key = VaultAccountKey.of(settings);
+        AtomicInteger logins = new AtomicInteger();
+        VaultSessionCache.Authenticator authenticator = s -> CompletableFuture.completedFuture(
+            new VaultSession("token-" + logins.incrementAndGet(), System.nanoTime(), 0));
+
+        cache.acquire(key, settings, authenticator).join();
+        assertEquals("token-2", cache.acquire(key, settings, authenticator).join().token);
+    }
+
+    public void testCallersShareLoginInProgress()
+    {
+        VaultSessionCache cache = new VaultSessionCache();
+        VaultConnectionSettings settings = settings();
+        VaultAccountKey key = VaultAccountKey.of(settings);
+        AtomicInteger logins = new AtomicInteger();
+        CompletableFuture<VaultSession> login = new CompletableFuture<>();
+        VaultSessionCache.Authenticator authenticator = s -> {
+            logins.incrementAndGet();
+            return login;
+        };
+
+        CompletableFuture<VaultSession> first = cache.acquire(key, settings, authenticator);
+        CompletableFuture<VaultSession> second = cache.acquire(key, settings, authenticator);
+        assertFalse(first.isDone());
+        assertEquals(1, logins.get());
+
+        login.complete(new VaultSession("token", System.nanoTime(), TimeUnit.HOURS.toNanos(1)));
+        assertEquals("token", first.join().token);
+        assertSame(first.join(), second.join());
+    }
+
+    public void testAccountKeyDoesNotExposePassword()
+    {
+        VaultAccountKey key = VaultAccountKey.of(settings());
+        assertFalse(key.toString().contains("password@vault"));
+        assertEquals(key, VaultAccountKey.of(settings()));
+    }
+}
@@ -0,0 +1,26 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.net.URI;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for VaultTransport.
+ */
+public class VaultTransportTest extends TestCase
+{
+    private static VaultConnectionSettings settings(String version, String poolSize)
+    {
+        return StubVaultServer.settings(VaultTransport.HTTP_VERSION, version, VaultTransport.HTTP_POOL_SIZE, poolSize);
+    }
+
+    public void testConnectionsWithOtherPoolSettingsShareThePoolOfTheHost()
+    {
+        VaultTransport transport = new VaultTransport();
+        VaultTransport.HostPool pool = transport.pool(settings("HTTP_2", "20"), URI.create("https://sampleVault/keys/abcd215"));
+
+        assertSame(pool, transport.pool(settings("HTTP_1_1", "5"), URI.create("https://sampleVault:443/session/auth")));
+        assertSame(pool, transport.pool(settings("HTTP_2", "20"), URI.create("https://sampleVault/keys/abcd215")));
+        assertEquals(20, pool.poolSize());
+        assertNotSame(pool, transport.pool(settings("HTTP_2", "20"), URI.create("https://replica/keys/abcd215")));
+    }
+}
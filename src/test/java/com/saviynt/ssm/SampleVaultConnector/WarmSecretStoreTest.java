@@ -0,0 +1,194 @@
+package com.saviynt.ssm.SampleVaultConnector;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/**
+ * Unit test for WarmSecretStore.
+ */
+public class WarmSecretStoreTest extends TestCase
+{
+    private Path directory;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        directory = Files.createTempDirectory("warm-cache");
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        WarmSecretStore.closeAll();
+        for (File file : directory.toFile().listFiles()) {
+            file.delete();
+        }
+        directory.toFile().delete();
+    }
+
+    private VaultConnectionSettings settings(String password, long leaseSeconds)
+    {
+        return StubVaultServer.settings("password", password, WarmSecretStore.WARM_CACHE_DIR, directory.toString(),
+                WarmSecretStore.WARM_CACHE_MAX_BYTES, "65536", WarmSecretStore.WARM_CACHE_LEASE_SECONDS, String.valueOf(leaseSeconds));
+    }
+
+    public void testSecretsSurviveReopen()
+    {
+        WarmSecretStore store = WarmSecretStore.of(settings("password@vault", 300));
+        //A value read from the vault is flushed in the background, or when the store is closed
+        store.put("MyADConnector~#~abcd215", "password@1234", "7", false);
+        store.put("removed", "value", null, true);
+        store.remove("removed");
+        WarmSecretStore.closeAll();
+
+        WarmSecretStore reopened = WarmSecretStore.of(settings("password@vault", 300));
+        WarmSecretStore.Hit hit = reopened.get("MyADConnector~#~abcd215");
+        assertEquals("password@1234", hit.value);
+        assertEquals("7", hit.version);
+        assertTrue(hit.fresh);
+        assertNull(reopened.get("removed"));
+    }
+
+    public void testFileIsEncryptedAndBoundToThePassword() throws Exception
+    {
+        WarmSecretStore.of(settings("password@vault", 300)).put("abcd215", "password@1234", null, true);
+        WarmSecretStore.closeAll();
+        File file = directory.toFile().listFiles()[0];
+        String content = new String(Files.readAllBytes(file.toPath()), "ISO-8859-1");
+        assertFalse(content.contains("password@1234"));
+        assertFalse(content.contains("abcd215"));
+
+        assertNull(WarmSecretStore.of(settings("another password", 300)).get("abcd215"));
+    }
+
+    public void testFileInUseIsNotReopenedForAnotherPassword()
+    {
+        WarmSecretStore store = WarmSecretStore.of(settings("password@vault", 300));
+        store.put("abcd215", "password@1234", null, false);
+
+        //Connections alternating between the old and the rotated password do not wipe the file of each other
+        for (int i = 0; i < 3; i++) {
+            assertNull(WarmSecretStore.of(settings("rotated password", 300)));
+            assertSame(store, WarmSecretStore.of(settings("password@vault", 300)));
+        }
+        assertEquals("password@1234", store.get("abcd215").value);
+    }
+
+    public void testTamperedRecordEndsTheLog() throws Exception
+    {
+        WarmSecretStore store = WarmSecretStore.of(settings("password@vault", 300));
+        store.put("first", "one", null, true);
+        store.put("second", "two", null, true);
+        WarmSecretStore.closeAll();
+        File file = directory.toFile().listFiles()[0];
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            //Flip a byte of the ciphertext of the second record
+            raw.seek(24);
+            long end = raw.readLong();
+            raw.seek(end - 20);
+            int b = raw.read();
+            raw.seek(end - 20);
+            raw.write(b ^ 0xFF);
+        }
+
+        WarmSecretStore reopened = WarmSecretStore.of(settings("password@vault", 300));
+        assertEquals("one", reopened.get("first").value);
+        assertNull(reopened.get("second"));
+    }
+
+    public void testFullFileIsCompacted()
+    {
+        WarmSecretStore store = WarmSecretStore.of(settings("password@vault", 300));
+        char[] large = new char[1000];
+        Arrays.fill(large, 'x');
+        for (int i = 0; i < 200; i++) {
+            store.put("key" + (i % 5), new String(large) + i, null, true);
+        }
+        assertEquals(5, store.size());
+        assertEquals(new String(large) + 199, store.get("key4").value);
+        WarmSecretStore.closeAll();
+        assertEquals(new String(large) + 195, WarmSecretStore.of(settings("password@vault", 300)).get("key0").value);
+    }
+
+    public void testStaleSecretIsServedWhileVaultFails() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            SampleVaultConnector connector = new SampleVaultConnector();
+            vault.putKey("abcd215", "password@1234");
+            Map<String, Object> vaultConfigData = StubVaultServer.vaultConfigData(Collections.singletonMap("PASSWORD", "abcd215"));
+            Map<String, Object> data = vault.data(Collections.singletonMap("PASSWORD", null));
+            Map<String, Object> attributes = (Map<String, Object>) data.get("vaultConnectionAtributes");
+            attributes.put(WarmSecretStore.WARM_CACHE_DIR, directory.toString());
+            attributes.put(WarmSecretStore.WARM_CACHE_LEASE_SECONDS, "0");
+            attributes.put(VaultResilience.RETRY_MAX_ATTEMPTS, "1");
+            connector.getSecret(vaultConfigData, data);
+
+            vault.setErrorRate(1.0);
+            Map get = connector.getSecret(vaultConfigData, data);
+            assertEquals("password@1234", ((Map) get.get("encryptedConnAttr")).get("PASSWORD"));
+        }
+    }
+
+    public void testBatchReadsUseTheWarmCache() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            SampleVaultConnector connector = new SampleVaultConnector();
+            vault.putKey("abcd215", "password@1234");
+            vault.putKey("abcd216", "password@5678");
+            List<Map<String, Object>> requests = batchRequests(vault, "300");
+            assertEquals("password@1234", ((Map) connector.getSecrets(requests).get(0).get("encryptedConnAttr")).get("PASSWORD"));
+
+            //Within the lease the batch is served from the file without calling the vault
+            Map<Integer, Long> responses = vault.responseCounts();
+            List<Map> results = connector.getSecrets(requests);
+            assertEquals("password@5678", ((Map) results.get(1).get("encryptedConnAttr")).get("PASSWORD"));
+            assertEquals(responses, vault.responseCounts());
+        }
+    }
+
+    public void testStaleSecretIsServedWhileBatchReadsFail() throws Exception
+    {
+        try (StubVaultServer vault = new StubVaultServer()) {
+            SampleVaultConnector connector = new SampleVaultConnector();
+            vault.putKey("abcd215", "password@1234");
+            vault.putKey("abcd216", "password@5678");
+            List<Map<String, Object>> requests = batchRequests(vault, "0");
+            connector.getSecrets(requests);
+
+            vault.setErrorRate(1.0);
+            List<Map> results = connector.getSecrets(requests);
+            assertEquals("password@1234", ((Map) results.get(0).get("encryptedConnAttr")).get("PASSWORD"));
+            assertEquals("password@5678", ((Map) results.get(1).get("encryptedConnAttr")).get("PASSWORD"));
+        }
+    }
+
+    /**
+     * @return getSecrets() requests of the keys abcd215 and abcd216, read through BATCH_KEY_URL with the warm cache enabled
+     */
+    private List<Map<String, Object>> batchRequests(StubVaultServer vault, String leaseSeconds)
+    {
+        List<Map<String, Object>> requests = new ArrayList<>();
+        for (String keyName : new String[] { "abcd215", "abcd216" }) {
+            Map<String, Object> data = vault.data(Collections.singletonMap("PASSWORD", null));
+            Map<String, Object> attributes = (Map<String, Object>) data.get("vaultConnectionAtributes");
+            attributes.put(VaultGateway.BATCH_KEY_URL, vault.batchKeyUrl());
+            attributes.put(WarmSecretStore.WARM_CACHE_DIR, directory.toString());
+            attributes.put(WarmSecretStore.WARM_CACHE_LEASE_SECONDS, leaseSeconds);
+            attributes.put(VaultResilience.RETRY_MAX_ATTEMPTS, "1");
+            Map<String, Object> request = new HashMap<>();
+            request.put("vaultConfigData", StubVaultServer.vaultConfigData(Collections.singletonMap("PASSWORD", keyName)));
+            request.put("data", data);
+            requests.add(request);
+        }
+        return requests;
+    }
+}